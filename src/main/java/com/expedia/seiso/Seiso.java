@@ -23,6 +23,9 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
@@ -35,6 +38,7 @@ import com.zaxxer.hikari.HikariDataSource;
  */
 @SpringBootApplication
 @EnableConfigurationProperties
+@EnableScheduling
 public class Seiso {
 	
 	@Autowired
@@ -84,4 +88,14 @@ public class Seiso {
     public ExecutorService executorService() {
 		return Executors.newFixedThreadPool(8);
     }
+    
+    // The default scheduler has a single thread, which would leave rotation recalculation and health flushes waiting
+    // behind the search index rebuilds.
+    @Bean
+    public TaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(5);
+        scheduler.setThreadNamePrefix("seiso-scheduler-");
+        return scheduler;
+    }
 }
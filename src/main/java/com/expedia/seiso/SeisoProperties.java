@@ -35,6 +35,71 @@ public class SeisoProperties {
 	private String changeNotificationExchange;
 	
 	
+	// =================================================================================================================
+	// Search
+	// =================================================================================================================
+	
+	/**
+	 * Global search engine: "index" (in-memory search index), "database" (one query per type, in parallel) or "union"
+	 * (one union query on a single connection). Only "index" loads the search index, so the others also turn off
+	 * suggestions and fuzzy matches.
+	 */
+	private String searchEngine = "index";
+	
+	/**
+	 * Milliseconds a global search waits for each item type before giving up on it. The database query timeout is
+	 * this rounded up to a whole second.
+	 */
+	private Long searchTimeout = 2000L;
+	
+	/** Milliseconds between search index rebuilds */
+	private Long searchIndexRebuildInterval = 3600000L;
+	
+	/** Maximum number of cached search results pages (one per item type), or 0 to disable the cache */
+	private Integer searchCacheMaxSize = 1000;
+	
+	/** Milliseconds a cached search results page stays valid */
+	private Long searchCacheTtl = 60000L;
+	
+	/** Hits per type that the database search engines fetch and score when ranking by relevance */
+	private Integer searchRankWindow = 1000;
+	
+	/** Maximum number of type-ahead suggestions per item type */
+	private Integer suggestMaxResults = 10;
+	
+	/** Largest edit distance per term that fuzzy search tolerates. Shorter terms get less. */
+	private Integer searchFuzzyMaxDistance = 2;
+	
+	// =================================================================================================================
+	// Rotation
+	// =================================================================================================================
+	
+	/** Milliseconds a node must go without rotation changes before its aggregate rotation status is recalculated */
+	private Long rotationRecalcWindow = 250L;
+	
+	/** Maximum milliseconds a dirty node waits for recalculation while changes keep arriving */
+	private Long rotationRecalcMaxDelay = 2000L;
+	
+	/** Milliseconds between background reconciliations of every aggregate rotation status against its endpoints */
+	private Long rotationReconcileInterval = 21600000L;
+	
+	/** Cross-check the rotation counters against a full recount on every recalculation, repairing any drift */
+	private Boolean rotationCounterVerify = false;
+	
+	/** Number of lock stripes serializing aggregate rotation status recalculation per node */
+	private Integer rotationLockStripes = 256;
+	
+	// =================================================================================================================
+	// Health
+	// =================================================================================================================
+	
+	/** Maximum number of nodes with health updates waiting to be written before ingestion pushes back */
+	private Integer healthBufferSize = 10000;
+	
+	/** Milliseconds between writes of buffered health updates */
+	private Long healthFlushInterval = 1000L;
+	
+	
 	// =================================================================================================================
 	// Security
 	// =================================================================================================================
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Embedded;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.JoinColumn;
@@ -42,6 +43,8 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 import lombok.experimental.Accessors;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * @author Willie Wheeler
  */
@@ -112,4 +115,15 @@ public class Node extends AbstractItem {
 	@ManyToOne
 	@JoinColumn(name = "aggregate_rotation_status_id")
 	private RotationStatus aggregateRotationStatus;
+	
+	// Maintained incrementally. See RotationCounters.
+	@Embedded
+	private RotationCounts rotationCounts;
+	
+	/**
+	 * SHA-256 of the state last applied by a node upsert, so that repeating the same upsert can skip the write. Cleared
+	 * whenever the node or its IP addresses change some other way. See NodeService.
+	 */
+	@JsonIgnore
+	private String contentHash;
 }
@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -64,4 +65,8 @@ public class NodeIpAddress extends AbstractItem {
 	@ManyToOne
 	@JoinColumn(name = "aggregate_rotation_status_id")
 	private RotationStatus aggregateRotationStatus;
+	
+	// Maintained incrementally. See RotationCounters.
+	@Embedded
+	private RotationCounts rotationCounts;
 }
@@ -0,0 +1,100 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.entity;
+
+import static com.expedia.seiso.domain.entity.RotationStatus.DISABLED;
+import static com.expedia.seiso.domain.entity.RotationStatus.ENABLED;
+import static com.expedia.seiso.domain.entity.RotationStatus.EXCLUDED;
+import static com.expedia.seiso.domain.entity.RotationStatus.NO_ENDPOINTS;
+import static com.expedia.seiso.domain.entity.RotationStatus.PARTIAL;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * Children by rotation status: endpoints for a node IP address, and node IP address aggregates for a node. Lets us
+ * recompute an aggregate rotation status in constant time.
+ * </p>
+ * <p>
+ * The columns are read-only as far as entity saves go. They change only through the delta and repair updates in
+ * {@code RotationCounters}, so a save based on a stale copy can't clobber them.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Embeddable
+public class RotationCounts {
+	
+	@Column(name = "rotation_count_total", insertable = false, updatable = false)
+	private int total;
+	
+	@Column(name = "rotation_count_enabled", insertable = false, updatable = false)
+	private int enabled;
+	
+	@Column(name = "rotation_count_disabled", insertable = false, updatable = false)
+	private int disabled;
+	
+	@Column(name = "rotation_count_excluded", insertable = false, updatable = false)
+	private int excluded;
+	
+	@Column(name = "rotation_count_partial", insertable = false, updatable = false)
+	private int partial;
+	
+	@Column(name = "rotation_count_no_endpoints", insertable = false, updatable = false)
+	private int noEndpoints;
+	
+	public static RotationCounts of(Iterable<RotationStatus> statuses) {
+		RotationCounts counts = new RotationCounts();
+		for (RotationStatus status : statuses) {
+			counts.add(status, 1);
+		}
+		return counts;
+	}
+	
+	/**
+	 * Adds {@code delta} children with the given status. Children with statuses we don't track (unknown or
+	 * {@code null}) count toward the total only.
+	 * 
+	 * @param status
+	 *            child rotation status
+	 * @param delta
+	 *            number of children to add, negative to remove
+	 * @return this
+	 */
+	public RotationCounts add(RotationStatus status, int delta) {
+		this.total += delta;
+		if (ENABLED.equals(status)) {
+			this.enabled += delta;
+		} else if (DISABLED.equals(status)) {
+			this.disabled += delta;
+		} else if (EXCLUDED.equals(status)) {
+			this.excluded += delta;
+		} else if (PARTIAL.equals(status)) {
+			this.partial += delta;
+		} else if (NO_ENDPOINTS.equals(status)) {
+			this.noEndpoints += delta;
+		}
+		return this;
+	}
+}
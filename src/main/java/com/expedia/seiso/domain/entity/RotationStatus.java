@@ -33,6 +33,7 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.ToString;
+import lombok.val;
 import lombok.experimental.Accessors;
 
 /**
@@ -47,33 +48,21 @@ import lombok.experimental.Accessors;
 @Entity
 public class RotationStatus extends AbstractItem {
 
-	// TODO We might want to replace the data-driven rotation statuses with fixed statuses, since we have hand-coded
-	// rotation status aggregation logic involving specific statuses. [WLW]
+	// The aggregation logic is hand-coded against these statuses, so they're fixed. See RotationStatusCode for the
+	// corresponding row IDs.
 	public static final RotationStatus ENABLED = new RotationStatus("enabled", "Enabled", null, SUCCESS);
 	public static final RotationStatus DISABLED = new RotationStatus("disabled", "Disabled", null, WARNING);
 	public static final RotationStatus EXCLUDED = new RotationStatus("excluded", "Excluded", null, INFO);
-	public static final RotationStatus NO_ENDPOINTS = new RotationStatus("no-endpoints", "No endpoints", null, INFO);
+	public static final RotationStatus NO_ENDPOINTS = new RotationStatus("no-endpoints", "No Endpoints", null, INFO);
 	public static final RotationStatus PARTIAL = new RotationStatus("partial", "Partial", null, WARNING);
 	public static final RotationStatus UNKNOWN = new RotationStatus("unknown", "Unknown", null, WARNING);
 	
 	public static final RotationStatus getRotationStatus(@NonNull String key) {
-		// FIXME This sucks. Figure out a better way.
-		switch (key) {
-		case "enabled":
-			return ENABLED;
-		case "disabled":
-			return DISABLED;
-		case "excluded":
-			return EXCLUDED;
-		case "no-endponits":
-			return NO_ENDPOINTS;
-		case "partial":
-			return PARTIAL;
-		case "unknown":
-			return UNKNOWN;
-		default:
+		val code = RotationStatusCode.forKey(key);
+		if (code == null) {
 			throw new IllegalArgumentException("Illegal rotation state: " + key);
 		}
+		return code.getStatus();
 	}
 	
 	@NotNull
@@ -0,0 +1,92 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.entity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * <p>
+ * Fixed rotation status codes. Each code is also the ID of the corresponding {@link RotationStatus} row, so the
+ * {@code rotation_status_id} and {@code aggregate_rotation_status_id} columns on {@code endpoint},
+ * {@code node_ip_address}, {@code node} and {@code machine} hold these codes directly. Queries can filter and group
+ * on the codes without joining {@code rotation_status} and {@code status_type}, and services can reference a status
+ * without looking it up.
+ * </p>
+ * <p>
+ * The {@code rotation_status} table stays as reference data so that the REST representation doesn't change.
+ * {@code src/main/sql/migrations/002-rotation-status-codes.sql} renumbers existing rows to match.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Getter
+public enum RotationStatusCode {
+	ENABLED(RotationStatusCode.ENABLED_CODE, RotationStatus.ENABLED, "Enabled", "success"),
+	DISABLED(2L, RotationStatus.DISABLED, "Disabled", "warning"),
+	EXCLUDED(3L, RotationStatus.EXCLUDED, "Excluded", "info"),
+	NO_ENDPOINTS(4L, RotationStatus.NO_ENDPOINTS, "No Endpoints", "info"),
+	PARTIAL(5L, RotationStatus.PARTIAL, "Partial", "warning"),
+	UNKNOWN(6L, RotationStatus.UNKNOWN, "Unknown", "warning");
+	
+	/** Code for {@link #ENABLED}, as a constant that query annotations can use */
+	public static final long ENABLED_CODE = 1L;
+	
+	private static final Map<String, RotationStatusCode> BY_KEY = new HashMap<>();
+	private static final Map<Long, RotationStatusCode> BY_CODE = new HashMap<>();
+	static {
+		for (RotationStatusCode code : values()) {
+			BY_KEY.put(code.getKey(), code);
+			BY_CODE.put(code.getCode(), code);
+		}
+	}
+	
+	private final Long code;
+	private final RotationStatus status;
+	private final String name;
+	private final String statusTypeKey;
+	
+	private RotationStatusCode(Long code, RotationStatus status, String name, String statusTypeKey) {
+		this.code = code;
+		this.status = status;
+		this.name = name;
+		this.statusTypeKey = statusTypeKey;
+	}
+	
+	public String getKey() {
+		return status.getKey();
+	}
+	
+	/**
+	 * @param key
+	 *            rotation status key
+	 * @return the code, or {@code null} if there isn't one
+	 */
+	public static RotationStatusCode forKey(String key) {
+		return BY_KEY.get(key);
+	}
+	
+	/**
+	 * @param code
+	 *            rotation status code
+	 * @return the code, or {@code null} if there isn't one
+	 */
+	public static RotationStatusCode forCode(Long code) {
+		return BY_CODE.get(code);
+	}
+}
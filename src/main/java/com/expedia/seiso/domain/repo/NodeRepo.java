@@ -19,11 +19,15 @@ import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RestResource;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.entity.RotationStatusCode;
 import com.expedia.seiso.domain.repo.custom.NodeRepoCustom;
 
 /**
@@ -35,6 +39,9 @@ public interface NodeRepo extends PagingAndSortingRepository<Node, Long>, NodeRe
 	// purely informational in nature as opposed to warnings or danger alerts. We use default statuses for things that
 	// we don't want to show up in the alert list. This is something Mike Nash and came up with after discussion so
 	// please don't change it without talking to one of us first. [WLW]
+	//
+	// The alerting rotation statuses are the RotationStatusCodes whose status type is info, warning or danger:
+	// everything but enabled. Matching on the codes saves joining rotation_status and status_type.
 	public static final String FIND_NODE_ALERTS_JPQL =
 			"select " +
 			"  n " +
@@ -45,7 +52,7 @@ public interface NodeRepo extends PagingAndSortingRepository<Node, Long>, NodeRe
 			"where " +
 			"  n.serviceInstance.key = :key " +
 			"  and (hst.key in ('info', 'warning', 'danger')" +
-			"      or n.aggregateRotationStatus.statusType.key in ('info', 'warning', 'danger'))";
+			"      or n.aggregateRotationStatus.id <> " + RotationStatusCode.ENABLED_CODE + ")";
 	
 	Node findByName(@Param("name") String name);
 	
@@ -64,4 +71,11 @@ public interface NodeRepo extends PagingAndSortingRepository<Node, Long>, NodeRe
 	// FIXME Shouldn't this return a unique result?
 	@Query("select n from Node n join n.ipAddresses nip join nip.endpoints e where nip.ipAddress = :ipAddress and e.port.number = :port")
 	List<Node> findByIpAddressAndPort(@Param("ipAddress") String ipAddress, @Param("port") Integer port);
+	
+	// Makes the next upsert do a full update. Not versioned, since the hash isn't part of the node's REST state.
+	@RestResource(exported = false)
+	@Transactional
+	@Modifying
+	@Query("update Node n set n.contentHash = null where n.id = :id")
+	void clearContentHash(@Param("id") Long id);
 }
@@ -15,11 +15,14 @@
  */
 package com.expedia.seiso.domain.repo.custom;
 
+import java.util.Map;
 import java.util.Set;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import com.expedia.seiso.domain.service.search.SearchField;
+
 /**
  * @author Ken Van Eyk
  *
@@ -29,6 +32,65 @@ import org.springframework.data.domain.Pageable;
 public interface SearchableRepository<T> {
 	
 	Class<T> getResultType();
+	
+	/**
+	 * @return names of the properties that search tokens are matched against
+	 */
+	Set<String> getSearchFieldNames();
+	
+	/**
+	 * @return names of the properties needed to display a search hit
+	 */
+	Set<String> getSummaryFieldNames();
+	
+	/**
+	 * @return names of the properties indexed for arbitrary substring matches, or an empty set if the repository
+	 *         doesn't use a substring index
+	 */
+	Set<String> getSubstringFieldNames();
+	
+	/**
+	 * @return name of the property offered as type-ahead suggestions, or {@code null} if the repository doesn't offer
+	 *         suggestions
+	 */
+	String getSuggestFieldName();
+	
+	/**
+	 * @return name of the property searchable by edit distance, or {@code null} if the repository doesn't support
+	 *         fuzzy search
+	 */
+	String getFuzzyFieldName();
+	
+	/**
+	 * @return property path for each field that searches can filter this type on, e.g.
+	 *         {@code serviceInstance.environment.key} for {@link SearchField#ENV}. A search filtering on any other
+	 *         field doesn't match this type at all.
+	 */
+	Map<SearchField, String> getFilterPaths();
 
-	Page<T> search(Set<String> searchTokens, Pageable pageable);
+	/**
+	 * Searches for items matching any of the given tokens and satisfying all the filters. The hits are lightweight:
+	 * they carry only the ID and the {@link #getSummaryFieldNames() summary fields}, and aren't attached to any
+	 * persistence context.
+	 * 
+	 * @param filters
+	 *            values each {@link #getFilterPaths() filter path} must take, possibly empty
+	 * @param searchTokens
+	 *            search tokens, which may only be empty if there are filters
+	 * @param pageable
+	 *            page request
+	 * @return search engine results page
+	 */
+	Page<T> search(Map<String, Set<String>> filters, Set<String> searchTokens, Pageable pageable);
+	
+	/**
+	 * Counts the items that {@link #search(Map, Set, Pageable)} would find, without loading them.
+	 * 
+	 * @param filters
+	 *            values each {@link #getFilterPaths() filter path} must take, possibly empty
+	 * @param searchTokens
+	 *            search tokens
+	 * @return number of hits
+	 */
+	long countSearchHits(Map<String, Set<String>> filters, Set<String> searchTokens);
 }
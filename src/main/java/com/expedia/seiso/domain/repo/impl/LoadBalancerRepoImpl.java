@@ -16,7 +16,9 @@
 package com.expedia.seiso.domain.repo.impl;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -30,6 +32,7 @@ import org.springframework.data.domain.Pageable;
 
 import com.expedia.seiso.domain.entity.LoadBalancer;
 import com.expedia.seiso.domain.repo.custom.LoadBalancerRepoCustom;
+import com.expedia.seiso.domain.service.search.SearchField;
 
 /**
  * @author Ken Van Eyk
@@ -38,15 +41,49 @@ import com.expedia.seiso.domain.repo.custom.LoadBalancerRepoCustom;
 public class LoadBalancerRepoImpl implements LoadBalancerRepoCustom {
 	private static final String ENTITY_NAME = "LoadBalancer";
 	private static final Set<String> FIELD_NAMES = new LinkedHashSet<String>(Arrays.asList("name", "ipAddress"));
+	private static final Set<String> SUMMARY_FIELD_NAMES = Collections.singleton("name");
+	private static final Set<String> SUBSTRING_FIELD_NAMES = Collections.emptySet();
+	private static final String SUGGEST_FIELD_NAME = null;
+	private static final String FUZZY_FIELD_NAME = null;
+	private static final Map<SearchField, String> FILTER_PATHS =
+			Collections.singletonMap(SearchField.DC, "dataCenter.key");
 
 	@PersistenceContext private EntityManager entityManager;
 	@Autowired private RepoImplUtils repoUtils;
 
 	@Override
 	public Class<LoadBalancer> getResultType() { return LoadBalancer.class; }
+	
+	@Override
+	public Set<String> getSearchFieldNames() { return FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSummaryFieldNames() { return SUMMARY_FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSubstringFieldNames() { return SUBSTRING_FIELD_NAMES; }
+	
+	@Override
+	public String getSuggestFieldName() { return SUGGEST_FIELD_NAME; }
+	
+	@Override
+	public String getFuzzyFieldName() { return FUZZY_FIELD_NAME; }
+	
+	@Override
+	public Map<SearchField, String> getFilterPaths() { return FILTER_PATHS; }
+
+	@Override
+	public Page<LoadBalancer> search(
+			@NonNull Map<String, Set<String>> filters,
+			@NonNull Set<String> searchTokens,
+			Pageable pageable) {
+		
+		return repoUtils.search(
+				ENTITY_NAME, entityManager, FIELD_NAMES, SUMMARY_FIELD_NAMES, filters, searchTokens, pageable);
+	}
 
 	@Override
-	public Page<LoadBalancer> search(@NonNull Set<String> searchTokens, Pageable pageable) {
-		return repoUtils.search(ENTITY_NAME, entityManager, FIELD_NAMES, searchTokens, pageable);
+	public long countSearchHits(@NonNull Map<String, Set<String>> filters, @NonNull Set<String> searchTokens) {
+		return repoUtils.count(ENTITY_NAME, entityManager, FIELD_NAMES, filters, searchTokens);
 	}
 }
@@ -16,13 +16,16 @@
 package com.expedia.seiso.domain.repo.impl;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 import lombok.NonNull;
+import lombok.val;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -30,6 +33,8 @@ import org.springframework.data.domain.Pageable;
 
 import com.expedia.seiso.domain.entity.Machine;
 import com.expedia.seiso.domain.repo.custom.MachineRepoCustom;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.search.SearchField;
 
 /**
  * @author Ken Van Eyk
@@ -39,15 +44,58 @@ public class MachineRepoImpl implements MachineRepoCustom {
 	private static final String ENTITY_NAME = "Machine";
 	private static final Set<String> FIELD_NAMES =
 			new LinkedHashSet<String>(Arrays.asList("name", "hostname", "ipAddress"));
+	private static final Set<String> SUMMARY_FIELD_NAMES = Collections.singleton("name");
+	private static final Set<String> SUBSTRING_FIELD_NAMES =
+			new LinkedHashSet<String>(Arrays.asList("name", "hostname", "ipAddress", "fqdn"));
+	private static final String SUGGEST_FIELD_NAME = "name";
+	private static final String FUZZY_FIELD_NAME = "name";
+	private static final Map<SearchField, String> FILTER_PATHS =
+			Collections.singletonMap(SearchField.DC, "dataCenter.key");
 
 	@PersistenceContext private EntityManager entityManager;
 	@Autowired private RepoImplUtils repoUtils;
+	@Autowired private SearchIndex searchIndex;
 
 	@Override
 	public Class<Machine> getResultType() { return Machine.class; }
+	
+	@Override
+	public Set<String> getSearchFieldNames() { return FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSummaryFieldNames() { return SUMMARY_FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSubstringFieldNames() { return SUBSTRING_FIELD_NAMES; }
+	
+	@Override
+	public String getSuggestFieldName() { return SUGGEST_FIELD_NAME; }
+	
+	@Override
+	public String getFuzzyFieldName() { return FUZZY_FIELD_NAME; }
+	
+	@Override
+	public Map<SearchField, String> getFilterPaths() { return FILTER_PATHS; }
+
+	@Override
+	public Page<Machine> search(
+			@NonNull Map<String, Set<String>> filters,
+			@NonNull Set<String> searchTokens,
+			Pageable pageable) {
+		
+		if (filters.isEmpty() && searchIndex.isSubstringIndexed(Machine.class)) {
+			val ids = searchIndex.searchSubstrings(Machine.class, searchTokens);
+			return repoUtils.searchByIds(ENTITY_NAME, entityManager, SUMMARY_FIELD_NAMES, ids, pageable);
+		}
+		return repoUtils.search(
+				ENTITY_NAME, entityManager, FIELD_NAMES, SUMMARY_FIELD_NAMES, filters, searchTokens, pageable);
+	}
 
 	@Override
-	public Page<Machine> search(@NonNull Set<String> searchTokens, Pageable pageable) {
-		return repoUtils.search(ENTITY_NAME, entityManager, FIELD_NAMES, searchTokens, pageable);
+	public long countSearchHits(@NonNull Map<String, Set<String>> filters, @NonNull Set<String> searchTokens) {
+		if (filters.isEmpty() && searchIndex.isSubstringIndexed(Machine.class)) {
+			return searchIndex.searchSubstrings(Machine.class, searchTokens).length;
+		}
+		return repoUtils.count(ENTITY_NAME, entityManager, FIELD_NAMES, filters, searchTokens);
 	}
 }
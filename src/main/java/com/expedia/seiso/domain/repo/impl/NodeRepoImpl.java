@@ -16,17 +16,23 @@
 package com.expedia.seiso.domain.repo.impl;
 
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import lombok.val;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import com.expedia.seiso.domain.entity.Node;
 import com.expedia.seiso.domain.repo.custom.NodeRepoCustom;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.search.SearchField;
 
 /**
  * @author Ken Van Eyk
@@ -35,15 +41,61 @@ import com.expedia.seiso.domain.repo.custom.NodeRepoCustom;
 public class NodeRepoImpl implements NodeRepoCustom {
 	private static final String ENTITY_NAME = "Node";
 	private static final Set<String> FIELD_NAMES = Collections.singleton("name");
+	private static final Set<String> SUMMARY_FIELD_NAMES = FIELD_NAMES;
+	private static final Set<String> SUBSTRING_FIELD_NAMES = FIELD_NAMES;
+	private static final String SUGGEST_FIELD_NAME = "name";
+	private static final String FUZZY_FIELD_NAME = "name";
+	private static final Map<SearchField, String> FILTER_PATHS = new EnumMap<>(SearchField.class);
+	static {
+		FILTER_PATHS.put(SearchField.ENV, "serviceInstance.environment.key");
+		FILTER_PATHS.put(SearchField.DC, "serviceInstance.dataCenter.key");
+		FILTER_PATHS.put(SearchField.HEALTH, "healthStatus.statusType.key");
+	}
 
 	@PersistenceContext private EntityManager entityManager;
 	@Autowired private RepoImplUtils repoUtils;
+	@Autowired private SearchIndex searchIndex;
 
 	@Override
 	public Class<Node> getResultType() { return Node.class; }
+	
+	@Override
+	public Set<String> getSearchFieldNames() { return FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSummaryFieldNames() { return SUMMARY_FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSubstringFieldNames() { return SUBSTRING_FIELD_NAMES; }
+	
+	@Override
+	public String getSuggestFieldName() { return SUGGEST_FIELD_NAME; }
+	
+	@Override
+	public String getFuzzyFieldName() { return FUZZY_FIELD_NAME; }
+	
+	@Override
+	public Map<SearchField, String> getFilterPaths() { return FILTER_PATHS; }
+
+	@Override
+	public Page<Node> search(
+			Map<String, Set<String>> filters,
+			Set<String> searchTokens,
+			Pageable pageable) {
+		
+		if (filters.isEmpty() && searchIndex.isSubstringIndexed(Node.class)) {
+			val ids = searchIndex.searchSubstrings(Node.class, searchTokens);
+			return repoUtils.searchByIds(ENTITY_NAME, entityManager, SUMMARY_FIELD_NAMES, ids, pageable);
+		}
+		return repoUtils.search(
+				ENTITY_NAME, entityManager, FIELD_NAMES, SUMMARY_FIELD_NAMES, filters, searchTokens, pageable);
+	}
 
 	@Override
-	public Page<Node> search(Set<String> searchTokens, Pageable pageable) {
-		return repoUtils.search(ENTITY_NAME, entityManager, FIELD_NAMES, searchTokens, pageable);
+	public long countSearchHits(Map<String, Set<String>> filters, Set<String> searchTokens) {
+		if (filters.isEmpty() && searchIndex.isSubstringIndexed(Node.class)) {
+			return searchIndex.searchSubstrings(Node.class, searchTokens).length;
+		}
+		return repoUtils.count(ENTITY_NAME, entityManager, FIELD_NAMES, filters, searchTokens);
 	}
 }
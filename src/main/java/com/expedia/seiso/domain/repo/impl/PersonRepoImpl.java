@@ -16,7 +16,9 @@
 package com.expedia.seiso.domain.repo.impl;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -30,6 +32,7 @@ import org.springframework.data.domain.Pageable;
 
 import com.expedia.seiso.domain.entity.Person;
 import com.expedia.seiso.domain.repo.custom.PersonRepoCustom;
+import com.expedia.seiso.domain.service.search.SearchField;
 
 /**
  * @author Willie Wheeler
@@ -38,16 +41,49 @@ public class PersonRepoImpl implements PersonRepoCustom {
 	private static final String ENTITY_NAME = "Person";
 	private static final Set<String> FIELD_NAMES =
 			new LinkedHashSet<String>(Arrays.asList("username", "firstName", "lastName"));
+	private static final Set<String> SUMMARY_FIELD_NAMES = FIELD_NAMES;
+	private static final Set<String> SUBSTRING_FIELD_NAMES = Collections.emptySet();
+	private static final String SUGGEST_FIELD_NAME = "username";
+	private static final String FUZZY_FIELD_NAME = null;
+	private static final Map<SearchField, String> FILTER_PATHS = Collections.emptyMap();
 
 	@PersistenceContext private EntityManager entityManager;
 	@Autowired private RepoImplUtils repoUtils;
 
 	@Override
 	public Class<Person> getResultType() { return Person.class; }
+	
+	@Override
+	public Set<String> getSearchFieldNames() { return FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSummaryFieldNames() { return SUMMARY_FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSubstringFieldNames() { return SUBSTRING_FIELD_NAMES; }
+	
+	@Override
+	public String getSuggestFieldName() { return SUGGEST_FIELD_NAME; }
+	
+	@Override
+	public String getFuzzyFieldName() { return FUZZY_FIELD_NAME; }
+	
+	@Override
+	public Map<SearchField, String> getFilterPaths() { return FILTER_PATHS; }
+
+	@Override
+	public Page<Person> search(
+			@NonNull Map<String, Set<String>> filters,
+			@NonNull Set<String> searchTokens,
+			Pageable pageable) {
+		
+		return repoUtils.search(
+				ENTITY_NAME, entityManager, FIELD_NAMES, SUMMARY_FIELD_NAMES, filters, searchTokens, pageable);
+	}
 
 	@Override
-	public Page<Person> search(@NonNull Set<String> searchTokens, Pageable pageable) {
-		return repoUtils.search(ENTITY_NAME, entityManager, FIELD_NAMES, searchTokens, pageable);
+	public long countSearchHits(@NonNull Map<String, Set<String>> filters, @NonNull Set<String> searchTokens) {
+		return repoUtils.count(ENTITY_NAME, entityManager, FIELD_NAMES, filters, searchTokens);
 	}
 
 }
@@ -15,19 +15,33 @@
  */
 package com.expedia.seiso.domain.repo.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import javax.persistence.EntityManager;
 import javax.validation.constraints.NotNull;
 
 import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.val;
 
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.service.search.KeysetPage;
+import com.expedia.seiso.domain.service.search.KeysetPageRequest;
 import com.expedia.seiso.domain.service.search.QueryFactory;
 
 /**
@@ -36,21 +50,183 @@ import com.expedia.seiso.domain.service.search.QueryFactory;
  */
 @Component
 public class RepoImplUtils {
+	private static final String QUERY_TIMEOUT_HINT = "javax.persistence.query.timeout";
+	
+	@Autowired private ExecutorService executorService;
+	@Autowired private QueryFactory queryFactory;
+	@Autowired private SeisoProperties seisoProperties;
 
-	// TODO use pageable ?
-	@SuppressWarnings("unchecked")
+	/**
+	 * Searches the given entity type for items with a field matching any of the given tokens and satisfying all the
+	 * filters. Either may be empty, but not both. Hits are ordered by ID. The total comes from a count query that runs
+	 * in parallel with the page fetch.
+	 * <p>
+	 * The page query selects only the ID and summary fields, and the hits are detached stubs carrying just those
+	 * values. That way a search never pulls in an item's eagerly fetched associations.
+	 * </p>
+	 * 
+	 * @param entityName
+	 *            entity name
+	 * @param entityManager
+	 *            entity manager
+	 * @param fieldNames
+	 *            names of the fields to match
+	 * @param summaryFieldNames
+	 *            names of the fields to select
+	 * @param filters
+	 *            values each property path must take
+	 * @param searchTokens
+	 *            search tokens
+	 * @param pageable
+	 *            offset or {@link KeysetPageRequest keyset} page request
+	 * @return search engine results page
+	 */
+	@SneakyThrows({ ExecutionException.class, InterruptedException.class })
 	public <T> Page<T> search(
 			@NotNull String entityName,
 			@NotNull EntityManager entityManager,
 			@NonNull Set<String> fieldNames,
+			@NonNull Set<String> summaryFieldNames,
+			@NonNull Map<String, Set<String>> filters,
 			@NotNull Set<String> searchTokens,
-			Pageable pageable) {
+			@NonNull Pageable pageable) {
+		
+		// The search deadline only interrupts the calling thread, which doesn't stop a running JDBC statement. The
+		// query timeout makes the database give up too, so late searches don't keep holding connections.
+		val timeout = queryTimeout();
+		val count = new FutureTask<Long>(() -> (Long) queryFactory
+				.buildCountQuery(entityName, entityManager, fieldNames, filters, searchTokens)
+				.setHint(QUERY_TIMEOUT_HINT, timeout)
+				.getSingleResult());
+		executorService.execute(count);
 		
-		// Set max results to avoid huge search queries.
-		List<T> items = new QueryFactory()
-				.buildQuery(entityName, entityManager, fieldNames, searchTokens)
-				.setMaxResults(50)
+		try {
+			// Fetch one extra item to find out whether there's a next page.
+			val afterId = KeysetPageRequest.getAfterId(pageable);
+			val query = queryFactory
+					.buildProjectionQuery(
+							entityName, entityManager, fieldNames, summaryFieldNames, filters, searchTokens, afterId)
+					.setHint(QUERY_TIMEOUT_HINT, timeout)
+					.setMaxResults(pageable.getPageSize() + 1);
+			if (afterId == null) {
+				query.setFirstResult(pageable.getOffset());
+			}
+			List<T> items = toStubs(entityName, entityManager, summaryFieldNames, query.getResultList());
+			
+			// We're usually running on the executor ourselves, so if the count hasn't started yet, run it here instead
+			// of waiting for a free thread. This is a no-op if it has already started.
+			count.run();
+			
+			return toPage(items, pageable, count.get());
+		} finally {
+			count.cancel(true);
+		}
+	}
+	
+	/**
+	 * Counts the items of the given entity type with a field matching any of the given tokens and satisfying all the
+	 * filters.
+	 * 
+	 * @param entityName
+	 *            entity name
+	 * @param entityManager
+	 *            entity manager
+	 * @param fieldNames
+	 *            names of the fields to match
+	 * @param filters
+	 *            values each property path must take
+	 * @param searchTokens
+	 *            search tokens
+	 * @return number of hits
+	 */
+	public long count(
+			@NotNull String entityName,
+			@NotNull EntityManager entityManager,
+			@NonNull Set<String> fieldNames,
+			@NonNull Map<String, Set<String>> filters,
+			@NotNull Set<String> searchTokens) {
+		
+		return (Long) queryFactory
+				.buildCountQuery(entityName, entityManager, fieldNames, filters, searchTokens)
+				.setHint(QUERY_TIMEOUT_HINT, queryTimeout())
+				.getSingleResult();
+	}
+	
+	/**
+	 * Loads a page of search hits, given the IDs of all the hits. The hits are ordered by ID, and as with
+	 * {@link #search(String, EntityManager, Set, Set, Map, Set, Pageable)}, they're stubs carrying only the summary
+	 * fields.
+	 * 
+	 * @param entityName
+	 *            entity name
+	 * @param entityManager
+	 *            entity manager
+	 * @param summaryFieldNames
+	 *            names of the fields to select
+	 * @param ids
+	 *            sorted IDs of all the hits, e.g. from the search index
+	 * @param pageable
+	 *            page request
+	 * @return search engine results page
+	 */
+	public <T> Page<T> searchByIds(
+			@NotNull String entityName,
+			@NotNull EntityManager entityManager,
+			@NonNull Set<String> summaryFieldNames,
+			@NonNull int[] ids,
+			@NonNull Pageable pageable) {
+		
+		int from = KeysetPageRequest.startIndex(pageable, ids);
+		int to = Math.min(from + pageable.getPageSize(), ids.length);
+		if (from == to) {
+			return new KeysetPage<T>(Collections.<T>emptyList(), pageable, ids.length, null);
+		}
+		
+		List<Long> pageIds = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			pageIds.add((long) ids[i]);
+		}
+		List<?> rows = queryFactory
+				.buildProjectionByIdQuery(entityName, entityManager, summaryFieldNames, pageIds)
 				.getResultList();
-		return new PageImpl<T>(items);
+		List<T> items = toStubs(entityName, entityManager, summaryFieldNames, rows);
+		return new KeysetPage<T>(items, pageable, ids.length, (to < ids.length ? (long) ids[to - 1] : null));
+	}
+	
+	// The hint is in milliseconds, but Hibernate rounds it to the nearest second for JDBC, where 0 means no timeout.
+	// So round up to a whole second ourselves. Hibernate only accepts an Integer here.
+	private int queryTimeout() {
+		long seconds = Math.max(1L, (seisoProperties.getSearchTimeout() + 999L) / 1000L);
+		return (int) (seconds * 1000L);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> List<T> toStubs(String entityName, EntityManager entityManager, Set<String> summaryFieldNames,
+			List<?> rows) {
+		
+		val itemClass = queryFactory.getEntityClass(entityManager, entityName);
+		val stubs = new ArrayList<T>(rows.size());
+		for (val row : rows) {
+			val values = (Object[]) row;
+			val item = (Item) BeanUtils.instantiate(itemClass);
+			item.setId((Long) values[0]);
+			val wrapper = PropertyAccessorFactory.forBeanPropertyAccess(item);
+			int i = 1;
+			for (val fieldName : summaryFieldNames) {
+				wrapper.setPropertyValue(fieldName, values[i++]);
+			}
+			stubs.add((T) item);
+		}
+		return stubs;
+	}
+	
+	private <T> Page<T> toPage(List<T> items, Pageable pageable, long total) {
+		int pageSize = pageable.getPageSize();
+		if (items.size() <= pageSize) {
+			return new KeysetPage<T>(items, pageable, total, null);
+		}
+		val content = items.subList(0, pageSize);
+		val nextAfterId = ((Item) content.get(pageSize - 1)).getId();
+		return new KeysetPage<T>(new ArrayList<T>(content), pageable, total, nextAfterId);
 	}
 }
@@ -18,7 +18,9 @@ package com.expedia.seiso.domain.repo.impl;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -33,8 +35,11 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 
+import com.expedia.seiso.domain.entity.RotationStatusCode;
 import com.expedia.seiso.domain.entity.ServiceInstance;
 import com.expedia.seiso.domain.repo.custom.ServiceInstanceRepoCustom;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.search.SearchField;
 import com.expedia.seiso.web.resource.BreakdownItem;
 import com.expedia.seiso.web.resource.NodeSummary;
 
@@ -44,9 +49,19 @@ import com.expedia.seiso.web.resource.NodeSummary;
 public class ServiceInstanceRepoImpl implements ServiceInstanceRepoCustom {
 	private static final String ENTITY_NAME = "ServiceInstance";
 	private static final Set<String> FIELD_NAMES = Collections.singleton("key");
+	private static final Set<String> SUMMARY_FIELD_NAMES = FIELD_NAMES;
+	private static final Set<String> SUBSTRING_FIELD_NAMES = FIELD_NAMES;
+	private static final String SUGGEST_FIELD_NAME = "key";
+	private static final String FUZZY_FIELD_NAME = null;
+	private static final Map<SearchField, String> FILTER_PATHS = new EnumMap<>(SearchField.class);
+	static {
+		FILTER_PATHS.put(SearchField.ENV, "environment.key");
+		FILTER_PATHS.put(SearchField.DC, "dataCenter.key");
+	}
 	
 	// It might make more sense to move this into ServiceInstanceServiceImpl.
 	// But there's not really much domain logic going on so maybe it's OK here.
+	// Rotation status 1 is RotationStatusCode.ENABLED.
 	private static final String NODE_SUMMARY_SQL =
 			"select " +
 			"  count(*) num_nodes, " +
@@ -56,16 +71,14 @@ public class ServiceInstanceRepoImpl implements ServiceInstanceRepoCustom {
 			"from ( " +
 			"  select " +
 			"    if(st.ukey in ('success', 'info'), 1, 0) healthy, " +
-			"    if(sum(case nip_rs.ukey when 'enabled' then 0 else 1 end) = 0, 1, 0) nip_enabled, " +
-			"    if(sum(case e_rs.ukey when 'enabled' then 0 else 1 end) = 0, 1, 0) all_endpoints_enabled " +
+			"    if(sum(case nip.rotation_status_id when 1 then 0 else 1 end) = 0, 1, 0) nip_enabled, " +
+			"    if(sum(case e.rotation_status_id when 1 then 0 else 1 end) = 0, 1, 0) all_endpoints_enabled " +
 			"  from " +
 			"    node n " +
 			"    left outer join health_status hs on n.health_status_id = hs.id " +
 			"    left outer join status_type st on hs.status_type_id = st.id " +
 			"    left outer join node_ip_address nip on nip.node_id = n.id " +
-			"    left outer join rotation_status nip_rs on nip_rs.id = nip.rotation_status_id " +
-			"    left outer join endpoint e on e.node_ip_address_id = nip.id " +
-			"    left outer join rotation_status e_rs on e_rs.id = e.rotation_status_id, " +
+			"    left outer join endpoint e on e.node_ip_address_id = nip.id, " +
 			"    service_instance si " +
 			"  where " +
 			"    n.service_instance_id = si.id " +
@@ -89,33 +102,65 @@ public class ServiceInstanceRepoImpl implements ServiceInstanceRepoCustom {
 			"group by " +
 			"  if(n.health_status_id is null, 0, n.health_status_id)";
 	
+	// Names and status types come from RotationStatusCode, so there's no need to join rotation_status and status_type.
 	private static final String ROTATION_BREAKDOWN_SQL = 
 			"select " +
-			"  if(n.aggregate_rotation_status_id is null, 'Unknown', rs.name) status, " +
-			"  if(n.aggregate_rotation_status_id is null, 'warning', st.ukey) type, " +
+			"  n.aggregate_rotation_status_id code, " +
 			"  count(*) num_nodes " +
 			"from " +
 			"  node n " +
-			"  left outer join rotation_status rs on n.aggregate_rotation_status_id = rs.id " +
-			"  left outer join status_type st on rs.status_type_id = st.id, " +
-			"  service_instance si " +
 			"where " +
-			"  n.service_instance_id = si.id " +
-			"  and si.id = ? " +
+			"  n.service_instance_id = ? " +
 			"group by " +
-			"  if(n.aggregate_rotation_status_id is null, 0, n.aggregate_rotation_status_id)";
+			"  n.aggregate_rotation_status_id";
 		
 	@PersistenceContext private EntityManager entityManager;
 	
 	@Autowired private JdbcTemplate jdbcTemplate;
 	@Autowired private RepoImplUtils repoUtils;
+	@Autowired private SearchIndex searchIndex;
 	
 	@Override
 	public Class<ServiceInstance> getResultType() { return ServiceInstance.class; }
 	
 	@Override
-	public Page<ServiceInstance> search(Set<String> searchTokens, Pageable pageable) {
-		return repoUtils.search(ENTITY_NAME, entityManager, FIELD_NAMES, searchTokens, pageable);
+	public Set<String> getSearchFieldNames() { return FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSummaryFieldNames() { return SUMMARY_FIELD_NAMES; }
+	
+	@Override
+	public Set<String> getSubstringFieldNames() { return SUBSTRING_FIELD_NAMES; }
+	
+	@Override
+	public String getSuggestFieldName() { return SUGGEST_FIELD_NAME; }
+	
+	@Override
+	public String getFuzzyFieldName() { return FUZZY_FIELD_NAME; }
+	
+	@Override
+	public Map<SearchField, String> getFilterPaths() { return FILTER_PATHS; }
+	
+	@Override
+	public Page<ServiceInstance> search(
+			Map<String, Set<String>> filters,
+			Set<String> searchTokens,
+			Pageable pageable) {
+		
+		if (filters.isEmpty() && searchIndex.isSubstringIndexed(ServiceInstance.class)) {
+			val ids = searchIndex.searchSubstrings(ServiceInstance.class, searchTokens);
+			return repoUtils.searchByIds(ENTITY_NAME, entityManager, SUMMARY_FIELD_NAMES, ids, pageable);
+		}
+		return repoUtils.search(
+				ENTITY_NAME, entityManager, FIELD_NAMES, SUMMARY_FIELD_NAMES, filters, searchTokens, pageable);
+	}
+
+	@Override
+	public long countSearchHits(Map<String, Set<String>> filters, Set<String> searchTokens) {
+		if (filters.isEmpty() && searchIndex.isSubstringIndexed(ServiceInstance.class)) {
+			return searchIndex.searchSubstrings(ServiceInstance.class, searchTokens).length;
+		}
+		return repoUtils.count(ENTITY_NAME, entityManager, FIELD_NAMES, filters, searchTokens);
 	}
 	
 	@Override
@@ -145,7 +190,12 @@ public class ServiceInstanceRepoImpl implements ServiceInstanceRepoCustom {
 		val mapper = new RowMapper<BreakdownItem>() {
 			@Override
 			public BreakdownItem mapRow(ResultSet rs, int rowNum) throws SQLException {
-				return new BreakdownItem(rs.getString(1), rs.getString(2), rs.getInt(3));
+				long code = rs.getLong(1);
+				val status = rs.wasNull() ? null : RotationStatusCode.forCode(code);
+				if (status == null) {
+					return new BreakdownItem("Unknown", "warning", rs.getInt(2));
+				}
+				return new BreakdownItem(status.getName(), status.getStatusTypeKey(), rs.getInt(2));
 			}
 		};
 		return jdbcTemplate.query(ROTATION_BREAKDOWN_SQL, args(id), mapper);
@@ -15,7 +15,10 @@
  */
 package com.expedia.seiso.domain.repo.impl;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
@@ -29,6 +32,7 @@ import org.springframework.data.domain.Pageable;
 
 import com.expedia.seiso.domain.entity.Service;
 import com.expedia.seiso.domain.repo.custom.ServiceRepoCustom;
+import com.expedia.seiso.domain.service.search.SearchField;
 
 /**
  * @author Ken Van Eyk
@@ -37,6 +41,12 @@ import com.expedia.seiso.domain.repo.custom.ServiceRepoCustom;
 public class ServiceRepoImpl implements ServiceRepoCustom {
 	private static final String ENTITY_NAME = "Service";
 	private static final Set<String> FIELD_NAMES = Collections.singleton("name");
+	private static final Set<String> SUMMARY_FIELD_NAMES =
+			new LinkedHashSet<String>(Arrays.asList("name", "key"));
+	private static final Set<String> SUBSTRING_FIELD_NAMES = Collections.emptySet();
+	private static final String SUGGEST_FIELD_NAME = "key";
+	private static final String FUZZY_FIELD_NAME = "key";
+	private static final Map<SearchField, String> FILTER_PATHS = Collections.emptyMap();
 
 	@PersistenceContext private EntityManager entityManager;
 	@Autowired private RepoImplUtils repoUtils;
@@ -45,9 +55,49 @@ public class ServiceRepoImpl implements ServiceRepoCustom {
 	public Class<Service> getResultType() {
 		return Service.class;
 	}
+	
+	@Override
+	public Set<String> getSearchFieldNames() {
+		return FIELD_NAMES;
+	}
+	
+	@Override
+	public Set<String> getSummaryFieldNames() {
+		return SUMMARY_FIELD_NAMES;
+	}
+	
+	@Override
+	public Set<String> getSubstringFieldNames() {
+		return SUBSTRING_FIELD_NAMES;
+	}
+	
+	@Override
+	public String getSuggestFieldName() {
+		return SUGGEST_FIELD_NAME;
+	}
+	
+	@Override
+	public String getFuzzyFieldName() {
+		return FUZZY_FIELD_NAME;
+	}
+	
+	@Override
+	public Map<SearchField, String> getFilterPaths() {
+		return FILTER_PATHS;
+	}
+
+	@Override
+	public Page<Service> search(
+			@NonNull Map<String, Set<String>> filters,
+			@NonNull Set<String> searchTokens,
+			Pageable pageable) {
+		
+		return repoUtils.search(
+				ENTITY_NAME, entityManager, FIELD_NAMES, SUMMARY_FIELD_NAMES, filters, searchTokens, pageable);
+	}
 
 	@Override
-	public Page<Service> search(@NonNull Set<String> searchTokens, Pageable pageable) {
-		return repoUtils.search(ENTITY_NAME, entityManager, FIELD_NAMES, searchTokens, pageable);
+	public long countSearchHits(@NonNull Map<String, Set<String>> filters, @NonNull Set<String> searchTokens) {
+		return repoUtils.count(ENTITY_NAME, entityManager, FIELD_NAMES, filters, searchTokens);
 	}
 }
@@ -0,0 +1,62 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.Collection;
+
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.entity.ServiceInstancePort;
+
+/**
+ * <p>
+ * Materializes endpoints, which are the cross product of a service instance's node IP addresses and its ports.
+ * </p>
+ * <p>
+ * Endpoints are created in bulk with unknown rotation status, and the affected nodes' rotation counters and aggregate
+ * rotation statuses are recalculated in the same transaction, before the method returns.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public interface EndpointService {
+	
+	/**
+	 * Creates an endpoint for the given port on every node IP address in the port's service instance.
+	 * 
+	 * @param port
+	 *            newly created service instance port
+	 * @return number of endpoints created
+	 */
+	int createEndpoints(ServiceInstancePort port);
+	
+	/**
+	 * Creates an endpoint on the given node IP address for every port in its service instance.
+	 * 
+	 * @param nip
+	 *            newly created node IP address
+	 * @return number of endpoints created
+	 */
+	int createEndpoints(NodeIpAddress nip);
+	
+	/**
+	 * Creates every endpoint for the given nodes: one per node IP address and port in the node's service instance.
+	 * 
+	 * @param nodeIds
+	 *            IDs of newly created nodes, whose node IP addresses have been created too
+	 * @return number of endpoints created
+	 */
+	int createEndpoints(Collection<Long> nodeIds);
+}
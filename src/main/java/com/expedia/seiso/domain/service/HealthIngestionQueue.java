@@ -0,0 +1,49 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Write-behind buffer for node health statuses. Health agents submit batches of updates, and a background worker
+ * writes whatever has accumulated once per flush window, keeping only the latest update for each node.
+ * </p>
+ * <p>
+ * The buffer is bounded. When it's full, submissions are refused outright so that callers can back off and retry.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public interface HealthIngestionQueue {
+	
+	/**
+	 * Buffers the given updates, all or nothing.
+	 * 
+	 * @param updates
+	 *            health updates
+	 * @return {@code true} if the updates were buffered, or {@code false} if the buffer doesn't have room for them
+	 * @throws IllegalArgumentException
+	 *             if an update is missing its node name, has an unknown health key, or has an overly long reason or
+	 *             link
+	 */
+	boolean offer(List<HealthUpdate> updates);
+	
+	/**
+	 * Writes everything buffered so far, in the caller's thread.
+	 */
+	void flush();
+}
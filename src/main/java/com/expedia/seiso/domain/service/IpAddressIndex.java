@@ -0,0 +1,68 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.service.search.Cidr;
+
+/**
+ * In-memory index of machine and node IP addresses, supporting CIDR range lookups. Covers {@code Machine.ipAddress},
+ * {@code Machine.ip6Address} and {@code NodeIpAddress.ipAddress}.
+ * 
+ * @author Willie Wheeler
+ */
+public interface IpAddressIndex {
+	
+	/**
+	 * @return whether the index has finished its initial load
+	 */
+	boolean isLoaded();
+	
+	/**
+	 * Reloads the index from the database.
+	 */
+	void rebuild();
+	
+	/**
+	 * Adds or updates the given item's addresses, if it's a machine or a node IP address.
+	 * 
+	 * @param item
+	 *            created or updated item
+	 */
+	void index(Item item);
+	
+	/**
+	 * Removes the given item's addresses, if it's a machine or a node IP address.
+	 * 
+	 * @param item
+	 *            deleted item
+	 */
+	void remove(Item item);
+	
+	/**
+	 * @param cidr
+	 *            CIDR block
+	 * @return sorted IDs of the machines having an IPv4 or IPv6 address in the block
+	 */
+	long[] findMachineIds(Cidr cidr);
+	
+	/**
+	 * @param cidr
+	 *            CIDR block
+	 * @return sorted IDs of the node IP addresses in the block
+	 */
+	long[] findNodeIpAddressIds(Cidr cidr);
+}
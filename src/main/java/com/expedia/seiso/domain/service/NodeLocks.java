@@ -0,0 +1,76 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * Striped locks keyed by node ID. Anything that recomputes a node's aggregate rotation status holds the node's lock
+ * while it does, so two writers can't recompute the same node from different snapshots, while writers on different
+ * nodes only contend when their nodes happen to share a stripe.
+ * </p>
+ * <p>
+ * Always take these locks before touching the database, never while holding row locks, or a writer waiting on a
+ * stripe can deadlock against the writer that holds it.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public interface NodeLocks {
+	
+	/**
+	 * Locks the given node, blocking until the lock is available.
+	 * 
+	 * @param nodeId
+	 *            node ID
+	 * @return held lock, to be closed when done
+	 */
+	NodeLock lock(Long nodeId);
+	
+	/**
+	 * Locks all of the given nodes, blocking until every lock is available. Stripes are acquired in a fixed order, so
+	 * callers locking overlapping sets of nodes can't deadlock.
+	 * 
+	 * @param nodeIds
+	 *            node IDs
+	 * @return held locks, to be closed when done
+	 */
+	NodeLock lock(Collection<Long> nodeIds);
+	
+	/**
+	 * Locks all of the given nodes until the current transaction completes, so that nobody recomputes them from
+	 * uncommitted state.
+	 * 
+	 * @param nodeIds
+	 *            node IDs
+	 * @throws IllegalStateException
+	 *             if there's no active transaction
+	 */
+	void lockForTransaction(Collection<Long> nodeIds);
+	
+	/**
+	 * One or more held node locks.
+	 */
+	interface NodeLock extends AutoCloseable {
+		
+		/**
+		 * Releases the locks.
+		 */
+		@Override
+		void close();
+	}
+}
@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * <p>
+ * A node to register in bulk, along with its IP addresses. Machines and IP address roles are referenced by name, and
+ * must already exist.
+ * </p>
+ * <p>
+ * New nodes start out with unknown health status. Their IP addresses start out with the given rotation status, or
+ * unknown if none is given, and get an endpoint for every port in the service instance.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Data
+public class NodeRegistration {
+	
+	/** Node name, which must be unused */
+	private String name;
+	
+	private String description;
+	
+	private String buildVersion;
+	
+	/** Machine name */
+	private String machine;
+	
+	private List<IpAddress> ipAddresses;
+	
+	/**
+	 * A node IP address to register.
+	 */
+	@Data
+	public static class IpAddress {
+		
+		/** IP address role name */
+		private String ipAddressRole;
+		
+		private String ipAddress;
+		
+		/** Rotation status key: enabled, disabled, excluded or unknown */
+		private String rotationStatus;
+	}
+}
@@ -0,0 +1,73 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.List;
+
+import com.expedia.seiso.domain.entity.ServiceInstance;
+
+/**
+ * @author Willie Wheeler
+ */
+public interface NodeService {
+	
+	/**
+	 * <p>
+	 * Registers the given nodes and their IP addresses in the given service instance, all in one transaction. Either
+	 * every node is created or none is.
+	 * </p>
+	 * <p>
+	 * Endpoints and aggregate rotation statuses are in place when this returns, and a single batch notification goes
+	 * out for the new nodes once the transaction commits.
+	 * </p>
+	 * 
+	 * @param serviceInstance
+	 *            service instance
+	 * @param registrations
+	 *            nodes to create
+	 * @return row counts
+	 * @throws IllegalArgumentException
+	 *             if a registration is invalid, names an existing node, or references a missing machine or IP address
+	 *             role
+	 */
+	NodeRegistrationResult registerNodes(ServiceInstance serviceInstance, List<NodeRegistration> registrations);
+	
+	/**
+	 * <p>
+	 * Creates or updates the named node so that it matches the given registration. The registration is the node's full
+	 * state: a missing description, build version or machine clears it, and IP addresses missing from the list are
+	 * deleted. If the IP address list itself is missing, the node's IP addresses are left alone.
+	 * </p>
+	 * <p>
+	 * Rotation statuses apply only to IP addresses the upsert creates. Existing IP addresses keep theirs, since those
+	 * belong to whoever manages rotation.
+	 * </p>
+	 * <p>
+	 * When the registration matches the last upsert applied to the node, and nothing else has changed the node since,
+	 * this writes nothing at all: no version bump and no notification.
+	 * </p>
+	 * 
+	 * @param serviceInstance
+	 *            service instance the node belongs to
+	 * @param registration
+	 *            desired node state
+	 * @return what happened
+	 * @throws IllegalArgumentException
+	 *             if the registration is invalid, references a missing machine or IP address role, or names a node in
+	 *             another service instance
+	 */
+	NodeUpsertResult upsertNode(ServiceInstance serviceInstance, NodeRegistration registration);
+}
@@ -0,0 +1,33 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+/**
+ * What a node upsert did.
+ * 
+ * @author Willie Wheeler
+ */
+public enum NodeUpsertResult {
+	
+	/** There was no such node, so it was created. */
+	CREATED,
+	
+	/** The node differed from the upsert, so it was updated. */
+	UPDATED,
+	
+	/** The node already matched the upsert, so nothing was written. */
+	UNCHANGED
+}
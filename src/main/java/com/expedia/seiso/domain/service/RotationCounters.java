@@ -0,0 +1,121 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.Collection;
+
+import com.expedia.seiso.domain.entity.RotationCounts;
+import com.expedia.seiso.domain.entity.RotationStatus;
+
+/**
+ * <p>
+ * Maintains the {@link RotationCounts} on node IP addresses (endpoints by rotation status) and nodes (node IP
+ * address aggregates by rotation status). Changes are applied as deltas in single UPDATE statements, so concurrent
+ * writers don't lose each other's changes.
+ * </p>
+ * <p>
+ * Rotation status arguments may be {@code null}, which counts the same as unknown.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public interface RotationCounters {
+	
+	void endpointAdded(Long nipId, RotationStatus status);
+	
+	void endpointRemoved(Long nipId, RotationStatus status);
+	
+	void endpointChanged(Long nipId, RotationStatus oldStatus, RotationStatus newStatus);
+	
+	/**
+	 * Recounts a node IP address's endpoints by rotation status and overwrites its endpoint counts, holding the owning
+	 * node's lock until the transaction commits. For saves that can't tell which status they replaced: every such
+	 * save commits before it recounts, and recounts run one at a time, so the last one sees every save.
+	 * 
+	 * @param nodeId
+	 *            ID of the node that owns the node IP address
+	 * @param nipId
+	 *            node IP address ID
+	 * @return recounted endpoint counts
+	 */
+	RotationCounts recountEndpoints(Long nodeId, Long nipId);
+	
+	void ipAddressAdded(Long nodeId, RotationStatus aggregateStatus);
+	
+	void ipAddressRemoved(Long nodeId, RotationStatus aggregateStatus);
+	
+	void ipAddressChanged(Long nodeId, RotationStatus oldAggregateStatus, RotationStatus newAggregateStatus);
+	
+	/**
+	 * Reads a node IP address's endpoint counts straight from the database, including changes made earlier in the
+	 * current transaction.
+	 * 
+	 * @param nipId
+	 *            node IP address ID
+	 * @return endpoint counts
+	 */
+	RotationCounts getEndpointCounts(Long nipId);
+	
+	/**
+	 * Reads a node's node IP address counts straight from the database, including changes made earlier in the current
+	 * transaction.
+	 * 
+	 * @param nodeId
+	 *            node ID
+	 * @return node IP address counts
+	 */
+	RotationCounts getIpAddressCounts(Long nodeId);
+	
+	/**
+	 * Overwrites a node IP address's endpoint counts with the result of a full recount.
+	 * 
+	 * @param nipId
+	 *            node IP address ID
+	 * @param counts
+	 *            recounted endpoint counts
+	 */
+	void repairEndpointCounts(Long nipId, RotationCounts counts);
+	
+	/**
+	 * Overwrites the endpoint counts of several node IP addresses that recounted the same, in one statement.
+	 * 
+	 * @param nipIds
+	 *            node IP address IDs
+	 * @param counts
+	 *            recounted endpoint counts
+	 */
+	void repairEndpointCounts(Collection<Long> nipIds, RotationCounts counts);
+	
+	/**
+	 * Overwrites a node's node IP address counts with the result of a full recount.
+	 * 
+	 * @param nodeId
+	 *            node ID
+	 * @param counts
+	 *            recounted node IP address counts
+	 */
+	void repairIpAddressCounts(Long nodeId, RotationCounts counts);
+	
+	/**
+	 * Overwrites the node IP address counts of several nodes that recounted the same, in one statement.
+	 * 
+	 * @param nodeIds
+	 *            node IDs
+	 * @param counts
+	 *            recounted node IP address counts
+	 */
+	void repairIpAddressCounts(Collection<Long> nodeIds, RotationCounts counts);
+}
@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+
+/**
+ * <p>
+ * Coalesces aggregate rotation status recalculations. Callers mark node IP addresses and nodes dirty as endpoints
+ * change, and a background worker recalculates each dirty node IP address and node once per window instead of once per
+ * change.
+ * </p>
+ * <p>
+ * Callers that need read-your-writes semantics can flush a node synchronously after marking it dirty.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public interface RotationRecalculationQueue {
+	
+	/**
+	 * Marks the given node IP address, and hence its node, as needing recalculation.
+	 * 
+	 * @param nip
+	 *            node IP address
+	 */
+	void markDirty(NodeIpAddress nip);
+	
+	/**
+	 * Marks all of the given node's IP addresses, and the node itself, as needing recalculation.
+	 * 
+	 * @param node
+	 *            node
+	 */
+	void markDirty(Node node);
+	
+	/**
+	 * Recalculates the given node right away if it's dirty, in the caller's thread.
+	 * 
+	 * @param nodeId
+	 *            node ID
+	 */
+	void flush(Long nodeId);
+	
+	/**
+	 * Recalculates every dirty node right away, in the caller's thread.
+	 */
+	void flush();
+}
@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * Recomputes aggregate rotation statuses from grouped endpoint status counts and corrects the ones that have drifted,
+ * e.g. because of direct database edits or writes that skipped the event handlers.
+ * </p>
+ * <p>
+ * Works through nodes in chunks, one transaction per chunk, so reconciling the whole fleet doesn't hold one giant
+ * transaction open.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public interface RotationReconciler {
+	
+	/**
+	 * Reconciles every node. Also runs periodically in the background.
+	 * 
+	 * @return row counts
+	 */
+	RotationReconcileResult reconcileAll();
+	
+	/**
+	 * @param key
+	 *            service instance key
+	 * @return row counts
+	 */
+	RotationReconcileResult reconcileServiceInstance(String key);
+	
+	/**
+	 * @param key
+	 *            data center key
+	 * @return row counts
+	 */
+	RotationReconcileResult reconcileDataCenter(String key);
+	
+	/**
+	 * Reconciles the given nodes. Joins the caller's transaction if there is one, so it sees the caller's writes.
+	 * 
+	 * @param nodeIds
+	 *            node IDs
+	 * @return row counts
+	 */
+	RotationReconcileResult reconcileNodes(Collection<Long> nodeIds);
+}
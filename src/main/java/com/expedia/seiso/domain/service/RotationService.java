@@ -17,6 +17,7 @@ package com.expedia.seiso.domain.service;
 
 import com.expedia.seiso.domain.entity.Node;
 import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.entity.ServiceInstance;
 
 /**
  * @author Willie Wheeler
@@ -26,4 +27,18 @@ public interface RotationService {
 	void recalculateAggregateRotationStatus(Node node);
 	
 	void recalculateAggregateRotationStatus(NodeIpAddress nip);
+	
+	/**
+	 * Applies a rotation status change to a service instance's endpoints with set-based updates, and then
+	 * recalculates the aggregate rotation statuses of the affected node IP addresses and nodes in a single pass.
+	 * 
+	 * @param serviceInstance
+	 *            service instance
+	 * @param update
+	 *            target status and filters
+	 * @return row counts
+	 * @throws IllegalArgumentException
+	 *             if the status isn't one that can be set directly
+	 */
+	RotationUpdateResult updateRotationStatus(ServiceInstance serviceInstance, RotationUpdate update);
 }
@@ -0,0 +1,48 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.Set;
+
+import lombok.Data;
+
+/**
+ * <p>
+ * Bulk rotation status change for a service instance. The status applies to every endpoint in the service instance
+ * that matches all of the given filters. Empty or missing filters match everything.
+ * </p>
+ * <p>
+ * Without a port filter, the change also applies to the matching node IP addresses themselves, since they're entirely
+ * covered.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Data
+public class RotationUpdate {
+	
+	/** Rotation status key: enabled, disabled, excluded or unknown */
+	private String status;
+	
+	/** Node names */
+	private Set<String> nodes;
+	
+	/** IP address role names */
+	private Set<String> ipAddressRoles;
+	
+	/** Port numbers */
+	private Set<Integer> ports;
+}
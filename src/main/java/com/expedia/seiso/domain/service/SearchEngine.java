@@ -18,6 +18,7 @@ package com.expedia.seiso.domain.service;
 import org.springframework.data.domain.Pageable;
 
 import com.expedia.seiso.domain.service.search.SearchQuery;
+import com.expedia.seiso.domain.service.search.SearchResultsListener;
 
 /**
  * Simple search engine interface.
@@ -28,14 +29,32 @@ import com.expedia.seiso.domain.service.search.SearchQuery;
 public interface SearchEngine {
 
 	/**
-	 * Search the item repositories for items containing the given keywords.
+	 * Search the item repositories for items containing the given keywords. Only the item types the query selects are
+	 * searched. For a {@link SearchQuery#isCountOnly() count-only} query, each type's page carries the total hit count
+	 * but no items.
 	 * 
 	 * @param tokenizedSearch
 	 *            Search keywords.
 	 * @param pageable
 	 *            Page parameters applied on a <em>per-type</em> basis. The result set contains all results pulled from
-	 *            the individual type-specific queries.
+	 *            the individual type-specific queries. Pass a
+	 *            {@link com.expedia.seiso.domain.service.search.ContinuationPageRequest} to resume from an earlier
+	 *            page; types it doesn't mention are exhausted and are skipped.
 	 * @return search engine results
 	 */
 	SearchResults search(SearchQuery tokenizedSearch, Pageable pageable);
+	
+	/**
+	 * Like {@link #search(SearchQuery, Pageable)}, but hands each type's results page to the listener as soon as it's
+	 * ready, on the calling thread.
+	 * 
+	 * @param tokenizedSearch
+	 *            Search keywords.
+	 * @param pageable
+	 *            Page parameters applied on a <em>per-type</em> basis.
+	 * @param listener
+	 *            Receives each type's results page.
+	 * @return search engine results, once all types have finished or timed out
+	 */
+	SearchResults search(SearchQuery tokenizedSearch, Pageable pageable, SearchResultsListener listener);
 }
@@ -0,0 +1,170 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.service.search.RankedPage;
+import com.expedia.seiso.domain.service.search.RelevanceScorer;
+
+/**
+ * In-memory search index over the items exposed by the
+ * {@link com.expedia.seiso.domain.repo.custom.SearchableRepository}s. The index stores each item's search and summary
+ * fields, so it can answer searches without going to the database.
+ * 
+ * @author Willie Wheeler
+ */
+@SuppressWarnings("rawtypes")
+public interface SearchIndex {
+	
+	/**
+	 * @return whether the index has finished its initial load
+	 */
+	boolean isLoaded();
+	
+	/**
+	 * @return indexed item classes, or an empty list if the index isn't loaded
+	 */
+	List<Class> getItemClasses();
+	
+	/**
+	 * Reloads the index from the database.
+	 */
+	void rebuild();
+	
+	/**
+	 * Adds or updates the given item, if its type is indexed.
+	 * 
+	 * @param item
+	 *            created or updated item
+	 */
+	void index(Item item);
+	
+	/**
+	 * Removes the given item, if its type is indexed.
+	 * 
+	 * @param item
+	 *            deleted item
+	 */
+	void remove(Item item);
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @return whether the index is loaded and has a substring index for the given item class
+	 */
+	boolean isSubstringIndexed(Class<?> itemClass);
+	
+	/**
+	 * Finds items of the given type having a substring field that contains any of the given tokens, like the SQL
+	 * {@code like '%token%'}.
+	 * 
+	 * @param itemClass
+	 *            item class with a substring index
+	 * @param searchTokens
+	 *            search tokens
+	 * @return sorted IDs of the matching items
+	 */
+	int[] searchSubstrings(Class<?> itemClass, Set<String> searchTokens);
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @return whether the index is loaded and offers suggestions for the given item class
+	 */
+	boolean isSuggestIndexed(Class<?> itemClass);
+	
+	/**
+	 * Completes the given prefix against the suggest field of the given item type, for type-ahead. Completions are in
+	 * case-insensitive lexicographic order. This doesn't allocate, so it's cheap enough to call on every keystroke.
+	 * 
+	 * @param itemClass
+	 *            item class offering suggestions
+	 * @param prefix
+	 *            prefix to complete
+	 * @param results
+	 *            buffer for the completions, which also sets the maximum number returned
+	 * @return number of completions written to the start of the buffer
+	 */
+	int suggest(Class<?> itemClass, String prefix, String[] results);
+	
+	/**
+	 * Searches the index for items of the given type. For types with a substring index, a token also matches anywhere
+	 * inside a substring field, not just at the start of a term. Result items are populated with their ID and summary
+	 * fields only.
+	 * 
+	 * @param itemClass
+	 *            indexed item class
+	 * @param searchTokens
+	 *            search tokens
+	 * @param pageable
+	 *            page request
+	 * @return search engine results page
+	 */
+	<T> Page<T> search(Class<T> itemClass, Set<String> searchTokens, Pageable pageable);
+	
+	/**
+	 * Like {@link #search(Class, Set, Pageable)}, but orders the hits by {@link RelevanceScorer relevance} and returns
+	 * only the best ones. Every hit is scored against its stored fields.
+	 * 
+	 * @param itemClass
+	 *            indexed item class
+	 * @param searchTokens
+	 *            search tokens
+	 * @param pageable
+	 *            page request, whose size is the number of hits to return
+	 * @return best hits, best first
+	 */
+	<T> RankedPage<T> rank(Class<T> itemClass, Set<String> searchTokens, Pageable pageable);
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @return whether the index is loaded and supports fuzzy search for the given item class
+	 */
+	boolean isFuzzyIndexed(Class<?> itemClass);
+	
+	/**
+	 * Finds items of the given type whose fuzzy field approximately matches any of the given tokens. Each term in a
+	 * token must be within a small edit distance of some term in the field, so {@code chkout-prd} matches
+	 * {@code checkout-prod}. The allowed distance grows with the length of the term. Hits come back closest first.
+	 * 
+	 * @param itemClass
+	 *            item class with fuzzy search
+	 * @param searchTokens
+	 *            search tokens
+	 * @param pageable
+	 *            page request, whose size is the number of hits to return
+	 * @return closest hits, closest first
+	 */
+	<T> RankedPage<T> fuzzySearch(Class<T> itemClass, Set<String> searchTokens, Pageable pageable);
+	
+	/**
+	 * Counts the items of the given type that {@link #search(Class, Set, Pageable)} would find.
+	 * 
+	 * @param itemClass
+	 *            indexed item class
+	 * @param searchTokens
+	 *            search tokens
+	 * @return number of hits
+	 */
+	int count(Class<?> itemClass, Set<String> searchTokens);
+}
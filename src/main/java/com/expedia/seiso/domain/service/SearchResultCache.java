@@ -0,0 +1,62 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service;
+
+import java.util.Set;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Bounded cache of type-specific search results pages. Entries are keyed by item class, normalized search tokens and
+ * page request, so a change to one item type invalidates only that type's pages.
+ * 
+ * @author Willie Wheeler
+ */
+@SuppressWarnings("rawtypes")
+public interface SearchResultCache {
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @param searchTokens
+	 *            search tokens
+	 * @param pageable
+	 *            type-specific page request
+	 * @return cached search engine results page, or {@code null} if there isn't a live entry
+	 */
+	Page get(Class itemClass, Set<String> searchTokens, Pageable pageable);
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @param searchTokens
+	 *            search tokens
+	 * @param pageable
+	 *            type-specific page request
+	 * @param serp
+	 *            search engine results page
+	 */
+	void put(Class itemClass, Set<String> searchTokens, Pageable pageable, Page serp);
+	
+	/**
+	 * Drops all cached pages for the given item class.
+	 * 
+	 * @param itemClass
+	 *            item class
+	 */
+	void invalidate(Class itemClass);
+}
@@ -16,12 +16,23 @@
 package com.expedia.seiso.domain.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
 
+import com.expedia.seiso.domain.service.search.ContinuationToken;
+import com.expedia.seiso.domain.service.search.KeysetPage;
+import com.expedia.seiso.domain.service.search.RankedPage;
+import com.expedia.seiso.domain.service.search.SearchHit;
+import com.expedia.seiso.domain.service.search.TopK;
+
 import lombok.NonNull;
 import lombok.val;
 import lombok.extern.slf4j.Slf4j;
@@ -35,11 +46,12 @@ import lombok.extern.slf4j.Slf4j;
 @SuppressWarnings("rawtypes")
 public class SearchResults {
 	private Map<Class, Page> typedResults = new HashMap<>();
+	private Set<Class> timedOutItemClasses = new HashSet<>();
 	
 	public List<Class> getItemClasses() {
-		// TODO Use lambda to sort list by class name
-		val set = typedResults.keySet();
-		return new ArrayList<Class>(set);
+		val list = new ArrayList<Class>(typedResults.keySet());
+		list.sort(Comparator.comparing(Class::getSimpleName));
+		return list;
 	}
 	
 	public Page getTypedSerp(@NonNull Class itemClass) {
@@ -55,4 +67,70 @@ public class SearchResults {
 	public void putTypedSerp(@NonNull Class itemClass, Page serp) {
 		typedResults.put(itemClass, serp);
 	}
+	
+	/**
+	 * Records that the search for the given item class was cancelled because it ran past the search deadline. The
+	 * results contain no page for it.
+	 * 
+	 * @param itemClass
+	 *            item class
+	 */
+	public void markTimedOut(@NonNull Class itemClass) {
+		timedOutItemClasses.add(itemClass);
+	}
+	
+	/**
+	 * @return item classes whose searches timed out
+	 */
+	public Set<Class> getTimedOutItemClasses() {
+		return Collections.unmodifiableSet(timedOutItemClasses);
+	}
+	
+	/**
+	 * @return whether any item class is missing from the results because its search timed out
+	 */
+	public boolean isPartial() {
+		return !timedOutItemClasses.isEmpty();
+	}
+	
+	/**
+	 * Merges the ranked pages into a single list of the best hits across item types. Pages that aren't
+	 * {@link RankedPage ranked} don't contribute.
+	 * 
+	 * @param k
+	 *            maximum number of hits
+	 * @return best hits, best first
+	 */
+	public List<SearchHit> getTopHits(int k) {
+		val topK = new TopK<SearchHit>(k);
+		for (val itemClass : getItemClasses()) {
+			val serp = typedResults.get(itemClass);
+			if (serp instanceof RankedPage) {
+				val rankedPage = (RankedPage) serp;
+				val content = rankedPage.getContent();
+				for (int i = 0; i < content.size(); i++) {
+					val score = rankedPage.getScore(i);
+					
+					// Each page is best first, so once one hit misses the cut the rest of the page will too.
+					if (!topK.offer(new SearchHit(itemClass, content.get(i), score), score)) {
+						break;
+					}
+				}
+			}
+		}
+		return topK.toList().stream().map(TopK.Scored::getItem).collect(Collectors.toList());
+	}
+	
+	/**
+	 * @return token for fetching the next page of results, or {@code null} if every type is exhausted
+	 */
+	public ContinuationToken getContinuationToken() {
+		val afterIds = new HashMap<Class, Long>();
+		typedResults.forEach((itemClass, serp) -> {
+			if (serp instanceof KeysetPage && serp.hasNext()) {
+				afterIds.put(itemClass, ((KeysetPage) serp).getNextAfterId());
+			}
+		});
+		return (afterIds.isEmpty() ? null : new ContinuationToken(afterIds));
+	}
 }
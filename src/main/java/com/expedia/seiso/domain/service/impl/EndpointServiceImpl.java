@@ -0,0 +1,120 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.entity.RotationStatus;
+import com.expedia.seiso.domain.entity.ServiceInstancePort;
+import com.expedia.seiso.domain.service.EndpointService;
+import com.expedia.seiso.domain.service.NodeLocks;
+import com.expedia.seiso.domain.service.RotationReconciler;
+
+/**
+ * <p>
+ * Endpoint service that creates endpoints with a single {@code INSERT ... SELECT} and then recalculates the affected
+ * nodes with {@link RotationReconciler#reconcileNodes(java.util.Collection)}, whose recount also brings the rotation
+ * counters up to date. Adding a port to a 3,000-node service instance is one insert plus a few statements per 1,000
+ * nodes, instead of one insert and one recalculation per endpoint.
+ * </p>
+ * <p>
+ * The affected nodes are locked for the whole transaction, so the recalculation queue can't see the new endpoints
+ * before the reconciler has counted them.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Transactional
+@Slf4j
+public class EndpointServiceImpl implements EndpointService {
+	
+	// Each of these does the whole fan-out in one statement, without loading any entities.
+	private static final String INSERT_FOR_PORT_SQL =
+			"insert into endpoint (service_instance_port_id, node_ip_address_id, rotation_status_id) " +
+			"select sip.id, nip.id, :status " +
+			"from service_instance_port sip, node n, node_ip_address nip " +
+			"where sip.id = :id and n.service_instance_id = sip.service_instance_id and nip.node_id = n.id";
+	
+	private static final String INSERT_FOR_NODE_IP_ADDRESS_SQL =
+			"insert into endpoint (service_instance_port_id, node_ip_address_id, rotation_status_id) " +
+			"select sip.id, nip.id, :status " +
+			"from node_ip_address nip, node n, service_instance_port sip " +
+			"where nip.id = :id and n.id = nip.node_id and sip.service_instance_id = n.service_instance_id";
+	
+	private static final String INSERT_FOR_NODES_SQL =
+			"insert into endpoint (service_instance_port_id, node_ip_address_id, rotation_status_id) " +
+			"select sip.id, nip.id, :status " +
+			"from node n, node_ip_address nip, service_instance_port sip " +
+			"where n.id in (:nodeIds) and nip.node_id = n.id and sip.service_instance_id = n.service_instance_id";
+	
+	private static final String SERVICE_INSTANCE_NODE_IDS_JPQL =
+			"select n.id from Node n where n.serviceInstance.id = :siId";
+	
+	@PersistenceContext private EntityManager entityManager;
+	@Autowired private NodeLocks nodeLocks;
+	@Autowired private RotationReconciler rotationReconciler;
+	
+	@Override
+	public int createEndpoints(@NonNull ServiceInstancePort port) {
+		@SuppressWarnings("unchecked")
+		List<Long> nodeIds = entityManager.createQuery(SERVICE_INSTANCE_NODE_IDS_JPQL)
+				.setParameter("siId", port.getServiceInstance().getId())
+				.getResultList();
+		return createEndpoints(INSERT_FOR_PORT_SQL, "id", port.getId(), nodeIds, "port=" + port.getId());
+	}
+	
+	@Override
+	public int createEndpoints(@NonNull NodeIpAddress nip) {
+		val nodeIds = Collections.singletonList(nip.getNode().getId());
+		return createEndpoints(INSERT_FOR_NODE_IP_ADDRESS_SQL, "id", nip.getId(), nodeIds, "nip=" + nip.getIpAddress());
+	}
+	
+	@Override
+	public int createEndpoints(@NonNull Collection<Long> nodeIds) {
+		if (nodeIds.isEmpty()) {
+			return 0;
+		}
+		return createEndpoints(INSERT_FOR_NODES_SQL, "nodeIds", nodeIds, nodeIds, nodeIds.size() + " nodes");
+	}
+	
+	private int createEndpoints(String sql, String param, Object value, Collection<Long> nodeIds, String scope) {
+		long start = System.currentTimeMillis();
+		nodeLocks.lockForTransaction(nodeIds);
+		int numCreated = entityManager.createNativeQuery(sql)
+				.setParameter("status", RotationServiceImpl.codeOf(RotationStatus.UNKNOWN))
+				.setParameter(param, value)
+				.executeUpdate();
+		val reconciled = rotationReconciler.reconcileNodes(nodeIds);
+		long elapsed = System.currentTimeMillis() - start;
+		log.info("Created {} endpoints in {} ms: {}, {}", numCreated, elapsed, scope, reconciled);
+		return numCreated;
+	}
+}
@@ -0,0 +1,95 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.Collections;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.SearchResults;
+import com.expedia.seiso.domain.service.search.SearchQuery;
+import com.expedia.seiso.domain.service.search.SearchResultsListener;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Search engine for {@link SearchQuery#isFuzzy() fuzzy} queries. Only the types with a fuzzy field are searched, and
+ * each type's hits come back closest first. The other search engines hand fuzzy queries off to this one, since only the
+ * {@link SearchIndex} can match by edit distance. Until the index has finished its initial load, fuzzy queries find
+ * nothing.
+ * </p>
+ * <p>
+ * This deliberately doesn't implement {@link com.expedia.seiso.domain.service.SearchEngine}, so it's never a
+ * candidate for the primary search engine.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@SuppressWarnings({ "rawtypes", "unchecked" })
+@Slf4j
+public class FuzzySearchEngine {
+	@Autowired private SearchIndex searchIndex;
+	
+	/**
+	 * @see com.expedia.seiso.domain.service.SearchEngine#search(SearchQuery, Pageable, SearchResultsListener)
+	 */
+	public SearchResults search(
+			@NonNull SearchQuery query,
+			@NonNull Pageable pageable,
+			@NonNull SearchResultsListener listener) {
+		
+		Assert.isTrue(query.isFuzzy(), "Not a fuzzy query");
+		Assert.isTrue(!query.hasFilters(), "Fuzzy search doesn't support filters");
+		val allResults = new SearchResults();
+		val tokens = query.getTokens();
+		log.debug(query.getQuery());
+		if (CollectionUtils.isEmpty(tokens)) {
+			return allResults;
+		}
+		if (!searchIndex.isLoaded()) {
+			log.warn("Search index not loaded yet. Fuzzy search unavailable.");
+			return allResults;
+		}
+		
+		for (val itemClass : searchIndex.getItemClasses()) {
+			if (query.includesType(itemClass) && searchIndex.isFuzzyIndexed(itemClass)) {
+				val serp = searchType(query, itemClass, pageable);
+				allResults.putTypedSerp(itemClass, serp);
+				listener.onTypedSerp(itemClass, serp);
+			}
+		}
+		return allResults;
+	}
+	
+	private Page searchType(SearchQuery query, Class itemClass, Pageable pageable) {
+		val page = searchIndex.fuzzySearch(itemClass, query.getTokens(), pageable);
+		if (query.isCountOnly()) {
+			return new PageImpl(Collections.emptyList(), pageable, page.getTotalElements());
+		}
+		return page;
+	}
+}
@@ -0,0 +1,227 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.repo.HealthStatusRepo;
+import com.expedia.seiso.domain.service.HealthIngestionQueue;
+import com.expedia.seiso.domain.service.HealthUpdate;
+import com.expedia.seiso.domain.service.SearchResultCache;
+import com.expedia.seiso.gateway.NotificationGateway;
+
+/**
+ * <p>
+ * Health ingestion queue backed by a map from node name to latest update, holding at most
+ * {@code seiso.health-buffer-size} nodes. Every {@code seiso.health-flush-interval} milliseconds the worker swaps the
+ * map out and writes it with JDBC batch UPDATEs that touch only the node's health columns and version, 1,000 nodes
+ * per transaction. Nothing loads the node.
+ * </p>
+ * <p>
+ * Rows whose health already matches are left alone, so agents that report the same status every minute don't bump
+ * versions or trigger notifications. When any node did change, cached node search results are dropped and the changed
+ * nodes go out in one {@code Node.update.batch} notification per flush. Updates for nonexistent nodes are silently
+ * dropped.
+ * </p>
+ * <p>
+ * Metrics: {@code health.ingest.accepted}, {@code health.ingest.rejected}, {@code health.ingest.coalesced} and
+ * {@code health.ingest.written} counters (written counts changed nodes), and {@code health.ingest.queue-depth} and
+ * {@code health.ingest.flush-millis} gauges.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Slf4j
+public class HealthIngestionQueueImpl implements HealthIngestionQueue {
+	private static final String METRIC_PREFIX = "health.ingest.";
+	private static final int CHUNK_SIZE = 1000;
+	
+	// The version is the node's health status version. See Node.
+	private static final String UPDATE_HEALTH_SQL =
+			"update node set " +
+			"  health_status_id = ?, health_status_reason = ?, health_status_link = ?, version = version + 1 " +
+			"where " +
+			"  name = ? " +
+			"  and not (health_status_id <=> ? and health_status_reason <=> ? and health_status_link <=> ?)";
+	
+	@Autowired private HealthStatusRepo healthStatusRepo;
+	@Autowired private JdbcTemplate jdbcTemplate;
+	@Autowired private PlatformTransactionManager transactionManager;
+	@Autowired private NotificationGateway notificationGateway;
+	@Autowired private SearchResultCache searchResultCache;
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private CounterService counterService;
+	@Autowired private GaugeService gaugeService;
+	
+	// Guarded by this
+	private Map<String, HealthUpdate> pending = new LinkedHashMap<>();
+	
+	// Health statuses change about never, so remember their IDs.
+	private final Map<String, Long> healthStatusIds = new ConcurrentHashMap<>();
+	
+	@Override
+	public boolean offer(@NonNull List<HealthUpdate> updates) {
+		for (val update : updates) {
+			validate(update);
+		}
+		synchronized (this) {
+			val newNodes = new HashSet<String>();
+			for (val update : updates) {
+				if (!pending.containsKey(update.getNodeName())) {
+					newNodes.add(update.getNodeName());
+				}
+			}
+			if (pending.size() + newNodes.size() > seisoProperties.getHealthBufferSize()) {
+				counterService.increment(METRIC_PREFIX + "rejected");
+				return false;
+			}
+			for (val update : updates) {
+				if (pending.put(update.getNodeName(), update) != null) {
+					counterService.increment(METRIC_PREFIX + "coalesced");
+				}
+				counterService.increment(METRIC_PREFIX + "accepted");
+			}
+			gaugeService.submit(METRIC_PREFIX + "queue-depth", pending.size());
+		}
+		return true;
+	}
+	
+	@Override
+	@PreDestroy
+	@Scheduled(fixedDelayString = "${seiso.health-flush-interval:1000}")
+	public void flush() {
+		Map<String, HealthUpdate> batch;
+		synchronized (this) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = pending;
+			pending = new LinkedHashMap<>();
+			gaugeService.submit(METRIC_PREFIX + "queue-depth", 0);
+		}
+		
+		long start = System.currentTimeMillis();
+		val updates = new ArrayList<HealthUpdate>(batch.values());
+		List<String> changedNodes = new ArrayList<>();
+		for (int i = 0; i < updates.size(); i += CHUNK_SIZE) {
+			val chunk = updates.subList(i, Math.min(i + CHUNK_SIZE, updates.size()));
+			try {
+				changedNodes.addAll(write(chunk));
+			} catch (RuntimeException e) {
+				log.error("Failed to write " + chunk.size() + " health updates, requeueing", e);
+				requeue(chunk);
+			}
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		gaugeService.submit(METRIC_PREFIX + "flush-millis", elapsed);
+		log.debug("Flushed {} health updates in {} ms, {} changed", updates.size(), elapsed, changedNodes.size());
+		
+		if (!changedNodes.isEmpty()) {
+			searchResultCache.invalidate(Node.class);
+			try {
+				notificationGateway.notifyAll(Node.class, changedNodes, NotificationGateway.OP_UPDATE);
+			} catch (RuntimeException e) {
+				log.error("Failed to send health update notification", e);
+			}
+		}
+	}
+	
+	private void validate(HealthUpdate update) {
+		if (update == null || update.getNodeName() == null) {
+			throw new IllegalArgumentException("Health update is missing its node name");
+		}
+		if (update.getReason() != null && update.getReason().length() > 250) {
+			throw new IllegalArgumentException("Reason can't be over 250 characters: node=" + update.getNodeName());
+		}
+		if (update.getLink() != null && update.getLink().length() > 250) {
+			throw new IllegalArgumentException("Link can't be over 250 characters: node=" + update.getNodeName());
+		}
+		healthStatusId(update.getHealthKey());
+	}
+	
+	private Long healthStatusId(String key) {
+		if (key == null) {
+			throw new IllegalArgumentException("Health update is missing its health key");
+		}
+		Long id = healthStatusIds.get(key);
+		if (id == null) {
+			val healthStatus = healthStatusRepo.findByKey(key);
+			if (healthStatus == null) {
+				throw new IllegalArgumentException("No such health status: " + key);
+			}
+			id = healthStatus.getId();
+			healthStatusIds.put(key, id);
+		}
+		return id;
+	}
+	
+	/**
+	 * Writes the given updates in one transaction and returns the names of the nodes whose health changed.
+	 */
+	private List<String> write(List<HealthUpdate> chunk) {
+		List<Object[]> rows = new ArrayList<>(chunk.size());
+		for (val update : chunk) {
+			val healthStatusId = healthStatusId(update.getHealthKey());
+			rows.add(new Object[] {
+					healthStatusId, update.getReason(), update.getLink(),
+					update.getNodeName(),
+					healthStatusId, update.getReason(), update.getLink() });
+		}
+		int[] rowCounts = new TransactionTemplate(transactionManager)
+				.execute(status -> jdbcTemplate.batchUpdate(UPDATE_HEALTH_SQL, rows));
+		
+		List<String> changedNodes = new ArrayList<>();
+		for (int i = 0; i < rowCounts.length; i++) {
+			// Drivers that can't tell us per-statement counts return SUCCESS_NO_INFO, so assume a change.
+			if (rowCounts[i] != 0) {
+				changedNodes.add(chunk.get(i).getNodeName());
+			}
+		}
+		changedNodes.forEach(name -> counterService.increment(METRIC_PREFIX + "written"));
+		return changedNodes;
+	}
+	
+	private void requeue(List<HealthUpdate> chunk) {
+		synchronized (this) {
+			// Anything that arrived since is newer, so it wins. These were already accepted, so ignore the size limit.
+			chunk.forEach(update -> pending.putIfAbsent(update.getNodeName(), update));
+			gaugeService.submit(METRIC_PREFIX + "queue-depth", pending.size());
+		}
+	}
+}
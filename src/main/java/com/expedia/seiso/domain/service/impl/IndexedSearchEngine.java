@@ -0,0 +1,111 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.Collections;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import com.expedia.seiso.domain.service.SearchEngine;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.SearchResults;
+import com.expedia.seiso.domain.service.search.ContinuationPageRequest;
+import com.expedia.seiso.domain.service.search.SearchQuery;
+import com.expedia.seiso.domain.service.search.SearchResultsListener;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search engine that answers from the in-memory {@link SearchIndex}. Falls back to the database search engine until
+ * the index has finished its initial load. Types with a substring index match mid-term fragments through its trigram
+ * lookup, so {@code eb-pro} finds {@code web-prod} here just as it does in the database. Queries with filters always
+ * go to the database search engine, since the index doesn't hold the filtered fields.
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "seiso", name = "search-engine", havingValue = "index", matchIfMissing = true)
+@SuppressWarnings({ "rawtypes", "unchecked" })
+@Slf4j
+public class IndexedSearchEngine implements SearchEngine {
+	@Autowired private SearchIndex searchIndex;
+	@Autowired private SearchEngineImpl databaseSearchEngine;
+	@Autowired private FuzzySearchEngine fuzzySearchEngine;
+
+	@Override
+	public SearchResults search(@NonNull SearchQuery query, @NonNull Pageable pageable) {
+		return search(query, pageable, (itemClass, serp) -> {});
+	}
+	
+	@Override
+	public SearchResults search(
+			@NonNull SearchQuery query,
+			@NonNull Pageable pageable,
+			@NonNull SearchResultsListener listener) {
+		
+		if (query.isFuzzy()) {
+			return fuzzySearchEngine.search(query, pageable, listener);
+		}
+		if (query.hasFilters()) {
+			log.debug("Query has filters. Pushing them down to the database search engine.");
+			return databaseSearchEngine.search(query, pageable, listener);
+		}
+		
+		if (!searchIndex.isLoaded()) {
+			log.debug("Search index not loaded yet. Falling back to database search.");
+			return databaseSearchEngine.search(query, pageable, listener);
+		}
+		
+		val allResults = new SearchResults();
+		val tokens = query.getTokens();
+		log.debug(query.getQuery());
+		if (!CollectionUtils.isEmpty(tokens)) {
+			for (val itemClass : searchIndex.getItemClasses()) {
+				if (!query.includesType(itemClass)) {
+					continue;
+				}
+				val typePageable = ContinuationPageRequest.forItemClass(pageable, itemClass);
+				if (typePageable != null) {
+					val serp = searchType(query, itemClass, typePageable);
+					allResults.putTypedSerp(itemClass, serp);
+					listener.onTypedSerp(itemClass, serp);
+				}
+			}
+		}
+		return allResults;
+	}
+	
+	private Page searchType(SearchQuery query, Class itemClass, Pageable pageable) {
+		val tokens = query.getTokens();
+		if (query.isCountOnly()) {
+			return new PageImpl(Collections.emptyList(), pageable, searchIndex.count(itemClass, tokens));
+		} else if (query.isRanked()) {
+			return searchIndex.rank(itemClass, tokens, pageable);
+		} else {
+			return searchIndex.search(itemClass, tokens, pageable);
+		}
+	}
+}
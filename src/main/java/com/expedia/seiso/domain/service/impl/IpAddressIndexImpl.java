@@ -0,0 +1,193 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.entity.Machine;
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.service.IpAddressIndex;
+import com.expedia.seiso.domain.service.search.Cidr;
+import com.expedia.seiso.domain.service.search.IpRangeTable;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * IP address index implementation that keeps one {@link IpRangeTable} for machines and another for node IP
+ * addresses.
+ * </p>
+ * <p>
+ * Like the search index, it's loaded right after startup and rebuilt periodically to pick up changes that don't go
+ * through Spring Data REST. Changes that arrive during a rebuild are replayed onto the new tables before they replace
+ * the old ones.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Slf4j
+public class IpAddressIndexImpl implements IpAddressIndex {
+	private static final int LOAD_BATCH_SIZE = 10000;
+	private static final String MACHINE_JPQL =
+			"select m.id, m.ipAddress, m.ip6Address from Machine m where m.id > :lastId order by m.id";
+	private static final String NODE_IP_ADDRESS_JPQL =
+			"select nip.id, nip.ipAddress from NodeIpAddress nip where nip.id > :lastId order by nip.id";
+	
+	@PersistenceContext private EntityManager entityManager;
+	
+	private volatile Tables tables;
+	
+	// Non-null while a rebuild is in progress. Guarded by this.
+	private List<Consumer<Tables>> pendingChanges;
+	
+	@Override
+	public boolean isLoaded() {
+		return tables != null;
+	}
+	
+	@Override
+	@Scheduled(fixedDelayString = "${seiso.search-index-rebuild-interval:3600000}")
+	public void rebuild() {
+		log.info("Rebuilding IP address index");
+		long start = System.currentTimeMillis();
+		synchronized (this) {
+			this.pendingChanges = new ArrayList<>();
+		}
+		
+		Tables newTables;
+		try {
+			newTables = new Tables(load(MACHINE_JPQL), load(NODE_IP_ADDRESS_JPQL));
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				this.pendingChanges = null;
+			}
+			throw e;
+		}
+		
+		synchronized (this) {
+			log.trace("Replaying {} changes made during rebuild", pendingChanges.size());
+			pendingChanges.forEach(change -> change.accept(newTables));
+			this.pendingChanges = null;
+			this.tables = newTables;
+		}
+		log.info("Rebuilt IP address index in {} ms: machines={}, nodeIpAddresses={}",
+				System.currentTimeMillis() - start, newTables.machines.size(), newTables.nodeIpAddresses.size());
+	}
+	
+	@Override
+	public void index(@NonNull Item item) {
+		if (item instanceof Machine) {
+			val machine = (Machine) item;
+			val id = toTableId(machine.getId());
+			applyChange(t -> t.machines.put(id, machine.getIpAddress(), machine.getIp6Address()));
+		} else if (item instanceof NodeIpAddress) {
+			val nip = (NodeIpAddress) item;
+			val id = toTableId(nip.getId());
+			applyChange(t -> t.nodeIpAddresses.put(id, nip.getIpAddress()));
+		}
+	}
+	
+	@Override
+	public void remove(@NonNull Item item) {
+		if (item instanceof Machine) {
+			val id = toTableId(item.getId());
+			applyChange(t -> t.machines.remove(id));
+		} else if (item instanceof NodeIpAddress) {
+			val id = toTableId(item.getId());
+			applyChange(t -> t.nodeIpAddresses.remove(id));
+		}
+	}
+	
+	@Override
+	public long[] findMachineIds(@NonNull Cidr cidr) {
+		return toItemIds(getTables().machines.search(cidr));
+	}
+	
+	@Override
+	public long[] findNodeIpAddressIds(@NonNull Cidr cidr) {
+		return toItemIds(getTables().nodeIpAddresses.search(cidr));
+	}
+	
+	private Tables getTables() {
+		val current = tables;
+		Assert.state(current != null, "IP address index not loaded");
+		return current;
+	}
+	
+	private synchronized void applyChange(Consumer<Tables> change) {
+		if (tables != null) {
+			change.accept(tables);
+		}
+		if (pendingChanges != null) {
+			pendingChanges.add(change);
+		}
+	}
+	
+	// Each row is the ID followed by the addresses.
+	private IpRangeTable load(String jpql) {
+		val table = new IpRangeTable();
+		long lastId = 0L;
+		List<Object[]> rows;
+		do {
+			// Create a new query for each batch. Outside of a transaction, the shared entity manager closes the
+			// underlying entity manager once the query executes.
+			rows = entityManager.createQuery(jpql, Object[].class)
+					.setParameter("lastId", lastId)
+					.setMaxResults(LOAD_BATCH_SIZE)
+					.getResultList();
+			for (val row : rows) {
+				lastId = (Long) row[0];
+				val addresses = Arrays.copyOfRange(row, 1, row.length, String[].class);
+				table.add(toTableId(lastId), addresses);
+			}
+		} while (rows.size() == LOAD_BATCH_SIZE);
+		table.compact();
+		return table;
+	}
+	
+	private static int toTableId(Long id) {
+		Assert.notNull(id, "Item must have an ID");
+		return Math.toIntExact(id);
+	}
+	
+	private static long[] toItemIds(int[] ids) {
+		return Arrays.stream(ids).asLongStream().toArray();
+	}
+	
+	private static class Tables {
+		private final IpRangeTable machines;
+		private final IpRangeTable nodeIpAddresses;
+		
+		Tables(IpRangeTable machines, IpRangeTable nodeIpAddresses) {
+			this.machines = machines;
+			this.nodeIpAddresses = nodeIpAddresses;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.service.NodeLocks;
+
+/**
+ * <p>
+ * Node locks backed by a fixed array of {@link ReentrantLock}s, {@code seiso.rotation-lock-stripes} of them (rounded
+ * up to a power of two). The locks are reentrant, so code that already holds a node's lock can take it again.
+ * </p>
+ * <p>
+ * Every acquisition increments {@code rotation.lock.acquired}. Acquisitions that have to wait also increment
+ * {@code rotation.lock.contended} and add their wait to {@code rotation.lock.wait-millis.total}, a running total since
+ * startup. The actuator has no histograms, so compare the total and the contended count between two readings to get
+ * the average wait over that interval.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Slf4j
+public class NodeLocksImpl implements NodeLocks {
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private CounterService counterService;
+	@Autowired private GaugeService gaugeService;
+	
+	private ReentrantLock[] stripes;
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	
+	@PostConstruct
+	public void init() {
+		int numStripes = Integer.highestOneBit(Math.max(1, seisoProperties.getRotationLockStripes()) * 2 - 1);
+		this.stripes = new ReentrantLock[numStripes];
+		for (int i = 0; i < numStripes; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		log.info("Using {} node lock stripes", numStripes);
+	}
+	
+	@Override
+	public NodeLock lock(@NonNull Long nodeId) {
+		val stripe = stripes[stripeOf(nodeId)];
+		acquire(stripe);
+		return stripe::unlock;
+	}
+	
+	@Override
+	public NodeLock lock(@NonNull Collection<Long> nodeIds) {
+		
+		// Ascending stripe order is what keeps overlapping lockers from deadlocking.
+		val indexes = new TreeSet<Integer>();
+		for (Long nodeId : nodeIds) {
+			indexes.add(stripeOf(nodeId));
+		}
+		List<ReentrantLock> held = new ArrayList<>(indexes.size());
+		for (int index : indexes) {
+			acquire(stripes[index]);
+			held.add(stripes[index]);
+		}
+		return () -> {
+			for (int i = held.size() - 1; i >= 0; i--) {
+				held.get(i).unlock();
+			}
+		};
+	}
+	
+	@Override
+	public void lockForTransaction(@NonNull Collection<Long> nodeIds) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("No active transaction");
+		}
+		NodeLock lock = lock(nodeIds);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			
+			@Override
+			public void afterCompletion(int status) {
+				lock.close();
+			}
+		});
+	}
+	
+	private int stripeOf(long nodeId) {
+		int hash = Long.hashCode(nodeId);
+		return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+	}
+	
+	private void acquire(ReentrantLock stripe) {
+		if (!stripe.tryLock()) {
+			counterService.increment("rotation.lock.contended");
+			long start = System.nanoTime();
+			stripe.lock();
+			long total = totalWaitNanos.addAndGet(System.nanoTime() - start);
+			gaugeService.submit("rotation.lock.wait-millis.total", total / 1e6);
+		}
+		counterService.increment("rotation.lock.acquired");
+	}
+}
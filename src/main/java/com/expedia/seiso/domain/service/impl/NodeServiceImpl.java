@@ -0,0 +1,457 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import static com.expedia.seiso.domain.entity.RotationStatus.UNKNOWN;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import com.expedia.seiso.domain.Domain;
+import com.expedia.seiso.domain.entity.IpAddressRole;
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.entity.Machine;
+import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.entity.ServiceInstance;
+import com.expedia.seiso.domain.repo.HealthStatusRepo;
+import com.expedia.seiso.domain.repo.MachineRepo;
+import com.expedia.seiso.domain.repo.NodeRepo;
+import com.expedia.seiso.domain.service.EndpointService;
+import com.expedia.seiso.domain.service.IpAddressIndex;
+import com.expedia.seiso.domain.service.NodeLocks;
+import com.expedia.seiso.domain.service.NodeRegistration;
+import com.expedia.seiso.domain.service.NodeRegistrationResult;
+import com.expedia.seiso.domain.service.NodeService;
+import com.expedia.seiso.domain.service.NodeUpsertResult;
+import com.expedia.seiso.domain.service.RotationReconciler;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.SearchResultCache;
+import com.expedia.seiso.gateway.NotificationGateway;
+
+/**
+ * <p>
+ * Node service that registers nodes with JDBC batch inserts: one batch for the nodes and one for their IP addresses.
+ * The endpoints come from a single {@code INSERT ... SELECT} in {@link EndpointService}, which also recalculates the
+ * new nodes' aggregate rotation statuses in one set-based pass. So registering 500 nodes takes a handful of
+ * statements instead of a few thousand requests.
+ * </p>
+ * <p>
+ * Upserts compare a SHA-256 of the registration against the node's stored content hash before loading anything, so
+ * the common case of an agent repeating itself costs one indexed select.
+ * </p>
+ * <p>
+ * None of this goes through Spring Data REST, so the node and node IP address event handlers don't fire. Their work
+ * happens here instead: once the transaction commits, the changed nodes and IP addresses go into the search and IP
+ * address indexes, their cached search results are dropped, and a single {@code Node.create.batch} notification
+ * replaces the per-node ones for bulk registrations.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Transactional
+@Slf4j
+public class NodeServiceImpl implements NodeService {
+	private static final int MAX_REGISTRATIONS = 1000;
+	
+	private static final String INSERT_NODE_SQL =
+			"insert into node " +
+			"(name, description, version, build_version, service_instance_id, machine_id, health_status_id, " +
+			"aggregate_rotation_status_id, content_hash) " +
+			"values (?, ?, 1, ?, ?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_NODE_IP_ADDRESS_SQL =
+			"insert into node_ip_address " +
+			"(node_id, ip_address_role_id, ip_address, rotation_status_id, aggregate_rotation_status_id) " +
+			"values (?, ?, ?, ?, ?)";
+	
+	private static final String NODE_IDS_JPQL = "select n.name, n.id from Node n where n.name in (:names)";
+	private static final String MACHINE_IDS_JPQL = "select m.name, m.id from Machine m where m.name in (:names)";
+	private static final String IP_ADDRESS_ROLE_IDS_JPQL =
+			"select r.name, r.id from IpAddressRole r where r.serviceInstance = :si";
+	private static final String CONTENT_HASH_JPQL =
+			"select n.contentHash, n.serviceInstance.id, n.id from Node n where n.name = :name";
+	private static final String NODES_JPQL = "select n from Node n where n.id in (:ids)";
+	private static final String NODE_IP_ADDRESSES_JPQL =
+			"select nip from NodeIpAddress nip where nip.node.id in (:nodeIds)";
+	
+	@PersistenceContext private EntityManager entityManager;
+	@Autowired private JdbcTemplate jdbcTemplate;
+	@Autowired private NodeRepo nodeRepo;
+	@Autowired private MachineRepo machineRepo;
+	@Autowired private HealthStatusRepo healthStatusRepo;
+	@Autowired private EndpointService endpointService;
+	@Autowired private RotationReconciler rotationReconciler;
+	@Autowired private NodeLocks nodeLocks;
+	@Autowired private NotificationGateway notificationGateway;
+	@Autowired private SearchIndex searchIndex;
+	@Autowired private IpAddressIndex ipAddressIndex;
+	@Autowired private SearchResultCache searchResultCache;
+	
+	@Override
+	public NodeRegistrationResult registerNodes(
+			@NonNull ServiceInstance serviceInstance,
+			@NonNull List<NodeRegistration> registrations) {
+		
+		if (registrations.isEmpty()) {
+			return new NodeRegistrationResult(0, 0, 0);
+		}
+		if (registrations.size() > MAX_REGISTRATIONS) {
+			throw new IllegalArgumentException("Can't register more than " + MAX_REGISTRATIONS + " nodes at once");
+		}
+		long start = System.currentTimeMillis();
+		val result = insertNodes(serviceInstance, registrations);
+		
+		List<String> nodeNames = new ArrayList<>(registrations.size());
+		registrations.forEach(registration -> nodeNames.add(registration.getName()));
+		afterCommit(() -> notificationGateway.notifyAll(Node.class, nodeNames, NotificationGateway.OP_CREATE));
+		
+		long elapsed = System.currentTimeMillis() - start;
+		log.info("Registered nodes in {} ms: serviceInstance={}, result={}", elapsed, serviceInstance.getKey(), result);
+		return result;
+	}
+	
+	@Override
+	public NodeUpsertResult upsertNode(
+			@NonNull ServiceInstance serviceInstance,
+			@NonNull NodeRegistration registration) {
+		
+		validate(registration);
+		val name = registration.getName();
+		val hash = contentHash(registration);
+		
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager.createQuery(CONTENT_HASH_JPQL).setParameter("name", name).getResultList();
+		if (rows.isEmpty()) {
+			insertNodes(serviceInstance, Collections.singletonList(registration));
+			Node node = nodeRepo.findByName(name);
+			afterCommit(() -> notificationGateway.notify(node, name, NotificationGateway.OP_CREATE));
+			log.info("Upserted node: name={}, result={}", name, NodeUpsertResult.CREATED);
+			return NodeUpsertResult.CREATED;
+		}
+		
+		val row = rows.get(0);
+		if (!serviceInstance.getId().equals(row[1])) {
+			throw new IllegalArgumentException("Node belongs to another service instance: " + name);
+		}
+		if (hash.equals(row[0])) {
+			log.trace("Skipping unchanged node: name={}", name);
+			return NodeUpsertResult.UNCHANGED;
+		}
+		updateNode(serviceInstance, (Long) row[2], registration, hash);
+		log.info("Upserted node: name={}, result={}", name, NodeUpsertResult.UPDATED);
+		return NodeUpsertResult.UPDATED;
+	}
+	
+	/**
+	 * Hashes the parts of a registration that an upsert applies. Rotation statuses are left out, since upserts don't
+	 * apply them to existing IP addresses.
+	 */
+	private static String contentHash(NodeRegistration registration) {
+		val content = new StringBuilder()
+				.append("name=").append(registration.getName()).append('\n')
+				.append("description=").append(registration.getDescription()).append('\n')
+				.append("buildVersion=").append(registration.getBuildVersion()).append('\n')
+				.append("machine=").append(registration.getMachine()).append('\n');
+		val ipAddresses = registration.getIpAddresses();
+		if (ipAddresses == null) {
+			content.append("ipAddresses=*\n");
+		} else {
+			val ipAddressesByRole = new TreeMap<String, String>();
+			ipAddresses.forEach(nip -> ipAddressesByRole.put(nip.getIpAddressRole(), nip.getIpAddress()));
+			ipAddressesByRole.forEach((role, ipAddress) ->
+					content.append("ipAddress=").append(role).append('=').append(ipAddress).append('\n'));
+		}
+		try {
+			val bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+			val digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+			return String.format("%064x", new BigInteger(1, digest));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every JVM has SHA-256", e);
+		}
+	}
+	
+	private NodeRegistrationResult insertNodes(ServiceInstance serviceInstance, List<NodeRegistration> registrations) {
+		
+		// Check everything we can before writing anything.
+		val nodeNames = new ArrayList<String>();
+		val machineNames = new HashSet<String>();
+		for (val registration : registrations) {
+			validate(registration);
+			nodeNames.add(registration.getName());
+			if (registration.getMachine() != null) {
+				machineNames.add(registration.getMachine());
+			}
+		}
+		if (new HashSet<>(nodeNames).size() < nodeNames.size()) {
+			throw new IllegalArgumentException("Node names must be unique");
+		}
+		val existingNodeIds = idsByName(NODE_IDS_JPQL, nodeNames);
+		if (!existingNodeIds.isEmpty()) {
+			throw new IllegalArgumentException("Nodes already exist: " + existingNodeIds.keySet());
+		}
+		val machineIds = idsByName(MACHINE_IDS_JPQL, machineNames);
+		val missingMachines = new LinkedHashSet<String>(machineNames);
+		missingMachines.removeAll(machineIds.keySet());
+		if (!missingMachines.isEmpty()) {
+			throw new IllegalArgumentException("No such machines: " + missingMachines);
+		}
+		val roleIds = ipAddressRoleIds(serviceInstance);
+		
+		// Nodes
+		val healthStatusId = healthStatusRepo.findByKey(Domain.UNKNOWN_HEALTH_STATUS_KEY).getId();
+		val unknownCode = RotationServiceImpl.codeOf(UNKNOWN);
+		List<Object[]> nodeRows = new ArrayList<>(registrations.size());
+		for (val registration : registrations) {
+			val machine = registration.getMachine();
+			nodeRows.add(new Object[] {
+					registration.getName(),
+					registration.getDescription(),
+					registration.getBuildVersion(),
+					serviceInstance.getId(),
+					machine == null ? null : machineIds.get(machine),
+					healthStatusId,
+					unknownCode,
+					contentHash(registration) });
+		}
+		jdbcTemplate.batchUpdate(INSERT_NODE_SQL, nodeRows);
+		val nodeIds = idsByName(NODE_IDS_JPQL, nodeNames);
+		
+		// Node IP addresses
+		List<Object[]> nipRows = new ArrayList<>();
+		for (val registration : registrations) {
+			if (registration.getIpAddresses() == null) {
+				continue;
+			}
+			for (val nip : registration.getIpAddresses()) {
+				val roleId = roleIds.get(nip.getIpAddressRole());
+				if (roleId == null) {
+					throw new IllegalArgumentException("No such IP address role: " + nip.getIpAddressRole());
+				}
+				val statusKey = nip.getRotationStatus();
+				val status = statusKey == null ? UNKNOWN : RotationServiceImpl.settableStatus(statusKey);
+				nipRows.add(new Object[] {
+						nodeIds.get(registration.getName()),
+						roleId,
+						nip.getIpAddress(),
+						RotationServiceImpl.codeOf(status),
+						unknownCode });
+			}
+		}
+		if (!nipRows.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_NODE_IP_ADDRESS_SQL, nipRows);
+		}
+		
+		// Endpoints, rotation counters and aggregate rotation statuses
+		int numEndpoints = endpointService.createEndpoints(nodeIds.values());
+		
+		List<Item> newItems = new ArrayList<>();
+		newItems.addAll(entityManager.createQuery(NODES_JPQL, Node.class)
+				.setParameter("ids", nodeIds.values())
+				.getResultList());
+		if (!nipRows.isEmpty()) {
+			newItems.addAll(entityManager.createQuery(NODE_IP_ADDRESSES_JPQL, NodeIpAddress.class)
+					.setParameter("nodeIds", nodeIds.values())
+					.getResultList());
+		}
+		indexAfterCommit(newItems, Collections.emptyList());
+		
+		return new NodeRegistrationResult(nodeRows.size(), nipRows.size(), numEndpoints);
+	}
+	
+	private void updateNode(ServiceInstance serviceInstance, Long nodeId, NodeRegistration registration, String hash) {
+		
+		// Lock before loading, so the recalculation worker can't bump the version between the two.
+		nodeLocks.lockForTransaction(Collections.singletonList(nodeId));
+		val node = nodeRepo.findOne(nodeId);
+		if (node == null) {
+			throw new IllegalArgumentException("Node was deleted during upsert: " + registration.getName());
+		}
+		
+		node.setDescription(registration.getDescription());
+		node.setBuildVersion(registration.getBuildVersion());
+		node.setMachine(findMachine(registration.getMachine()));
+		node.setContentHash(hash);
+		
+		List<NodeIpAddress> newNips = new ArrayList<>();
+		List<Item> deletedNips = new ArrayList<>();
+		if (registration.getIpAddresses() != null) {
+			val roleIds = ipAddressRoleIds(serviceInstance);
+			Map<String, NodeIpAddress> oldNips = new HashMap<>();
+			node.getIpAddresses().forEach(nip -> oldNips.put(nip.getIpAddressRole().getName(), nip));
+			for (val nipRegistration : registration.getIpAddresses()) {
+				val roleName = nipRegistration.getIpAddressRole();
+				val oldNip = oldNips.remove(roleName);
+				if (oldNip != null) {
+					oldNip.setIpAddress(nipRegistration.getIpAddress());
+					continue;
+				}
+				val roleId = roleIds.get(roleName);
+				if (roleId == null) {
+					throw new IllegalArgumentException("No such IP address role: " + roleName);
+				}
+				val statusKey = nipRegistration.getRotationStatus();
+				val status = statusKey == null ? UNKNOWN : RotationServiceImpl.settableStatus(statusKey);
+				val newNip = new NodeIpAddress()
+						.setNode(node)
+						.setIpAddressRole(entityManager.getReference(IpAddressRole.class, roleId))
+						.setIpAddress(nipRegistration.getIpAddress())
+						.setRotationStatus(RotationServiceImpl.reference(entityManager, status))
+						.setAggregateRotationStatus(RotationServiceImpl.reference(entityManager, UNKNOWN));
+				node.getIpAddresses().add(newNip);
+				newNips.add(newNip);
+			}
+			
+			// Whatever's left wasn't in the registration. Orphan removal deletes them along with their endpoints.
+			node.getIpAddresses().removeAll(oldNips.values());
+			deletedNips.addAll(oldNips.values());
+		}
+		nodeRepo.save(node);
+		entityManager.flush();
+		
+		List<Item> changedItems = new ArrayList<>();
+		changedItems.add(node);
+		changedItems.addAll(node.getIpAddresses());
+		indexAfterCommit(changedItems, deletedNips);
+		
+		// The reconcile also fixes the counters for any IP addresses and endpoints we deleted.
+		newNips.forEach(endpointService::createEndpoints);
+		rotationReconciler.reconcileNodes(Collections.singletonList(node.getId()));
+		afterCommit(() -> notificationGateway.notify(node, node.getName(), NotificationGateway.OP_UPDATE));
+	}
+	
+	private void validate(NodeRegistration registration) {
+		val name = registration.getName();
+		if (name == null || name.trim().isEmpty() || name.length() > 80) {
+			throw new IllegalArgumentException("Node name must be 1 to 80 characters: " + name);
+		}
+		if (registration.getDescription() != null && registration.getDescription().length() > 250) {
+			throw new IllegalArgumentException("Description can't be over 250 characters: node=" + name);
+		}
+		if (registration.getBuildVersion() != null && registration.getBuildVersion().length() > 128) {
+			throw new IllegalArgumentException("Build version can't be over 128 characters: node=" + name);
+		}
+		if (registration.getIpAddresses() == null) {
+			return;
+		}
+		Set<String> roles = new HashSet<>();
+		for (val nip : registration.getIpAddresses()) {
+			val ipAddress = nip.getIpAddress();
+			if (ipAddress == null || ipAddress.isEmpty() || ipAddress.length() > 20) {
+				throw new IllegalArgumentException("IP address must be 1 to 20 characters: node=" + name);
+			}
+			if (nip.getIpAddressRole() == null || !roles.add(nip.getIpAddressRole())) {
+				throw new IllegalArgumentException("Each IP address needs its own IP address role: node=" + name);
+			}
+		}
+	}
+	
+	private Machine findMachine(String name) {
+		if (name == null) {
+			return null;
+		}
+		val machine = machineRepo.findByName(name);
+		if (machine == null) {
+			throw new IllegalArgumentException("No such machine: " + name);
+		}
+		return machine;
+	}
+	
+	private Map<String, Long> idsByName(String jpql, Collection<String> names) {
+		if (names.isEmpty()) {
+			return new HashMap<>();
+		}
+		return toMap(entityManager.createQuery(jpql).setParameter("names", names).getResultList());
+	}
+	
+	private Map<String, Long> ipAddressRoleIds(ServiceInstance serviceInstance) {
+		return toMap(entityManager.createQuery(IP_ADDRESS_ROLE_IDS_JPQL).setParameter("si", serviceInstance)
+				.getResultList());
+	}
+	
+	private Map<String, Long> toMap(List<?> rows) {
+		Map<String, Long> idsByName = new HashMap<>();
+		for (Object row : rows) {
+			val columns = (Object[]) row;
+			idsByName.put((String) columns[0], (Long) columns[1]);
+		}
+		return idsByName;
+	}
+	
+	/**
+	 * Does what the search index, IP address index and search result cache event handlers would have done for the
+	 * given items, once the transaction commits.
+	 */
+	private void indexAfterCommit(List<Item> changedItems, List<Item> deletedItems) {
+		afterCommit(() -> {
+			Set<Class<?>> itemClasses = new HashSet<>();
+			for (Item item : changedItems) {
+				searchIndex.index(item);
+				ipAddressIndex.index(item);
+				itemClasses.add(ClassUtils.getUserClass(item));
+			}
+			for (Item item : deletedItems) {
+				searchIndex.remove(item);
+				ipAddressIndex.remove(item);
+				itemClasses.add(ClassUtils.getUserClass(item));
+			}
+			itemClasses.forEach(searchResultCache::invalidate);
+		});
+	}
+	
+	private void afterCommit(Runnable task) {
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			
+			@Override
+			public void afterCommit() {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// The changes are committed either way, so don't fail the request over it.
+					log.error("Failed to finish node changes after commit", e);
+				}
+			}
+		});
+	}
+}
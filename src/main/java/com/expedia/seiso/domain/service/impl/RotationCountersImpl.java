@@ -0,0 +1,202 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import lombok.NonNull;
+import lombok.val;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.expedia.seiso.domain.entity.RotationCounts;
+import com.expedia.seiso.domain.entity.RotationStatus;
+import com.expedia.seiso.domain.service.NodeLocks;
+import com.expedia.seiso.domain.service.RotationCounters;
+
+/**
+ * @author Willie Wheeler
+ */
+@Service
+@Transactional
+public class RotationCountersImpl implements RotationCounters {
+	private static final String NODE_IP_ADDRESS = "NodeIpAddress";
+	private static final String NODE = "Node";
+	
+	private static final String DELTA_JPQL =
+			"update %s x set"
+					+ " x.rotationCounts.total = x.rotationCounts.total + :total,"
+					+ " x.rotationCounts.enabled = x.rotationCounts.enabled + :enabled,"
+					+ " x.rotationCounts.disabled = x.rotationCounts.disabled + :disabled,"
+					+ " x.rotationCounts.excluded = x.rotationCounts.excluded + :excluded,"
+					+ " x.rotationCounts.partial = x.rotationCounts.partial + :partial,"
+					+ " x.rotationCounts.noEndpoints = x.rotationCounts.noEndpoints + :noEndpoints"
+					+ " where x.id %s";
+	private static final String REPAIR_JPQL =
+			"update %s x set"
+					+ " x.rotationCounts.total = :total,"
+					+ " x.rotationCounts.enabled = :enabled,"
+					+ " x.rotationCounts.disabled = :disabled,"
+					+ " x.rotationCounts.excluded = :excluded,"
+					+ " x.rotationCounts.partial = :partial,"
+					+ " x.rotationCounts.noEndpoints = :noEndpoints"
+					+ " where x.id %s";
+	private static final String SELECT_JPQL =
+			"select x.rotationCounts.total, x.rotationCounts.enabled, x.rotationCounts.disabled,"
+					+ " x.rotationCounts.excluded, x.rotationCounts.partial, x.rotationCounts.noEndpoints"
+					+ " from %s x where x.id = :id";
+	private static final String RECOUNT_JPQL =
+			"select e.rotationStatus.id, count(e) from Endpoint e where e.ipAddress.id = :id"
+					+ " group by e.rotationStatus.id";
+	
+	@PersistenceContext private EntityManager entityManager;
+	@Autowired private NodeLocks nodeLocks;
+	
+	@Override
+	public void endpointAdded(@NonNull Long nipId, RotationStatus status) {
+		execute(DELTA_JPQL, NODE_IP_ADDRESS, nipId, new RotationCounts().add(status, 1));
+	}
+	
+	@Override
+	public void endpointRemoved(@NonNull Long nipId, RotationStatus status) {
+		execute(DELTA_JPQL, NODE_IP_ADDRESS, nipId, new RotationCounts().add(status, -1));
+	}
+	
+	@Override
+	public void endpointChanged(@NonNull Long nipId, RotationStatus oldStatus, RotationStatus newStatus) {
+		changed(NODE_IP_ADDRESS, nipId, oldStatus, newStatus);
+	}
+	
+	@Override
+	public RotationCounts recountEndpoints(@NonNull Long nodeId, @NonNull Long nipId) {
+		nodeLocks.lockForTransaction(Collections.singletonList(nodeId));
+		
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager.createQuery(RECOUNT_JPQL).setParameter("id", nipId).getResultList();
+		val counts = new RotationCounts();
+		for (Object[] row : rows) {
+			counts.add(RotationServiceImpl.toStatus(row[0]), ((Long) row[1]).intValue());
+		}
+		execute(REPAIR_JPQL, NODE_IP_ADDRESS, nipId, counts);
+		return counts;
+	}
+	
+	@Override
+	public void ipAddressAdded(@NonNull Long nodeId, RotationStatus aggregateStatus) {
+		execute(DELTA_JPQL, NODE, nodeId, new RotationCounts().add(aggregateStatus, 1));
+	}
+	
+	@Override
+	public void ipAddressRemoved(@NonNull Long nodeId, RotationStatus aggregateStatus) {
+		execute(DELTA_JPQL, NODE, nodeId, new RotationCounts().add(aggregateStatus, -1));
+	}
+	
+	@Override
+	public void ipAddressChanged(
+			@NonNull Long nodeId,
+			RotationStatus oldAggregateStatus,
+			RotationStatus newAggregateStatus) {
+		
+		changed(NODE, nodeId, oldAggregateStatus, newAggregateStatus);
+	}
+	
+	@Override
+	public RotationCounts getEndpointCounts(@NonNull Long nipId) {
+		return select(NODE_IP_ADDRESS, nipId);
+	}
+	
+	@Override
+	public RotationCounts getIpAddressCounts(@NonNull Long nodeId) {
+		return select(NODE, nodeId);
+	}
+	
+	@Override
+	public void repairEndpointCounts(@NonNull Long nipId, @NonNull RotationCounts counts) {
+		execute(REPAIR_JPQL, NODE_IP_ADDRESS, nipId, counts);
+	}
+	
+	@Override
+	public void repairEndpointCounts(@NonNull Collection<Long> nipIds, @NonNull RotationCounts counts) {
+		executeAll(REPAIR_JPQL, NODE_IP_ADDRESS, nipIds, counts);
+	}
+	
+	@Override
+	public void repairIpAddressCounts(@NonNull Long nodeId, @NonNull RotationCounts counts) {
+		execute(REPAIR_JPQL, NODE, nodeId, counts);
+	}
+	
+	@Override
+	public void repairIpAddressCounts(@NonNull Collection<Long> nodeIds, @NonNull RotationCounts counts) {
+		executeAll(REPAIR_JPQL, NODE, nodeIds, counts);
+	}
+	
+	private void changed(String entityName, Long id, RotationStatus oldStatus, RotationStatus newStatus) {
+		val delta = new RotationCounts().add(oldStatus, -1).add(newStatus, 1);
+		
+		// Nothing to do if the status didn't move between counters.
+		if (delta.equals(new RotationCounts())) {
+			return;
+		}
+		execute(DELTA_JPQL, entityName, id, delta);
+	}
+	
+	private void execute(String jpql, String entityName, Long id, RotationCounts counts) {
+		bind(entityManager.createQuery(String.format(jpql, entityName, "= :id")), counts)
+				.setParameter("id", id)
+				.executeUpdate();
+	}
+	
+	private void executeAll(String jpql, String entityName, Collection<Long> ids, RotationCounts counts) {
+		if (ids.isEmpty()) {
+			return;
+		}
+		bind(entityManager.createQuery(String.format(jpql, entityName, "in (:ids)")), counts)
+				.setParameter("ids", ids)
+				.executeUpdate();
+	}
+	
+	private Query bind(Query query, RotationCounts counts) {
+		return query
+				.setParameter("total", counts.getTotal())
+				.setParameter("enabled", counts.getEnabled())
+				.setParameter("disabled", counts.getDisabled())
+				.setParameter("excluded", counts.getExcluded())
+				.setParameter("partial", counts.getPartial())
+				.setParameter("noEndpoints", counts.getNoEndpoints());
+	}
+	
+	private RotationCounts select(String entityName, Long id) {
+		@SuppressWarnings("unchecked")
+		List<Object[]> rows = entityManager.createQuery(String.format(SELECT_JPQL, entityName))
+				.setParameter("id", id)
+				.getResultList();
+		if (rows.isEmpty()) {
+			return new RotationCounts();
+		}
+		val row = rows.get(0);
+		return new RotationCounts(
+				(Integer) row[0], (Integer) row[1], (Integer) row[2], (Integer) row[3], (Integer) row[4],
+				(Integer) row[5]);
+	}
+}
@@ -0,0 +1,235 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.repo.NodeIpAddressRepo;
+import com.expedia.seiso.domain.repo.NodeRepo;
+import com.expedia.seiso.domain.service.NodeLocks;
+import com.expedia.seiso.domain.service.NodeLocks.NodeLock;
+import com.expedia.seiso.domain.service.RotationRecalculationQueue;
+import com.expedia.seiso.domain.service.RotationService;
+
+/**
+ * <p>
+ * Rotation recalculation queue that keeps one entry per dirty node, holding the IDs of its dirty node IP addresses.
+ * </p>
+ * <p>
+ * An entry becomes due once it has been quiet for {@code seiso.rotation-recalc-window} milliseconds, or once it has
+ * been dirty for {@code seiso.rotation-recalc-max-delay} milliseconds, whichever comes first. The worker reloads the
+ * node in its own transaction, recalculates and saves each dirty node IP address, and then recalculates and saves the
+ * node. So flipping 40 endpoints on a node inside one window costs a single pass over the node.
+ * </p>
+ * <p>
+ * Recalculation holds the node's {@link NodeLocks} lock, so a synchronous flush never returns while the worker is
+ * still halfway through the same node, and two recalculations of the same node can't race each other. Different
+ * nodes recalculate concurrently. If a concurrent write bumps the node's version anyway, we requeue the node and try
+ * again next window.
+ * </p>
+ * <p>
+ * Other failures, such as a dropped database connection, requeue the node with exponential backoff, up to
+ * {@value #MAX_ATTEMPTS} attempts. After that the node is left for the background reconciler to repair.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Slf4j
+public class RotationRecalculationQueueImpl implements RotationRecalculationQueue {
+	private static final int MAX_ATTEMPTS = 10;
+	private static final long MAX_BACKOFF = 60000L;
+	
+	@Autowired private NodeRepo nodeRepo;
+	@Autowired private NodeIpAddressRepo nodeIpAddressRepo;
+	@Autowired private RotationService rotationService;
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private CounterService counterService;
+	@Autowired private PlatformTransactionManager transactionManager;
+	@Autowired private NodeLocks nodeLocks;
+	
+	private final Map<Long, DirtyNode> dirtyNodes = new ConcurrentHashMap<>();
+	
+	@Override
+	public void markDirty(@NonNull NodeIpAddress nip) {
+		val node = nip.getNode();
+		if (node == null || node.getId() == null) {
+			return;
+		}
+		markDirty(node.getId(), nip.getId());
+	}
+	
+	@Override
+	public void markDirty(@NonNull Node node) {
+		if (node.getId() == null) {
+			return;
+		}
+		val nips = node.getIpAddresses();
+		if (nips == null || nips.isEmpty()) {
+			markDirty(node.getId(), null);
+		} else {
+			nips.forEach(nip -> markDirty(node.getId(), nip.getId()));
+		}
+	}
+	
+	@Override
+	public void flush(@NonNull Long nodeId) {
+		NodeLock lock = nodeLocks.lock(nodeId);
+		try {
+			val dirtyNode = dirtyNodes.remove(nodeId);
+			if (dirtyNode != null) {
+				recalculate(nodeId, dirtyNode);
+			}
+		} finally {
+			lock.close();
+		}
+	}
+	
+	@Override
+	@PreDestroy
+	public void flush() {
+		new ArrayList<>(dirtyNodes.keySet()).forEach(this::flush);
+	}
+	
+	/**
+	 * Recalculates the nodes whose windows have closed. Runs on the scheduler thread.
+	 */
+	@Scheduled(fixedDelayString = "${seiso.rotation-recalc-window:250}")
+	public void drain() {
+		long now = System.currentTimeMillis();
+		long window = seisoProperties.getRotationRecalcWindow();
+		long maxDelay = seisoProperties.getRotationRecalcMaxDelay();
+		for (val entry : dirtyNodes.entrySet()) {
+			val dirtyNode = entry.getValue();
+			if (now < dirtyNode.retryAt) {
+				continue;
+			}
+			if (now - dirtyNode.lastMarked >= window || now - dirtyNode.firstMarked >= maxDelay) {
+				NodeLock lock = nodeLocks.lock(entry.getKey());
+				try {
+					// Remove only if it's still the same entry; a flush may have beaten us to it.
+					if (dirtyNodes.remove(entry.getKey(), dirtyNode)) {
+						recalculate(entry.getKey(), dirtyNode);
+					}
+				} finally {
+					lock.close();
+				}
+			}
+		}
+	}
+	
+	private void markDirty(Long nodeId, Long nipId) {
+		long now = System.currentTimeMillis();
+		dirtyNodes.compute(nodeId, (id, dirtyNode) -> {
+			if (dirtyNode == null) {
+				dirtyNode = new DirtyNode(now);
+			}
+			if (nipId != null) {
+				dirtyNode.nipIds.add(nipId);
+			}
+			dirtyNode.lastMarked = now;
+			return dirtyNode;
+		});
+		counterService.increment("rotation.recalc.marked");
+	}
+	
+	private void recalculate(Long nodeId, DirtyNode dirtyNode) {
+		try {
+			new TransactionTemplate(transactionManager).execute(status -> {
+				Node node = nodeRepo.findOne(nodeId);
+				if (node == null) {
+					log.trace("Skipping rotation recalculation for deleted node: id={}", nodeId);
+					return null;
+				}
+				for (NodeIpAddress nip : node.getIpAddresses()) {
+					if (dirtyNode.nipIds.contains(nip.getId())) {
+						rotationService.recalculateAggregateRotationStatus(nip);
+						nodeIpAddressRepo.save(nip);
+					}
+				}
+				rotationService.recalculateAggregateRotationStatus(node);
+				nodeRepo.save(node);
+				return null;
+			});
+			counterService.increment("rotation.recalc.nodes");
+		} catch (OptimisticLockingFailureException e) {
+			log.info("Node changed during rotation recalculation, requeueing: id={}", nodeId);
+			dirtyNode.nipIds.forEach(nipId -> markDirty(nodeId, nipId));
+			markDirty(nodeId, null);
+		} catch (RuntimeException e) {
+			int attempts = dirtyNode.attempts + 1;
+			if (attempts >= MAX_ATTEMPTS) {
+				log.error("Rotation recalculation failed, leaving it to the reconciler: nodeId=" + nodeId
+						+ ", attempts=" + attempts, e);
+				counterService.increment("rotation.recalc.abandoned");
+				return;
+			}
+			long backoff = Math.min(seisoProperties.getRotationRecalcWindow() << attempts, MAX_BACKOFF);
+			log.warn("Rotation recalculation failed, retrying in {} ms: nodeId={}, error={}",
+					backoff, nodeId, e.toString());
+			counterService.increment("rotation.recalc.retried");
+			requeue(nodeId, dirtyNode, attempts, System.currentTimeMillis() + backoff);
+		}
+	}
+	
+	// Merges the failed entry back into whatever has been marked since.
+	private void requeue(Long nodeId, DirtyNode failed, int attempts, long retryAt) {
+		dirtyNodes.compute(nodeId, (id, dirtyNode) -> {
+			if (dirtyNode == null) {
+				dirtyNode = new DirtyNode(failed.firstMarked);
+			}
+			dirtyNode.nipIds.addAll(failed.nipIds);
+			dirtyNode.attempts = Math.max(dirtyNode.attempts, attempts);
+			dirtyNode.retryAt = Math.max(dirtyNode.retryAt, retryAt);
+			return dirtyNode;
+		});
+	}
+	
+	private static class DirtyNode {
+		final Set<Long> nipIds = ConcurrentHashMap.newKeySet();
+		final long firstMarked;
+		volatile long lastMarked;
+		
+		// Failed attempts so far, and when the next one may start
+		volatile int attempts;
+		volatile long retryAt;
+		
+		DirtyNode(long firstMarked) {
+			this.firstMarked = firstMarked;
+			this.lastMarked = firstMarked;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import static com.expedia.seiso.domain.entity.RotationStatus.UNKNOWN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.expedia.seiso.domain.entity.RotationCounts;
+import com.expedia.seiso.domain.entity.RotationStatus;
+import com.expedia.seiso.domain.service.NodeLocks;
+import com.expedia.seiso.domain.service.NodeLocks.NodeLock;
+import com.expedia.seiso.domain.service.RotationCounters;
+import com.expedia.seiso.domain.service.RotationReconcileResult;
+import com.expedia.seiso.domain.service.RotationReconciler;
+
+/**
+ * <p>
+ * Rotation reconciler that works like {@code src/main/sql/util/aggregate-rotation-status.sql}: one grouped query
+ * counts endpoint statuses per node IP address for a chunk of nodes, and we apply the aggregation rules from
+ * {@link RotationServiceImpl} to the counts. Corrections are written with one UPDATE per chunk and status.
+ * </p>
+ * <p>
+ * The same pass doubles as a full recount for the incrementally maintained {@link RotationCounts}, and repairs any
+ * that have drifted.
+ * </p>
+ * <p>
+ * Each chunk holds its nodes' {@link NodeLocks} locks, so it can't interleave with a recalculation of the same nodes.
+ * A chunk spans most stripes, but it only holds them for a few queries.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Slf4j
+public class RotationReconcilerImpl implements RotationReconciler {
+	private static final int CHUNK_SIZE = 1000;
+	
+	private static final String ALL_NODE_IDS_JPQL =
+			"select n.id from Node n where n.id > :lastId order by n.id";
+	private static final String SERVICE_INSTANCE_NODE_IDS_JPQL =
+			"select n.id from Node n where n.id > :lastId and n.serviceInstance.key = :key order by n.id";
+	private static final String DATA_CENTER_NODE_IDS_JPQL =
+			"select n.id from Node n where n.id > :lastId and n.serviceInstance.dataCenter.key = :key order by n.id";
+	
+	// Rotation statuses are read as codes straight off the foreign key columns, so none of these join rotation_status.
+	private static final String ENDPOINT_COUNTS_JPQL =
+			"select nip.id, e.rotationStatus.id, count(e) from Endpoint e join e.ipAddress nip"
+					+ " where nip.node.id in (:nodeIds) group by nip.id, e.rotationStatus.id";
+	private static final String NODE_IP_ADDRESS_JPQL =
+			"select nip.id, nip.node.id, nip.rotationStatus.id, nip.aggregateRotationStatus.id, nip.rotationCounts"
+					+ " from NodeIpAddress nip where nip.node.id in (:nodeIds)";
+	private static final String NODE_JPQL =
+			"select n.id, n.aggregateRotationStatus.id, n.rotationCounts from Node n where n.id in (:nodeIds)";
+	
+	private static final String UPDATE_NODE_IP_ADDRESSES_JPQL =
+			"update NodeIpAddress x set x.aggregateRotationStatus = :status where x.id in (:ids)";
+	
+	// Versioned, so that node ETags change just as they would if we'd saved the entities.
+	private static final String UPDATE_NODES_JPQL =
+			"update versioned Node x set x.aggregateRotationStatus = :status where x.id in (:ids)";
+	
+	@PersistenceContext private EntityManager entityManager;
+	@Autowired private RotationCounters rotationCounters;
+	@Autowired private CounterService counterService;
+	@Autowired private GaugeService gaugeService;
+	@Autowired private PlatformTransactionManager transactionManager;
+	@Autowired private NodeLocks nodeLocks;
+	
+	/**
+	 * Reconciles every node and publishes the drift counts as {@code rotation.reconcile.*} gauges.
+	 */
+	@Scheduled(
+			initialDelayString = "${seiso.rotation-reconcile-interval:21600000}",
+			fixedDelayString = "${seiso.rotation-reconcile-interval:21600000}")
+	public void scheduledReconcile() {
+		val result = reconcileAll();
+		gaugeService.submit("rotation.reconcile.nodes-drifted", result.getNodesDrifted());
+		gaugeService.submit("rotation.reconcile.nips-drifted", result.getIpAddressesDrifted());
+		gaugeService.submit("rotation.reconcile.counters-drifted", result.getCountersDrifted());
+	}
+	
+	@Override
+	public RotationReconcileResult reconcileAll() {
+		return reconcile("all nodes", ALL_NODE_IDS_JPQL, null);
+	}
+	
+	@Override
+	public RotationReconcileResult reconcileServiceInstance(@NonNull String key) {
+		return reconcile("serviceInstance=" + key, SERVICE_INSTANCE_NODE_IDS_JPQL, key);
+	}
+	
+	@Override
+	public RotationReconcileResult reconcileDataCenter(@NonNull String key) {
+		return reconcile("dataCenter=" + key, DATA_CENTER_NODE_IDS_JPQL, key);
+	}
+	
+	@Override
+	public RotationReconcileResult reconcileNodes(@NonNull Collection<Long> nodeIds) {
+		val ids = new ArrayList<Long>(nodeIds);
+		RotationReconcileResult result = RotationReconcileResult.EMPTY;
+		for (int i = 0; i < ids.size(); i += CHUNK_SIZE) {
+			result = result.plus(reconcileChunk(ids.subList(i, Math.min(i + CHUNK_SIZE, ids.size()))));
+		}
+		return result;
+	}
+	
+	private RotationReconcileResult reconcile(String scope, String nodeIdsJpql, String key) {
+		log.info("Reconciling aggregate rotation statuses: {}", scope);
+		long start = System.currentTimeMillis();
+		RotationReconcileResult result = RotationReconcileResult.EMPTY;
+		long lastId = 0L;
+		while (true) {
+			val nodeIds = findNodeIds(nodeIdsJpql, key, lastId);
+			if (nodeIds.isEmpty()) {
+				break;
+			}
+			try {
+				result = result.plus(reconcileChunk(nodeIds));
+			} catch (RuntimeException e) {
+				// Don't let one bad chunk stop the rest of the fleet from being repaired.
+				log.error("Failed to reconcile nodes " + nodeIds.get(0) + " to " + nodeIds.get(nodeIds.size() - 1), e);
+			}
+			lastId = nodeIds.get(nodeIds.size() - 1);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		log.info("Reconciled aggregate rotation statuses in {} ms: {}, {}", elapsed, scope, result);
+		return result;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Long> findNodeIds(String jpql, String key, long lastId) {
+		val query = entityManager.createQuery(jpql)
+				.setParameter("lastId", lastId)
+				.setMaxResults(CHUNK_SIZE);
+		if (key != null) {
+			query.setParameter("key", key);
+		}
+		return (List<Long>) query.getResultList();
+	}
+	
+	private RotationReconcileResult reconcileChunk(List<Long> nodeIds) {
+		RotationReconcileResult result;
+		NodeLock lock = nodeLocks.lock(nodeIds);
+		try {
+			result = new TransactionTemplate(transactionManager).execute(status -> doReconcileChunk(nodeIds));
+		} finally {
+			lock.close();
+		}
+		counterService.increment("rotation.reconcile.chunks");
+		if (result.getIpAddressesDrifted() > 0 || result.getNodesDrifted() > 0 || result.getCountersDrifted() > 0) {
+			log.info("Corrected drifted aggregate rotation statuses: nodes={}, nips={}, counters={}",
+					result.getNodesDrifted(), result.getIpAddressesDrifted(), result.getCountersDrifted());
+		}
+		return result;
+	}
+	
+	private RotationReconcileResult doReconcileChunk(List<Long> nodeIds) {
+		
+		// Endpoint counts by node IP address ID
+		Map<Long, RotationCounts> endpointCounts = new HashMap<>();
+		for (Object[] row : projection(ENDPOINT_COUNTS_JPQL, nodeIds)) {
+			RotationCounts counts = endpointCounts.computeIfAbsent((Long) row[0], id -> new RotationCounts());
+			counts.add(RotationServiceImpl.toStatus(row[1]), ((Long) row[2]).intValue());
+		}
+		
+		// Node IP address aggregates, counted per node for the node pass below
+		Map<Long, RotationCounts> nipCounts = new HashMap<>();
+		Map<RotationStatus, List<Long>> driftedNips = new HashMap<>();
+		Map<RotationCounts, List<Long>> driftedNipCounts = new HashMap<>();
+		val nipRows = projection(NODE_IP_ADDRESS_JPQL, nodeIds);
+		for (Object[] row : nipRows) {
+			Long nipId = (Long) row[0];
+			RotationStatus nipStatus = row[2] == null ? UNKNOWN : RotationServiceImpl.toStatus(row[2]);
+			RotationCounts counts = endpointCounts.getOrDefault(nipId, new RotationCounts());
+			RotationStatus aggStatus = RotationServiceImpl.aggregateNodeIpAddressStatus(nipStatus, counts);
+			nipCounts.computeIfAbsent((Long) row[1], id -> new RotationCounts()).add(aggStatus, 1);
+			if (!RotationServiceImpl.codeOf(aggStatus).equals(row[3])) {
+				driftedNips.computeIfAbsent(aggStatus, s -> new ArrayList<>()).add(nipId);
+			}
+			if (!counts.equals(row[4])) {
+				driftedNipCounts.computeIfAbsent(counts, c -> new ArrayList<>()).add(nipId);
+			}
+		}
+		
+		Map<RotationStatus, List<Long>> driftedNodes = new HashMap<>();
+		Map<RotationCounts, List<Long>> driftedNodeCounts = new HashMap<>();
+		val nodeRows = projection(NODE_JPQL, nodeIds);
+		for (Object[] row : nodeRows) {
+			Long nodeId = (Long) row[0];
+			RotationCounts counts = nipCounts.getOrDefault(nodeId, new RotationCounts());
+			RotationStatus aggStatus = RotationServiceImpl.aggregateNodeStatus(counts);
+			if (!RotationServiceImpl.codeOf(aggStatus).equals(row[1])) {
+				driftedNodes.computeIfAbsent(aggStatus, s -> new ArrayList<>()).add(nodeId);
+			}
+			if (!counts.equals(row[2])) {
+				driftedNodeCounts.computeIfAbsent(counts, c -> new ArrayList<>()).add(nodeId);
+			}
+		}
+		
+		int nipsDrifted = updateAggregates(UPDATE_NODE_IP_ADDRESSES_JPQL, driftedNips);
+		int nodesDrifted = updateAggregates(UPDATE_NODES_JPQL, driftedNodes);
+		
+		// Rows that recounted the same share an UPDATE, and most drifted rows look alike (e.g., a new port adds one
+		// unknown endpoint to every node IP address), so this is usually a handful of statements.
+		int countersDrifted = 0;
+		for (val entry : driftedNipCounts.entrySet()) {
+			rotationCounters.repairEndpointCounts(entry.getValue(), entry.getKey());
+			countersDrifted += entry.getValue().size();
+		}
+		for (val entry : driftedNodeCounts.entrySet()) {
+			rotationCounters.repairIpAddressCounts(entry.getValue(), entry.getKey());
+			countersDrifted += entry.getValue().size();
+		}
+		return new RotationReconcileResult(nodeRows.size(), nipRows.size(), nodesDrifted, nipsDrifted, countersDrifted);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Object[]> projection(String jpql, List<Long> nodeIds) {
+		return entityManager.createQuery(jpql).setParameter("nodeIds", nodeIds).getResultList();
+	}
+	
+	private int updateAggregates(String jpql, Map<RotationStatus, List<Long>> idsByStatus) {
+		int count = 0;
+		for (val entry : idsByStatus.entrySet()) {
+			val status = RotationServiceImpl.reference(entityManager, entry.getKey());
+			count += entityManager.createQuery(jpql)
+					.setParameter("status", status)
+					.setParameter("ids", entry.getValue())
+					.executeUpdate();
+		}
+		return count;
+	}
+}
@@ -21,20 +21,43 @@ import static com.expedia.seiso.domain.entity.RotationStatus.EXCLUDED;
 import static com.expedia.seiso.domain.entity.RotationStatus.NO_ENDPOINTS;
 import static com.expedia.seiso.domain.entity.RotationStatus.PARTIAL;
 import static com.expedia.seiso.domain.entity.RotationStatus.UNKNOWN;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
 import lombok.NonNull;
 import lombok.val;
 import lombok.extern.slf4j.XSlf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.expedia.seiso.SeisoProperties;
 import com.expedia.seiso.domain.entity.Endpoint;
 import com.expedia.seiso.domain.entity.Node;
 import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.entity.RotationCounts;
 import com.expedia.seiso.domain.entity.RotationStatus;
-import com.expedia.seiso.domain.repo.RotationStatusRepo;
+import com.expedia.seiso.domain.entity.RotationStatusCode;
+import com.expedia.seiso.domain.entity.ServiceInstance;
+import com.expedia.seiso.domain.service.NodeLocks;
+import com.expedia.seiso.domain.service.RotationCounters;
+import com.expedia.seiso.domain.service.RotationReconciler;
 import com.expedia.seiso.domain.service.RotationService;
+import com.expedia.seiso.domain.service.RotationUpdate;
+import com.expedia.seiso.domain.service.RotationUpdateResult;
 
 /**
  * @author Willie Wheeler
@@ -43,60 +66,41 @@ import com.expedia.seiso.domain.service.RotationService;
 @Transactional
 @XSlf4j
 public class RotationServiceImpl implements RotationService {
-	@Autowired private RotationStatusRepo rotationStatusRepo;
+	// Statuses that clients may set directly. The others only come out of aggregation.
+	private static final List<RotationStatus> SETTABLE_STATUSES = Arrays.asList(ENABLED, DISABLED, EXCLUDED, UNKNOWN);
+	
+	private static final Map<String, RotationStatus> STATUSES_BY_KEY = new HashMap<>();
+	static {
+		for (val code : RotationStatusCode.values()) {
+			STATUSES_BY_KEY.put(code.getKey(), code.getStatus());
+		}
+	}
+	
+	@PersistenceContext private EntityManager entityManager;
+	@Autowired private RotationReconciler rotationReconciler;
+	@Autowired private RotationCounters rotationCounters;
+	@Autowired private NodeLocks nodeLocks;
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private CounterService counterService;
 
 	@Override
 	public void recalculateAggregateRotationStatus(@NonNull Node node) {
 		log.trace("Recalculating node aggregate rotation status: node={}", node.getName());
 		
-		RotationStatus nodeStatus = null;
-		
-		val nips = node.getIpAddresses();
-		
-		if (nips.isEmpty()) {
-			nodeStatus = NO_ENDPOINTS;
-		} else {
-			int numNips = nips.size();
-			int numEnabled = 0;
-			int numDisabled = 0;
-			int numExcluded = 0;
-			int numPartial = 0;
-			int numNoEndpoints = 0;
-					
-			for (NodeIpAddress nip : nips) {
-				RotationStatus nipStatus = nip.getAggregateRotationStatus();
-				if (ENABLED.equals(nipStatus)) {
-					numEnabled++;
-				} else if (DISABLED.equals(nipStatus)) {
-					numDisabled++;
-				} else if (EXCLUDED.equals(nipStatus)) {
-					numExcluded++;
-				} else if (PARTIAL.equals(nipStatus)) {
-					numPartial++;
-				} else if (NO_ENDPOINTS.equals(nipStatus)) {
-					numNoEndpoints++;
-				}
-			}
-			
-			if (numEnabled == numNips) {
-				nodeStatus = ENABLED;
-			} else if (numDisabled == numNips) {
-				nodeStatus = DISABLED;
-			} else if (numExcluded == numNips) {
-				nodeStatus = EXCLUDED;
-			} else if (numNoEndpoints == numNips) {
-				nodeStatus = NO_ENDPOINTS;
-			} else if (numEnabled > 0 || numPartial > 0) {
-				nodeStatus = PARTIAL;
-			} else {
-				nodeStatus = UNKNOWN;
+		RotationCounts counts =
+				node.getId() == null ? new RotationCounts() : rotationCounters.getIpAddressCounts(node.getId());
+		if (seisoProperties.getRotationCounterVerify()) {
+			val nipStatuses = new ArrayList<RotationStatus>();
+			for (NodeIpAddress nip : node.getIpAddresses()) {
+				nipStatuses.add(nip.getAggregateRotationStatus());
 			}
+			counts = verify("node", node.getId(), counts, RotationCounts.of(nipStatuses),
+					rotationCounters::repairIpAddressCounts);
 		}
 		
-		String nodeStatusKey = nodeStatus.getKey();
-		log.trace("Setting node rotation status to {}", nodeStatusKey);
-		val persistentNodeStatus = rotationStatusRepo.findByKey(nodeStatusKey);
-		node.setAggregateRotationStatus(persistentNodeStatus);
+		val nodeStatus = aggregateNodeStatus(counts);
+		log.trace("Setting node rotation status to {}", nodeStatus.getKey());
+		node.setAggregateRotationStatus(reference(entityManager, nodeStatus));
 	}
 
 	/* (non-Javadoc)
@@ -113,62 +117,230 @@ public class RotationServiceImpl implements RotationService {
 			throw new IllegalStateException("nipRotStatus can't be null");
 		}
 		
-		RotationStatus nipAggRotStatus = null;
+		RotationCounts counts =
+				nip.getId() == null ? new RotationCounts() : rotationCounters.getEndpointCounts(nip.getId());
+		if (seisoProperties.getRotationCounterVerify()) {
+			val endpointStatuses = new ArrayList<RotationStatus>();
+			for (Endpoint endpoint : nip.getEndpoints()) {
+				endpointStatuses.add(endpoint.getRotationStatus());
+			}
+			counts = verify("nip", nip.getId(), counts, RotationCounts.of(endpointStatuses),
+					rotationCounters::repairEndpointCounts);
+		}
+		log.trace("Found {} endpoints", counts.getTotal());
 		
-		val endpoints = nip.getEndpoints();
-		log.trace("Found {} endpoints", endpoints.size());
+		val oldAggRotStatus = nip.getAggregateRotationStatus();
+		val nipAggRotStatus = aggregateNodeIpAddressStatus(nipRotStatus, counts);
+		log.trace("Setting node IP address aggregate rotation status to {}", nipAggRotStatus.getKey());
+		nip.setAggregateRotationStatus(reference(entityManager, nipAggRotStatus));
 		
-		if (endpoints.isEmpty()) {
-			nipAggRotStatus = NO_ENDPOINTS;
+		val node = nip.getNode();
+		if (node != null && node.getId() != null) {
+			rotationCounters.ipAddressChanged(node.getId(), oldAggRotStatus, nipAggRotStatus);
+		}
+	}
+	
+	@Override
+	public RotationUpdateResult updateRotationStatus(
+			@NonNull ServiceInstance serviceInstance,
+			@NonNull RotationUpdate update) {
+		
+		val status = reference(entityManager, settableStatus(update.getStatus()));
+		log.info("Updating rotation status: serviceInstance={}, update={}", serviceInstance.getKey(), update);
+		
+		val nodes = nullToEmpty(update.getNodes());
+		val roles = nullToEmpty(update.getIpAddressRoles());
+		val ports = nullToEmpty(update.getPorts());
+		
+		// Every node the filters could touch. Lock them before writing anything, and hold the locks until we commit,
+		// so the recalculation queue can't recompute them from a half-applied update.
+		val nodeIdJpql = "select n.id from Node n where n.serviceInstance = :si"
+				+ (nodes.isEmpty() ? "" : " and n.name in (:nodes)");
+		val nodeIdQuery = entityManager.createQuery(nodeIdJpql).setParameter("si", serviceInstance);
+		bindFilters(nodeIdQuery, nodes, Collections.emptySet(), Collections.emptySet());
+		@SuppressWarnings("unchecked")
+		List<Long> nodeIds = nodeIdQuery.getResultList();
+		nodeLocks.lockForTransaction(nodeIds);
+		
+		// The subqueries keep the update from joining against its own table, which MySQL won't do.
+		val endpointJpql = new StringBuilder()
+				.append("update Endpoint e set e.rotationStatus = :status")
+				.append(" where e.port in (select p from ServiceInstancePort p where p.serviceInstance = :si")
+				.append(ports.isEmpty() ? "" : " and p.number in (:ports)")
+				.append(") and e.ipAddress in (select nip from NodeIpAddress nip where nip.node.serviceInstance = :si")
+				.append(nodes.isEmpty() ? "" : " and nip.node.name in (:nodes)")
+				.append(roles.isEmpty() ? "" : " and nip.ipAddressRole.name in (:roles)")
+				.append(")");
+		val endpointUpdate = entityManager.createQuery(endpointJpql.toString())
+				.setParameter("status", status)
+				.setParameter("si", serviceInstance);
+		bindFilters(endpointUpdate, nodes, roles, ports);
+		int endpointsUpdated = endpointUpdate.executeUpdate();
+		
+		int nipsUpdated = 0;
+		if (ports.isEmpty()) {
+			val nipJpql = new StringBuilder()
+					.append("update NodeIpAddress nip set nip.rotationStatus = :status")
+					.append(" where nip.node in (select n from Node n where n.serviceInstance = :si")
+					.append(nodes.isEmpty() ? "" : " and n.name in (:nodes)")
+					.append(")")
+					.append(roles.isEmpty() ? "" : " and nip.ipAddressRole in"
+							+ " (select r from IpAddressRole r where r.serviceInstance = :si and r.name in (:roles))");
+			val nipUpdate = entityManager.createQuery(nipJpql.toString())
+					.setParameter("status", status)
+					.setParameter("si", serviceInstance);
+			bindFilters(nipUpdate, nodes, roles, Collections.emptySet());
+			nipsUpdated = nipUpdate.executeUpdate();
+		}
+		
+		// Aggregates for every node the filters could have touched, in the same transaction so the reconciler sees
+		// the updates above.
+		val reconciled = rotationReconciler.reconcileNodes(nodeIds);
+		
+		val result = new RotationUpdateResult(
+				endpointsUpdated, nipsUpdated, reconciled.getIpAddressesDrifted(), reconciled.getNodesDrifted());
+		log.info("Updated rotation status: serviceInstance={}, result={}", serviceInstance.getKey(), result);
+		return result;
+	}
+	
+	/**
+	 * Resolves a rotation status key that a client is allowed to set directly.
+	 * 
+	 * @param key
+	 *            rotation status key
+	 * @return rotation status
+	 * @throws IllegalArgumentException
+	 *             if the key isn't enabled, disabled, excluded or unknown
+	 */
+	static RotationStatus settableStatus(String key) {
+		val status = key == null ? null : STATUSES_BY_KEY.get(key);
+		if (status == null || !SETTABLE_STATUSES.contains(status)) {
+			throw new IllegalArgumentException("Rotation status must be one of enabled, disabled, excluded or unknown");
+		}
+		return status;
+	}
+	
+	/**
+	 * Computes a node's aggregate rotation status from its node IP address counts.
+	 * 
+	 * @param nipCounts
+	 *            node IP addresses by aggregate rotation status
+	 * @return node aggregate rotation status
+	 */
+	static RotationStatus aggregateNodeStatus(RotationCounts nipCounts) {
+		int numNips = nipCounts.getTotal();
+		if (numNips == 0) {
+			return NO_ENDPOINTS;
+		} else if (nipCounts.getEnabled() == numNips) {
+			return ENABLED;
+		} else if (nipCounts.getDisabled() == numNips) {
+			return DISABLED;
+		} else if (nipCounts.getExcluded() == numNips) {
+			return EXCLUDED;
+		} else if (nipCounts.getNoEndpoints() == numNips) {
+			return NO_ENDPOINTS;
+		} else if (nipCounts.getEnabled() > 0 || nipCounts.getPartial() > 0) {
+			return PARTIAL;
+		} else {
+			return UNKNOWN;
+		}
+	}
+	
+	/**
+	 * Computes a node IP address's aggregate rotation status from its own rotation status and its endpoint counts.
+	 * 
+	 * @param nipRotStatus
+	 *            node IP address rotation status
+	 * @param endpointCounts
+	 *            endpoints by rotation status
+	 * @return node IP address aggregate rotation status
+	 */
+	static RotationStatus aggregateNodeIpAddressStatus(RotationStatus nipRotStatus, RotationCounts endpointCounts) {
+		int numEndpoints = endpointCounts.getTotal();
+		if (numEndpoints == 0) {
+			return NO_ENDPOINTS;
 		} else if (DISABLED.equals(nipRotStatus)) {
-			nipAggRotStatus = DISABLED;
+			return DISABLED;
 		} else if (EXCLUDED.equals(nipRotStatus)) {
-			nipAggRotStatus = EXCLUDED;
-		} else {
-			int numEndpoints = endpoints.size();
-			int numEnabled = 0;
-			int numDisabled = 0;
-			int numExcluded = 0;
-			
-			for (Endpoint endpoint : endpoints) {
-				RotationStatus endpointRotStatus = endpoint.getRotationStatus();
-				if (ENABLED.equals(endpointRotStatus)) {
-					numEnabled++;
-				} else if (DISABLED.equals(endpointRotStatus)) {
-					numDisabled++;
-				} else if (EXCLUDED.equals(endpointRotStatus)) {
-					numExcluded++;
-				}
+			return EXCLUDED;
+		}
+		
+		if (ENABLED.equals(nipRotStatus)) {
+			if (endpointCounts.getEnabled() == numEndpoints) {
+				return ENABLED;
+			} else if (endpointCounts.getDisabled() == numEndpoints) {
+				return DISABLED;
+			} else if (endpointCounts.getExcluded() == numEndpoints) {
+				return EXCLUDED;
+			} else if (endpointCounts.getEnabled() > 0) {
+				return PARTIAL;
+			} else {
+				return UNKNOWN;
 			}
-			
-			if (ENABLED.equals(nipRotStatus)) {
-				if (numEnabled == numEndpoints) {
-					nipAggRotStatus = ENABLED;
-				} else if (numDisabled == numEndpoints) {
-					nipAggRotStatus = DISABLED;
-				} else if (numExcluded == numEndpoints) {
-					nipAggRotStatus = EXCLUDED;
-				} else if (numEnabled > 0) {
-					nipAggRotStatus = PARTIAL;
-				} else {
-					nipAggRotStatus = UNKNOWN;
-				}
-			} else if (UNKNOWN.equals(nipRotStatus)) {
-				if (numExcluded == numEndpoints) {
-					nipAggRotStatus = EXCLUDED;
-				} else {
-					nipAggRotStatus = UNKNOWN;
-				}
+		} else if (UNKNOWN.equals(nipRotStatus)) {
+			if (endpointCounts.getExcluded() == numEndpoints) {
+				return EXCLUDED;
 			} else {
-				// This count occur if somebody adds or renames rotation statuses.
-				// But we don't expect it.
-				nipAggRotStatus = UNKNOWN;
+				return UNKNOWN;
 			}
+		} else {
+			// This count occur if somebody adds or renames rotation statuses.
+			// But we don't expect it.
+			return UNKNOWN;
 		}
+	}
+	
+	/**
+	 * Cross-checks maintained counts against a full recount, repairing the counters if they've drifted.
+	 * 
+	 * @return the recount
+	 */
+	private RotationCounts verify(
+			String type,
+			Long id,
+			RotationCounts counted,
+			RotationCounts recounted,
+			BiConsumer<Long, RotationCounts> repair) {
 		
-		String nipAggRotStatusKey = nipAggRotStatus.getKey();
-		log.trace("Setting node IP address aggregate rotation status to {}", nipAggRotStatusKey);
-		RotationStatus persistentNipAggRotStatus = rotationStatusRepo.findByKey(nipAggRotStatusKey);
-		nip.setAggregateRotationStatus(persistentNipAggRotStatus);
+		if (id != null && !counted.equals(recounted)) {
+			log.warn("Rotation counters drifted: type={}, id={}, counters={}, recount={}",
+					type, id, counted, recounted);
+			counterService.increment("rotation.counters.drifted");
+			repair.accept(id, recounted);
+		}
+		return recounted;
+	}
+	
+	/**
+	 * Returns a reference to the persistent rotation status without querying for it, since the row IDs are the fixed
+	 * {@link RotationStatusCode}s.
+	 */
+	static RotationStatus reference(EntityManager entityManager, RotationStatus status) {
+		return entityManager.getReference(RotationStatus.class, codeOf(status));
+	}
+	
+	static Long codeOf(RotationStatus status) {
+		return RotationStatusCode.forKey(status.getKey()).getCode();
+	}
+	
+	static RotationStatus toStatus(Object code) {
+		val statusCode = code == null ? null : RotationStatusCode.forCode((Long) code);
+		return statusCode == null ? null : statusCode.getStatus();
+	}
+	
+	private static void bindFilters(Query query, Set<String> nodes, Set<String> roles, Set<?> ports) {
+		if (!nodes.isEmpty()) {
+			query.setParameter("nodes", nodes);
+		}
+		if (!roles.isEmpty()) {
+			query.setParameter("roles", roles);
+		}
+		if (!ports.isEmpty()) {
+			query.setParameter("ports", ports);
+		}
+	}
+	
+	private static <T> Set<T> nullToEmpty(Set<T> set) {
+		return set == null ? Collections.emptySet() : set;
 	}
 }
@@ -16,23 +16,35 @@
 package com.expedia.seiso.domain.service.impl;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.support.Repositories;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
+import com.expedia.seiso.SeisoProperties;
 import com.expedia.seiso.domain.repo.custom.SearchableRepository;
 import com.expedia.seiso.domain.service.SearchEngine;
+import com.expedia.seiso.domain.service.SearchResultCache;
 import com.expedia.seiso.domain.service.SearchResults;
+import com.expedia.seiso.domain.service.search.ContinuationPageRequest;
+import com.expedia.seiso.domain.service.search.RelevanceScorer;
 import com.expedia.seiso.domain.service.search.SearchQuery;
+import com.expedia.seiso.domain.service.search.SearchResultsListener;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -54,47 +66,147 @@ import lombok.extern.slf4j.Slf4j;
 public class SearchEngineImpl implements SearchEngine {
 	@Autowired private Repositories repositories;
 	@Autowired private ExecutorService executorService;
+	@Autowired private SearchResultCache searchResultCache;
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private FuzzySearchEngine fuzzySearchEngine;
 
 	@Override
-	@SneakyThrows({ ExecutionException.class, InterruptedException.class })
 	public SearchResults search(@NonNull SearchQuery query, @NonNull Pageable pageable) {
+		return search(query, pageable, (itemClass, serp) -> {});
+	}
+	
+	/**
+	 * Searches each searchable type in parallel, reporting each type as it completes. Types that don't finish within
+	 * the configured search timeout are cancelled and marked as timed out in the results, so one slow type can't hold
+	 * up the rest.
+	 */
+	@Override
+	@SneakyThrows({ ExecutionException.class, InterruptedException.class })
+	public SearchResults search(
+			@NonNull SearchQuery query,
+			@NonNull Pageable pageable,
+			@NonNull SearchResultsListener listener) {
+		
+		if (query.isFuzzy()) {
+			return fuzzySearchEngine.search(query, pageable, listener);
+		}
+		
 		val allResults = new SearchResults();
-		val tokens = query.getTokens();
 		log.debug(query.getQuery());
-		if (!CollectionUtils.isEmpty(tokens)) {
-			val tasks = createSearchTasks(tokens, pageable);
-			val futures = executorService.invokeAll(tasks);
-			for (val future : futures) {
-				val serp = future.get();
-				allResults.putTypedSerp(serp.getItemClass(), serp.getResultPage());
+		if (query.hasCriteria()) {
+			val tasks = createSearchTasks(query, pageable, allResults);
+			for (val itemClass : allResults.getItemClasses()) {
+				listener.onTypedSerp(itemClass, allResults.getTypedSerp(itemClass));
+			}
+			if (!tasks.isEmpty()) {
+				val timeout = seisoProperties.getSearchTimeout();
+				val deadline = System.currentTimeMillis() + timeout;
+				val completionService = new ExecutorCompletionService<TypedSerp>(executorService);
+				val pending = new HashMap<Future<TypedSerp>, SearchTask>();
+				for (val task : tasks) {
+					pending.put(completionService.submit(task), task);
+				}
+				try {
+					while (!pending.isEmpty()) {
+						val remaining = deadline - System.currentTimeMillis();
+						val future = completionService.poll(Math.max(remaining, 0L), TimeUnit.MILLISECONDS);
+						if (future == null) {
+							break;
+						}
+						pending.remove(future);
+						val serp = future.get();
+						allResults.putTypedSerp(serp.getItemClass(), serp.getResultPage());
+						listener.onTypedSerp(serp.getItemClass(), serp.getResultPage());
+					}
+					for (val task : pending.values()) {
+						log.warn("Search timed out after {} ms: itemClass={}",
+								timeout, task.getItemClass().getSimpleName());
+						allResults.markTimedOut(task.getItemClass());
+					}
+				} finally {
+					pending.keySet().forEach(future -> future.cancel(true));
+				}
 			}
 		}
 		return allResults;
 	} 
 	
-	private Collection<SearchTask> createSearchTasks(Set<String> tokens, Pageable pageable) {
+	// We only fan out to the types the query selects and whose filter paths cover its filters. Cached pages go straight
+	// into the results, so we only fan out for the types that missed. The cache is keyed on tokens alone, so filtered
+	// searches bypass it.
+	private Collection<SearchTask> createSearchTasks(SearchQuery query, Pageable pageable, SearchResults allResults) {
+		val tokens = query.getTokens();
 		val tasks = new LinkedList<SearchTask>();
 		for (val itemClass : repositories) {
 			val repo = repositories.getRepositoryFor(itemClass);
 			if (repo instanceof SearchableRepository) {
 				val searchableRepo = (SearchableRepository) repo;
-				tasks.add(new SearchTask(searchableRepo, tokens, pageable));
+				val resultType = searchableRepo.getResultType();
+				val filters = query.getFilters(searchableRepo.getFilterPaths());
+				if (!query.includesType(resultType) || filters == null) {
+					continue;
+				}
+				val typePageable = ContinuationPageRequest.forItemClass(pageable, resultType);
+				if (typePageable != null) {
+					val fetchPageable = toFetchPageable(query, typePageable);
+					val cacheable = !query.isCountOnly() && filters.isEmpty();
+					val cachedSerp = (cacheable ? searchResultCache.get(resultType, tokens, fetchPageable) : null);
+					if (cachedSerp != null) {
+						val serp = toResultPage(query, searchableRepo, cachedSerp, typePageable);
+						allResults.putTypedSerp(resultType, serp);
+					} else {
+						tasks.add(new SearchTask(searchableRepo, query, filters, typePageable));
+					}
+				}
 			}
 		}
 		return tasks;
 	}
 	
+	// To rank by relevance, we fetch a window of candidates by ID and keep the best of them.
+	private Pageable toFetchPageable(SearchQuery query, Pageable typePageable) {
+		return (query.isRanked() ? new PageRequest(0, seisoProperties.getSearchRankWindow()) : typePageable);
+	}
+	
+	private Page toResultPage(
+			SearchQuery query,
+			SearchableRepository searchableRepo,
+			Page fetched,
+			Pageable typePageable) {
+		
+		if (!query.isRanked()) {
+			return fetched;
+		}
+		val scorer = new RelevanceScorer(query.getTokens());
+		return scorer.rank(fetched.getContent(), searchableRepo.getSummaryFieldNames(), fetched.getTotalElements(),
+				typePageable);
+	}
+	
 	@RequiredArgsConstructor
 	private class SearchTask implements Callable<TypedSerp> {
 		@NonNull private SearchableRepository searchableRepo;
-		@NonNull private Set<String> keywords;
+		@NonNull private SearchQuery query;
+		@NonNull private Map<String, Set<String>> filters;
 		@NonNull private Pageable pageable;
+		
+		public Class getItemClass() {
+			return searchableRepo.getResultType();
+		}
 
 		@Override
 		public TypedSerp call() throws Exception {
 			val itemClass = searchableRepo.getResultType();
-			val itemPage = searchableRepo.search(keywords, pageable);
-			return new TypedSerp(itemClass, itemPage);
+			val keywords = query.getTokens();
+			if (query.isCountOnly()) {
+				val total = searchableRepo.countSearchHits(filters, keywords);
+				return new TypedSerp(itemClass, new PageImpl(Collections.emptyList(), pageable, total));
+			}
+			val fetchPageable = toFetchPageable(query, pageable);
+			val itemPage = searchableRepo.search(filters, keywords, fetchPageable);
+			if (filters.isEmpty()) {
+				searchResultCache.put(itemClass, keywords, fetchPageable, itemPage);
+			}
+			return new TypedSerp(itemClass, toResultPage(query, searchableRepo, itemPage, pageable));
 		}
 	}
 	
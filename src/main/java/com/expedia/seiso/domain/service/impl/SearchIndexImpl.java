@@ -0,0 +1,574 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.repo.custom.SearchableRepository;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.domain.service.search.BkTree;
+import com.expedia.seiso.domain.service.search.InvertedIndex;
+import com.expedia.seiso.domain.service.search.KeysetPage;
+import com.expedia.seiso.domain.service.search.KeysetPageRequest;
+import com.expedia.seiso.domain.service.search.PostingList;
+import com.expedia.seiso.domain.service.search.PrefixTrie;
+import com.expedia.seiso.domain.service.search.RankedPage;
+import com.expedia.seiso.domain.service.search.RelevanceScorer;
+import com.expedia.seiso.domain.service.search.TopK;
+import com.expedia.seiso.domain.service.search.TrigramIndex;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Search index implementation that keeps an {@link InvertedIndex} per searchable item type, plus a
+ * {@link TrigramIndex} for types with substring fields, a {@link PrefixTrie} for types offering suggestions and a
+ * {@link BkTree} over the name terms of types with fuzzy search.
+ * </p>
+ * <p>
+ * The first load happens right after startup, on the scheduler thread, and the index is rebuilt periodically after
+ * that to pick up changes that don't go through Spring Data REST (e.g. cascade deletes). Changes that arrive during a
+ * rebuild are replayed onto the new index before it replaces the old one, so they aren't lost.
+ * </p>
+ * <p>
+ * Nothing is loaded unless {@code seiso.search-engine=index}. The other engines keep the database's substring
+ * semantics: repository searches fall back to {@code like '%token%'}, and suggestions and fuzzy matches are off.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@SuppressWarnings({ "rawtypes", "unchecked" })
+@Slf4j
+public class SearchIndexImpl implements SearchIndex {
+	private static final int LOAD_BATCH_SIZE = 10000;
+	private static final String INDEX_ENGINE = "index";
+	
+	@Autowired private Repositories repositories;
+	@Autowired private SeisoProperties seisoProperties;
+	@PersistenceContext private EntityManager entityManager;
+	
+	// Built lazily, since looking up the repositories while the context is starting up creates circular references.
+	private Map<Class, IndexedType> indexedTypes;
+	
+	private volatile Map<Class, ItemIndex> indexes;
+	
+	// Non-null while a rebuild is in progress. Guarded by this.
+	private List<PendingChange> pendingChanges;
+	
+	@Override
+	public boolean isLoaded() {
+		return indexes != null;
+	}
+	
+	@Override
+	public List<Class> getItemClasses() {
+		val current = indexes;
+		return current == null ? Collections.emptyList() : new ArrayList<>(current.keySet());
+	}
+	
+	@Override
+	@Scheduled(fixedDelayString = "${seiso.search-index-rebuild-interval:3600000}")
+	public void rebuild() {
+		if (!INDEX_ENGINE.equals(seisoProperties.getSearchEngine())) {
+			log.debug("Not rebuilding search index: searchEngine={}", seisoProperties.getSearchEngine());
+			return;
+		}
+		log.info("Rebuilding search index");
+		long start = System.currentTimeMillis();
+		val types = getIndexedTypes();
+		synchronized (this) {
+			this.pendingChanges = new ArrayList<>();
+		}
+		
+		val newIndexes = new LinkedHashMap<Class, ItemIndex>();
+		try {
+			for (val type : types.values()) {
+				newIndexes.put(type.itemClass, load(type));
+			}
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				this.pendingChanges = null;
+			}
+			throw e;
+		}
+		
+		synchronized (this) {
+			log.trace("Replaying {} changes made during rebuild", pendingChanges.size());
+			pendingChanges.forEach(change -> change.applyTo(newIndexes));
+			this.pendingChanges = null;
+			this.indexes = newIndexes;
+		}
+		log.info("Rebuilt search index in {} ms", System.currentTimeMillis() - start);
+	}
+	
+	@Override
+	public void index(@NonNull Item item) {
+		val type = findIndexedType(item);
+		if (type != null) {
+			val id = toIndexId(item.getId());
+			val values = type.toValues(item);
+			applyChange(type.itemClass, index -> index.put(id, values));
+		}
+	}
+	
+	@Override
+	public void remove(@NonNull Item item) {
+		val type = findIndexedType(item);
+		if (type != null) {
+			val id = toIndexId(item.getId());
+			applyChange(type.itemClass, index -> index.remove(id));
+		}
+	}
+	
+	@Override
+	public boolean isSubstringIndexed(@NonNull Class<?> itemClass) {
+		val current = indexes;
+		return current != null && current.containsKey(itemClass) && current.get(itemClass).trigram != null;
+	}
+	
+	@Override
+	public int[] searchSubstrings(@NonNull Class<?> itemClass, @NonNull Set<String> searchTokens) {
+		Assert.isTrue(isSubstringIndexed(itemClass), "No substring index for " + itemClass.getName());
+		return indexes.get(itemClass).trigram.search(searchTokens);
+	}
+	
+	@Override
+	public boolean isSuggestIndexed(@NonNull Class<?> itemClass) {
+		val current = indexes;
+		return current != null && current.containsKey(itemClass) && current.get(itemClass).suggest != null;
+	}
+	
+	@Override
+	public int suggest(@NonNull Class<?> itemClass, @NonNull String prefix, @NonNull String[] results) {
+		Assert.isTrue(isSuggestIndexed(itemClass), "No suggestions for " + itemClass.getName());
+		return indexes.get(itemClass).suggest.complete(prefix, results);
+	}
+	
+	@Override
+	public boolean isFuzzyIndexed(@NonNull Class<?> itemClass) {
+		val current = indexes;
+		return current != null && current.containsKey(itemClass) && current.get(itemClass).fuzzy != null;
+	}
+	
+	@Override
+	public <T> RankedPage<T> fuzzySearch(
+			@NonNull Class<T> itemClass,
+			@NonNull Set<String> searchTokens,
+			@NonNull Pageable pageable) {
+		
+		Assert.isTrue(isFuzzyIndexed(itemClass), "No fuzzy index for " + itemClass.getName());
+		val itemIndex = indexes.get(itemClass);
+		val type = itemIndex.type;
+		
+		// Closest distance per item across the tokens
+		val distances = new HashMap<Integer, Integer>();
+		for (val token : searchTokens) {
+			fuzzySearch(itemIndex.fuzzy, token, (id, distance) -> distances.merge(id, distance, Math::min));
+		}
+		
+		val ids = distances.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+		val topK = new TopK<T>(pageable.getPageSize());
+		for (val id : ids) {
+			val values = itemIndex.inverted.getDocument(id);
+			
+			// Null if the item was removed after we searched.
+			if (values != null) {
+				val score = toFuzzyScore(distances.get(id), values[type.fuzzyFieldPosition]);
+				if (topK.size() < pageable.getPageSize() || score > topK.peekScore()) {
+					topK.offer((T) type.toItem(id, values), score);
+				}
+			}
+		}
+		return RelevanceScorer.toPage(topK, pageable, ids.length);
+	}
+	
+	@Override
+	public <T> Page<T> search(
+			@NonNull Class<T> itemClass,
+			@NonNull Set<String> searchTokens,
+			@NonNull Pageable pageable) {
+		
+		val current = indexes;
+		Assert.state(current != null, "Search index not loaded");
+		Assert.isTrue(current.containsKey(itemClass), "Not an indexed type: " + itemClass.getName());
+		val itemIndex = current.get(itemClass);
+		val index = itemIndex.inverted;
+		val type = getIndexedTypes().get(itemClass);
+		
+		val ids = findIds(itemIndex, searchTokens);
+		int from = KeysetPageRequest.startIndex(pageable, ids);
+		int to = Math.min(from + pageable.getPageSize(), ids.length);
+		val content = new ArrayList<T>(to - from);
+		for (int i = from; i < to; i++) {
+			val values = index.getDocument(ids[i]);
+			
+			// Null if the item was removed after we searched.
+			if (values != null) {
+				content.add((T) type.toItem(ids[i], values));
+			}
+		}
+		return new KeysetPage<T>(content, pageable, ids.length, (to < ids.length ? (long) ids[to - 1] : null));
+	}
+	
+	@Override
+	public <T> RankedPage<T> rank(
+			@NonNull Class<T> itemClass,
+			@NonNull Set<String> searchTokens,
+			@NonNull Pageable pageable) {
+		
+		val current = indexes;
+		Assert.state(current != null, "Search index not loaded");
+		Assert.isTrue(current.containsKey(itemClass), "Not an indexed type: " + itemClass.getName());
+		val itemIndex = current.get(itemClass);
+		val index = itemIndex.inverted;
+		val type = getIndexedTypes().get(itemClass);
+		
+		val ids = findIds(itemIndex, searchTokens);
+		val scorer = new RelevanceScorer(searchTokens);
+		val topK = new TopK<T>(pageable.getPageSize());
+		for (val id : ids) {
+			val values = index.getDocument(id);
+			
+			// Null if the item was removed after we searched.
+			if (values != null) {
+				val score = scorer.score(values);
+				
+				// Only build the item if it makes the cut for now.
+				if (topK.size() < pageable.getPageSize() || score > topK.peekScore()) {
+					topK.offer((T) type.toItem(id, values), score);
+				}
+			}
+		}
+		return RelevanceScorer.toPage(topK, pageable, ids.length);
+	}
+	
+	@Override
+	public int count(@NonNull Class<?> itemClass, @NonNull Set<String> searchTokens) {
+		val current = indexes;
+		Assert.state(current != null, "Search index not loaded");
+		Assert.isTrue(current.containsKey(itemClass), "Not an indexed type: " + itemClass.getName());
+		return findIds(current.get(itemClass), searchTokens).length;
+	}
+	
+	// Substring-indexed types also match tokens in the middle of a term, like the database search does.
+	private static int[] findIds(ItemIndex itemIndex, Set<String> searchTokens) {
+		val ids = itemIndex.inverted.search(searchTokens);
+		return itemIndex.trigram == null ? ids : PostingList.union(ids, itemIndex.trigram.search(searchTokens));
+	}
+	
+	private synchronized Map<Class, IndexedType> getIndexedTypes() {
+		if (indexedTypes == null) {
+			val types = new LinkedHashMap<Class, IndexedType>();
+			for (val itemClass : repositories) {
+				val repo = repositories.getRepositoryFor(itemClass);
+				if (repo instanceof SearchableRepository) {
+					val searchableRepo = (SearchableRepository) repo;
+					val itemType = searchableRepo.getResultType();
+					types.put(itemType, new IndexedType(itemType, searchableRepo));
+				}
+			}
+			this.indexedTypes = types;
+		}
+		return indexedTypes;
+	}
+	
+	private IndexedType findIndexedType(Item item) {
+		return getIndexedTypes().get(ClassUtils.getUserClass(item));
+	}
+	
+	private synchronized void applyChange(Class itemClass, Consumer<ItemIndex> change) {
+		if (indexes != null) {
+			change.accept(indexes.get(itemClass));
+		}
+		if (pendingChanges != null) {
+			pendingChanges.add(new PendingChange(itemClass, change));
+		}
+	}
+	
+	private ItemIndex load(IndexedType type) {
+		val index = new ItemIndex(type);
+		long lastId = 0L;
+		List<Object[]> rows;
+		do {
+			// Create a new query for each batch. Outside of a transaction, the shared entity manager closes the
+			// underlying entity manager once the query executes.
+			rows = entityManager.createQuery(type.loadJpql, Object[].class)
+					.setParameter("lastId", lastId)
+					.setMaxResults(LOAD_BATCH_SIZE)
+					.getResultList();
+			for (val row : rows) {
+				lastId = (Long) row[0];
+				val values = new String[row.length - 1];
+				for (int i = 1; i < row.length; i++) {
+					values[i - 1] = (String) row[i];
+				}
+				index.put(toIndexId(lastId), values);
+			}
+		} while (rows.size() == LOAD_BATCH_SIZE);
+		if (index.trigram != null) {
+			index.trigram.compact();
+		}
+		if (index.suggest != null) {
+			index.suggest.compact();
+		}
+		log.debug("Indexed {} {} items", index.inverted.size(), type.itemClass.getSimpleName());
+		return index;
+	}
+	
+	/**
+	 * Matches a single token, whose terms must all approximately match some term in the fuzzy field. Reports each
+	 * matching item with the sum of its closest term distances.
+	 */
+	private void fuzzySearch(BkTree tree, String token, FuzzyMatchHandler handler) {
+		val terms = InvertedIndex.toTerms(token);
+		if (terms.isEmpty()) {
+			return;
+		}
+		
+		// Per term, the ID arrays of the matching tree terms and their distances
+		val termMatches = new ArrayList<List<int[]>>(terms.size());
+		val termDistances = new ArrayList<List<Integer>>(terms.size());
+		int[] hits = null;
+		for (val term : terms) {
+			val matches = new ArrayList<int[]>();
+			val matchDistances = new ArrayList<Integer>();
+			tree.search(term, getMaxFuzzyDistance(term), (ids, distance) -> {
+				matches.add(ids);
+				matchDistances.add(distance);
+			});
+			int[] termHits = new int[0];
+			for (val ids : matches) {
+				termHits = PostingList.union(termHits, ids);
+			}
+			hits = (hits == null ? termHits : PostingList.intersect(hits, termHits));
+			if (hits.length == 0) {
+				return;
+			}
+			termMatches.add(matches);
+			termDistances.add(matchDistances);
+		}
+		
+		for (val id : hits) {
+			int total = 0;
+			for (int i = 0; i < termMatches.size(); i++) {
+				val matches = termMatches.get(i);
+				int closest = Integer.MAX_VALUE;
+				for (int j = 0; j < matches.size(); j++) {
+					if (Arrays.binarySearch(matches.get(j), id) >= 0) {
+						closest = Math.min(closest, termDistances.get(i).get(j));
+					}
+				}
+				total += closest;
+			}
+			handler.onMatch(id, total);
+		}
+	}
+	
+	private int getMaxFuzzyDistance(String term) {
+		int max = (term.length() < 3 ? 0 : term.length() < 6 ? 1 : 2);
+		return Math.min(max, seisoProperties.getSearchFuzzyMaxDistance());
+	}
+	
+	// Closer is better. Among equally close matches, shorter values are better, as with relevance ranking.
+	private static int toFuzzyScore(int distance, String value) {
+		int length = (value == null ? 0 : Math.min(value.length(), 0xFFFF));
+		return -((distance << 16) | length);
+	}
+	
+	private static int toIndexId(Long id) {
+		Assert.notNull(id, "Item must have an ID");
+		return Math.toIntExact(id);
+	}
+	
+	/**
+	 * Index metadata for a searchable type. Stored fields are the search fields followed by any remaining summary,
+	 * substring, suggest and fuzzy fields.
+	 */
+	private static class IndexedType {
+		private final Class itemClass;
+		private final String[] fieldNames;
+		private final int numSearchFields;
+		private final int[] substringFieldPositions;
+		private final int suggestFieldPosition;
+		private final int fuzzyFieldPosition;
+		private final String loadJpql;
+		
+		IndexedType(Class itemClass, SearchableRepository repo) {
+			val fieldNameSet = new LinkedHashSet<String>(repo.getSearchFieldNames());
+			fieldNameSet.addAll(repo.getSummaryFieldNames());
+			fieldNameSet.addAll(repo.getSubstringFieldNames());
+			if (repo.getSuggestFieldName() != null) {
+				fieldNameSet.add(repo.getSuggestFieldName());
+			}
+			if (repo.getFuzzyFieldName() != null) {
+				fieldNameSet.add(repo.getFuzzyFieldName());
+			}
+			this.itemClass = itemClass;
+			this.fieldNames = fieldNameSet.toArray(new String[fieldNameSet.size()]);
+			this.numSearchFields = repo.getSearchFieldNames().size();
+			
+			val fieldNameList = Arrays.asList(fieldNames);
+			this.substringFieldPositions = ((Set<String>) repo.getSubstringFieldNames()).stream()
+					.mapToInt(fieldNameList::indexOf)
+					.toArray();
+			this.suggestFieldPosition = fieldNameList.indexOf(repo.getSuggestFieldName());
+			this.fuzzyFieldPosition = fieldNameList.indexOf(repo.getFuzzyFieldName());
+			
+			val jpql = new StringBuilder("select x.id");
+			for (val fieldName : fieldNames) {
+				jpql.append(", x.").append(fieldName);
+			}
+			jpql.append(" from ").append(itemClass.getSimpleName()).append(" x where x.id > :lastId order by x.id");
+			this.loadJpql = jpql.toString();
+		}
+		
+		String[] toValues(Item item) {
+			val wrapper = PropertyAccessorFactory.forBeanPropertyAccess(item);
+			val values = new String[fieldNames.length];
+			for (int i = 0; i < fieldNames.length; i++) {
+				values[i] = (String) wrapper.getPropertyValue(fieldNames[i]);
+			}
+			return values;
+		}
+		
+		Item toItem(int id, String[] values) {
+			val item = (Item) BeanUtils.instantiate(itemClass);
+			item.setId((long) id);
+			val wrapper = PropertyAccessorFactory.forBeanPropertyAccess(item);
+			for (int i = 0; i < fieldNames.length; i++) {
+				wrapper.setPropertyValue(fieldNames[i], values[i]);
+			}
+			return item;
+		}
+	}
+	
+	/**
+	 * The indexes for a single searchable type.
+	 */
+	private static class ItemIndex {
+		private final IndexedType type;
+		private final InvertedIndex inverted;
+		private final TrigramIndex trigram;
+		private final PrefixTrie suggest;
+		private final BkTree fuzzy;
+		
+		ItemIndex(IndexedType type) {
+			this.type = type;
+			this.inverted = new InvertedIndex(type.numSearchFields);
+			this.trigram = (type.substringFieldPositions.length == 0 ? null : new TrigramIndex());
+			this.suggest = (type.suggestFieldPosition < 0 ? null : new PrefixTrie());
+			this.fuzzy = (type.fuzzyFieldPosition < 0 ? null : new BkTree());
+		}
+		
+		// Changes are serialized, so the stored document is still the previous version when we look it up here.
+		void put(int id, String[] values) {
+			val previous = inverted.getDocument(id);
+			if (suggest != null) {
+				if (previous != null) {
+					suggest.remove(previous[type.suggestFieldPosition]);
+				}
+				suggest.add(values[type.suggestFieldPosition]);
+			}
+			if (fuzzy != null) {
+				if (previous != null) {
+					removeFuzzyTerms(id, previous);
+				}
+				for (val term : toFuzzyTerms(values)) {
+					fuzzy.add(id, term);
+				}
+			}
+			inverted.put(id, values);
+			if (trigram != null) {
+				val substringValues = new String[type.substringFieldPositions.length];
+				for (int i = 0; i < substringValues.length; i++) {
+					substringValues[i] = values[type.substringFieldPositions[i]];
+				}
+				trigram.put(id, substringValues);
+			}
+		}
+		
+		void remove(int id) {
+			val previous = inverted.getDocument(id);
+			if (previous != null) {
+				if (suggest != null) {
+					suggest.remove(previous[type.suggestFieldPosition]);
+				}
+				if (fuzzy != null) {
+					removeFuzzyTerms(id, previous);
+				}
+			}
+			inverted.remove(id);
+			if (trigram != null) {
+				trigram.remove(id);
+			}
+		}
+		
+		private void removeFuzzyTerms(int id, String[] values) {
+			for (val term : toFuzzyTerms(values)) {
+				fuzzy.remove(id, term);
+			}
+		}
+		
+		// Distinct, since a repeated term is only posted once.
+		private Set<String> toFuzzyTerms(String[] values) {
+			return new LinkedHashSet<>(InvertedIndex.toTerms(values[type.fuzzyFieldPosition]));
+		}
+	}
+	
+	@FunctionalInterface
+	private interface FuzzyMatchHandler {
+		void onMatch(int id, int distance);
+	}
+	
+	@RequiredArgsConstructor
+	private static class PendingChange {
+		@NonNull private final Class itemClass;
+		@NonNull private final Consumer<ItemIndex> change;
+		
+		void applyTo(Map<Class, ItemIndex> indexes) {
+			change.accept(indexes.get(itemClass));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.service.SearchResultCache;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LRU search results cache with a time-to-live. Hit, miss, eviction and invalidation counts are published as metrics
+ * under {@code search.cache.*}, which the management endpoints expose at {@code /admin/metrics}.
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@SuppressWarnings("rawtypes")
+@Slf4j
+public class SearchResultCacheImpl implements SearchResultCache {
+	private static final String METRIC_PREFIX = "search.cache.";
+	
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private CounterService counterService;
+	@Autowired private GaugeService gaugeService;
+	
+	// Access-ordered, so iteration starts at the least recently used entry.
+	private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	@Override
+	public Page get(@NonNull Class itemClass, @NonNull Set<String> searchTokens, @NonNull Pageable pageable) {
+		if (!isEnabled()) {
+			return null;
+		}
+		
+		val key = new CacheKey(itemClass, normalize(searchTokens), pageable);
+		synchronized (entries) {
+			val entry = entries.get(key);
+			if (entry == null) {
+				counterService.increment(METRIC_PREFIX + "miss");
+				return null;
+			}
+			if (entry.isExpired(seisoProperties.getSearchCacheTtl())) {
+				entries.remove(key);
+				counterService.increment(METRIC_PREFIX + "eviction");
+				counterService.increment(METRIC_PREFIX + "miss");
+				updateSizeGauge();
+				return null;
+			}
+			counterService.increment(METRIC_PREFIX + "hit");
+			return entry.getSerp();
+		}
+	}
+	
+	@Override
+	public void put(
+			@NonNull Class itemClass,
+			@NonNull Set<String> searchTokens,
+			@NonNull Pageable pageable,
+			@NonNull Page serp) {
+		
+		if (!isEnabled()) {
+			return;
+		}
+		
+		val key = new CacheKey(itemClass, normalize(searchTokens), pageable);
+		synchronized (entries) {
+			entries.put(key, new CacheEntry(serp, System.currentTimeMillis()));
+			
+			int maxSize = seisoProperties.getSearchCacheMaxSize();
+			Iterator<CacheEntry> it = entries.values().iterator();
+			while (entries.size() > maxSize && it.hasNext()) {
+				it.next();
+				it.remove();
+				counterService.increment(METRIC_PREFIX + "eviction");
+			}
+			updateSizeGauge();
+		}
+	}
+	
+	@Override
+	public void invalidate(@NonNull Class itemClass) {
+		synchronized (entries) {
+			Iterator<CacheKey> it = entries.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().getItemClass() == itemClass) {
+					it.remove();
+					counterService.increment(METRIC_PREFIX + "invalidation");
+				}
+			}
+			updateSizeGauge();
+		}
+		log.trace("Invalidated cached search pages for {}", itemClass.getSimpleName());
+	}
+	
+	private boolean isEnabled() {
+		return seisoProperties.getSearchCacheMaxSize() > 0;
+	}
+	
+	// Search is case-insensitive and the token order doesn't matter.
+	private Set<String> normalize(Set<String> searchTokens) {
+		val normalized = new TreeSet<String>();
+		for (val token : searchTokens) {
+			normalized.add(token.toLowerCase(Locale.ENGLISH));
+		}
+		return normalized;
+	}
+	
+	private void updateSizeGauge() {
+		gaugeService.submit(METRIC_PREFIX + "size", entries.size());
+	}
+	
+	@Value
+	private static class CacheKey {
+		private Class itemClass;
+		private Set<String> searchTokens;
+		private Pageable pageable;
+	}
+	
+	@Value
+	private static class CacheEntry {
+		private Page serp;
+		private long createdAt;
+		
+		boolean isExpired(long ttl) {
+			return System.currentTimeMillis() - createdAt > ttl;
+		}
+	}
+}
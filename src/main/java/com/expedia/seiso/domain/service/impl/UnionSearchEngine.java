@@ -0,0 +1,363 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.repo.custom.SearchableRepository;
+import com.expedia.seiso.domain.service.SearchEngine;
+import com.expedia.seiso.domain.service.SearchResultCache;
+import com.expedia.seiso.domain.service.SearchResults;
+import com.expedia.seiso.domain.service.search.ContinuationPageRequest;
+import com.expedia.seiso.domain.service.search.KeysetPage;
+import com.expedia.seiso.domain.service.search.KeysetPageRequest;
+import com.expedia.seiso.domain.service.search.RelevanceScorer;
+import com.expedia.seiso.domain.service.search.SearchQuery;
+import com.expedia.seiso.domain.service.search.SearchResultsListener;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Search engine that searches every type in a single native {@code union all} query, so a global search holds one
+ * pooled connection instead of one per type. Each type contributes a branch selecting its page of hits (ID plus
+ * summary columns) and a branch counting its hits, and the rows are decoded back into typed pages.
+ * </p>
+ * <p>
+ * This trades the per-type deadline of {@link SearchEngineImpl} for connection economy: the configured search timeout
+ * applies to the query as a whole, and if it runs out, every type is reported as timed out. Select it with
+ * {@code seiso.search-engine=union}. The SQL uses MySQL's {@code limit}. Queries with filters go to
+ * {@link SearchEngineImpl}, which pushes them down as joins.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "seiso", name = "search-engine", havingValue = "union")
+@SuppressWarnings({ "rawtypes", "unchecked" })
+@Slf4j
+public class UnionSearchEngine implements SearchEngine {
+	private static final int PAGE_ROW = 0;
+	private static final int COUNT_ROW = 1;
+	
+	@Autowired private Repositories repositories;
+	@Autowired private EntityManagerFactory entityManagerFactory;
+	@Autowired private DataSource dataSource;
+	@Autowired private SearchResultCache searchResultCache;
+	@Autowired private SeisoProperties seisoProperties;
+	@Autowired private FuzzySearchEngine fuzzySearchEngine;
+	@Autowired private SearchEngineImpl databaseSearchEngine;
+	
+	private JdbcTemplate jdbcTemplate;
+	
+	// Built lazily, since looking up the repositories while the context is starting up creates circular references.
+	private List<UnionType> unionTypes;
+	
+	// Width of the summary columns in every branch, so that the branches line up
+	private int numSummaryColumns;
+	
+	@PostConstruct
+	public void postConstruct() {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		
+		// JDBC query timeouts are in seconds.
+		jdbcTemplate.setQueryTimeout((int) Math.max(1L, (seisoProperties.getSearchTimeout() + 999L) / 1000L));
+	}
+	
+	@Override
+	public SearchResults search(@NonNull SearchQuery query, @NonNull Pageable pageable) {
+		return search(query, pageable, (itemClass, serp) -> {});
+	}
+	
+	@Override
+	public SearchResults search(
+			@NonNull SearchQuery query,
+			@NonNull Pageable pageable,
+			@NonNull SearchResultsListener listener) {
+		
+		if (query.isFuzzy()) {
+			return fuzzySearchEngine.search(query, pageable, listener);
+		}
+		if (query.hasFilters()) {
+			log.debug("Query has filters. Pushing them down to the database search engine.");
+			return databaseSearchEngine.search(query, pageable, listener);
+		}
+		
+		val allResults = new SearchResults();
+		val tokens = query.getTokens();
+		log.debug(query.getQuery());
+		if (CollectionUtils.isEmpty(tokens)) {
+			return allResults;
+		}
+		
+		// Cached pages go straight into the results, so the query only has branches for the types that missed.
+		val branches = new ArrayList<Branch>();
+		for (val type : getUnionTypes()) {
+			if (!query.includesType(type.itemClass)) {
+				continue;
+			}
+			val typePageable = ContinuationPageRequest.forItemClass(pageable, type.itemClass);
+			if (typePageable != null) {
+				val branch = new Branch(type, typePageable, toFetchPageable(query, typePageable));
+				val fetchPageable = branch.fetchPageable;
+				val cachedSerp =
+						(query.isCountOnly() ? null : searchResultCache.get(type.itemClass, tokens, fetchPageable));
+				if (cachedSerp != null) {
+					val serp = branch.toResultPage(query, cachedSerp);
+					allResults.putTypedSerp(type.itemClass, serp);
+					listener.onTypedSerp(type.itemClass, serp);
+				} else {
+					branches.add(branch);
+				}
+			}
+		}
+		if (branches.isEmpty()) {
+			return allResults;
+		}
+		
+		try {
+			query(branches, tokens, query.isCountOnly());
+		} catch (QueryTimeoutException e) {
+			log.warn("Union search timed out after {} ms", seisoProperties.getSearchTimeout());
+			branches.forEach(branch -> allResults.markTimedOut(branch.type.itemClass));
+			return allResults;
+		}
+		
+		for (val branch : branches) {
+			val itemClass = branch.type.itemClass;
+			val fetched = branch.toFetchedPage(query.isCountOnly());
+			if (!query.isCountOnly()) {
+				searchResultCache.put(itemClass, tokens, branch.fetchPageable, fetched);
+			}
+			val serp = branch.toResultPage(query, fetched);
+			allResults.putTypedSerp(itemClass, serp);
+			listener.onTypedSerp(itemClass, serp);
+		}
+		return allResults;
+	}
+	
+	private void query(List<Branch> branches, Set<String> tokens, boolean countOnly) {
+		val sql = new StringBuilder();
+		val args = new ArrayList<Object>();
+		for (int i = 0; i < branches.size(); i++) {
+			val branch = branches.get(i);
+			if (!countOnly) {
+				appendPageBranch(sql, args, i, branch, tokens);
+			}
+			appendCountBranch(sql, args, i, branch, tokens);
+		}
+		
+		jdbcTemplate.query(sql.toString(), args.toArray(), (ResultSet rs) -> {
+			Branch branch = branches.get(rs.getInt(1));
+			if (rs.getInt(2) == COUNT_ROW) {
+				branch.total = rs.getLong(3);
+			} else {
+				branch.items.add(branch.type.toItem(rs));
+			}
+		});
+	}
+	
+	private void appendPageBranch(StringBuilder sql, List<Object> args, int index, Branch branch, Set<String> tokens) {
+		val type = branch.type;
+		val afterId = KeysetPageRequest.getAfterId(branch.fetchPageable);
+		appendUnion(sql);
+		sql.append("(select ").append(index).append(" t, ").append(PAGE_ROW).append(" k, x.").append(type.idColumn)
+				.append(" n");
+		for (int i = 0; i < numSummaryColumns; i++) {
+			sql.append(", ").append(i < type.summaryColumns.length ? "x." + type.summaryColumns[i] : "null")
+					.append(" s").append(i);
+		}
+		sql.append(" from ").append(type.table).append(" x where ");
+		appendWhere(sql, args, type, tokens);
+		if (afterId != null) {
+			sql.append(" and x.").append(type.idColumn).append(" > ?");
+			args.add(afterId);
+		}
+		
+		// Fetch one extra item to find out whether there's a next page.
+		sql.append(" order by x.").append(type.idColumn).append(" limit ?");
+		args.add(branch.fetchPageable.getPageSize() + 1);
+		if (afterId == null) {
+			sql.append(" offset ?");
+			args.add(branch.fetchPageable.getOffset());
+		}
+		sql.append(")");
+	}
+	
+	private void appendCountBranch(StringBuilder sql, List<Object> args, int index, Branch branch, Set<String> tokens) {
+		val type = branch.type;
+		appendUnion(sql);
+		sql.append("(select ").append(index).append(" t, ").append(COUNT_ROW).append(" k, count(*) n");
+		for (int i = 0; i < numSummaryColumns; i++) {
+			sql.append(", null s").append(i);
+		}
+		sql.append(" from ").append(type.table).append(" x where ");
+		appendWhere(sql, args, type, tokens);
+		sql.append(")");
+	}
+	
+	// To rank by relevance, we fetch a window of candidates by ID and keep the best of them.
+	private Pageable toFetchPageable(SearchQuery query, Pageable typePageable) {
+		return (query.isRanked() ? new PageRequest(0, seisoProperties.getSearchRankWindow()) : typePageable);
+	}
+	
+	private void appendUnion(StringBuilder sql) {
+		if (sql.length() > 0) {
+			sql.append(" union all ");
+		}
+	}
+	
+	private void appendWhere(StringBuilder sql, List<Object> args, UnionType type, Set<String> tokens) {
+		sql.append("(");
+		boolean first = true;
+		for (val column : type.searchColumns) {
+			for (val token : tokens) {
+				sql.append(first ? "" : " or ").append("x.").append(column).append(" like ?");
+				args.add(token);
+				first = false;
+			}
+		}
+		sql.append(")");
+	}
+	
+	private synchronized List<UnionType> getUnionTypes() {
+		if (unionTypes == null) {
+			val sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+			val types = new ArrayList<UnionType>();
+			for (val itemClass : repositories) {
+				val repo = repositories.getRepositoryFor(itemClass);
+				if (repo instanceof SearchableRepository) {
+					val searchableRepo = (SearchableRepository) repo;
+					val persister =
+							(AbstractEntityPersister) sessionFactory.getClassMetadata(searchableRepo.getResultType());
+					val type = new UnionType(searchableRepo, persister);
+					types.add(type);
+					this.numSummaryColumns = Math.max(numSummaryColumns, type.summaryColumns.length);
+				}
+			}
+			this.unionTypes = types;
+		}
+		return unionTypes;
+	}
+	
+	/**
+	 * Table and column names for a searchable type, resolved from the Hibernate mapping.
+	 */
+	private static class UnionType {
+		private final Class itemClass;
+		private final String table;
+		private final String idColumn;
+		private final String[] searchColumns;
+		private final String[] summaryFieldNames;
+		private final String[] summaryColumns;
+		
+		UnionType(SearchableRepository repo, AbstractEntityPersister persister) {
+			this.itemClass = repo.getResultType();
+			this.table = persister.getTableName();
+			this.idColumn = persister.getIdentifierColumnNames()[0];
+			this.searchColumns = toColumns(persister, (Set<String>) repo.getSearchFieldNames());
+			this.summaryFieldNames = ((Set<String>) repo.getSummaryFieldNames()).toArray(new String[0]);
+			this.summaryColumns = toColumns(persister, (Set<String>) repo.getSummaryFieldNames());
+		}
+		
+		private static String[] toColumns(AbstractEntityPersister persister, Set<String> fieldNames) {
+			return fieldNames.stream()
+					.map(fieldName -> persister.getPropertyColumnNames(fieldName)[0])
+					.toArray(String[]::new);
+		}
+		
+		// Populates a detached stub with the ID and summary fields, like the other search engines return.
+		Item toItem(ResultSet rs) throws SQLException {
+			val item = (Item) BeanUtils.instantiate(itemClass);
+			item.setId(rs.getLong(3));
+			val wrapper = PropertyAccessorFactory.forBeanPropertyAccess(item);
+			for (int i = 0; i < summaryFieldNames.length; i++) {
+				wrapper.setPropertyValue(summaryFieldNames[i], rs.getString(4 + i));
+			}
+			return item;
+		}
+	}
+	
+	/**
+	 * One type's part of a union search.
+	 */
+	@RequiredArgsConstructor
+	private static class Branch {
+		@NonNull private final UnionType type;
+		@NonNull private final Pageable pageable;
+		@NonNull private final Pageable fetchPageable;
+		private final List<Item> items = new ArrayList<>();
+		private long total;
+		
+		Page toFetchedPage(boolean countOnly) {
+			if (countOnly) {
+				return new PageImpl(Collections.emptyList(), fetchPageable, total);
+			}
+			
+			// Each branch's order by picks its rows, but the union doesn't have to return them in that order.
+			items.sort(Comparator.comparing(Item::getId));
+			int pageSize = fetchPageable.getPageSize();
+			if (items.size() <= pageSize) {
+				return new KeysetPage(items, fetchPageable, total, null);
+			}
+			val content = new ArrayList<Item>(items.subList(0, pageSize));
+			return new KeysetPage(content, fetchPageable, total, content.get(pageSize - 1).getId());
+		}
+		
+		Page toResultPage(SearchQuery query, Page fetched) {
+			if (!query.isRanked()) {
+				return fetched;
+			}
+			val scorer = new RelevanceScorer(query.getTokens());
+			return scorer.rank(fetched.getContent(), Arrays.asList(type.summaryFieldNames), fetched.getTotalElements(),
+					pageable);
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * BK-tree over short terms, such as the parts of host names and keys, for finding the ones within a small Levenshtein
+ * distance of a misspelled term. Each child edge is labeled with its distance from the parent, and by the triangle
+ * inequality a search within distance {@code k} of a term at distance {@code d} from a node only needs the children
+ * with edges between {@code d - k} and {@code d + k}. For small {@code k} that prunes most of the tree.
+ * </p>
+ * <p>
+ * Terms are lowercased, and each maps to the IDs of the items having it. Nodes live in parallel arrays, with each
+ * node's children as a linked list of siblings. Removing an item leaves its node in place, since other nodes hang off
+ * it, so a rebuild is what reclaims the space.
+ * </p>
+ * <p>
+ * Reads take a shared lock and writes an exclusive one, like the other indexes.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class BkTree {
+	private static final int NIL = -1;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private String[] terms = new String[INITIAL_CAPACITY];
+	private PostingList[] ids = new PostingList[INITIAL_CAPACITY];
+	private int[] edges = new int[INITIAL_CAPACITY];
+	private int[] firstChildren = new int[INITIAL_CAPACITY];
+	private int[] nextSiblings = new int[INITIAL_CAPACITY];
+	
+	private int root = NIL;
+	private int numNodes;
+	
+	// Shortcut to the node for a known term, so updates don't have to walk the tree
+	private final Map<String, Integer> nodesByTerm = new HashMap<>();
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Receives search matches.
+	 */
+	@FunctionalInterface
+	public interface MatchHandler {
+		
+		/**
+		 * @param ids
+		 *            sorted IDs of the items having a matching term
+		 * @param distance
+		 *            edit distance of the term from the search term
+		 */
+		void onMatch(int[] ids, int distance);
+	}
+	
+	/**
+	 * @return number of distinct terms, including those with no items left
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return numNodes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param id
+	 *            item ID
+	 * @param term
+	 *            item's term. Ignored if {@code null} or empty.
+	 */
+	public void add(int id, String term) {
+		if (term == null || term.isEmpty()) {
+			return;
+		}
+		String normalized = term.toLowerCase(Locale.ENGLISH);
+		lock.writeLock().lock();
+		try {
+			Integer existing = nodesByTerm.get(normalized);
+			if (existing != null) {
+				ids[existing].add(id);
+				return;
+			}
+			if (root == NIL) {
+				this.root = newNode(normalized, 0);
+				ids[root].add(id);
+				return;
+			}
+			int[] row = new int[normalized.length() + 1];
+			int node = root;
+			while (true) {
+				int distance = distance(normalized, terms[node], row);
+				if (distance == 0) {
+					ids[node].add(id);
+					return;
+				}
+				int child = findChild(node, distance);
+				if (child == NIL) {
+					child = newNode(normalized, distance);
+					nextSiblings[child] = firstChildren[node];
+					firstChildren[node] = child;
+					ids[child].add(id);
+					return;
+				}
+				node = child;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param id
+	 *            item ID
+	 * @param term
+	 *            term the item was added with. Ignored if {@code null}, empty or absent.
+	 */
+	public void remove(int id, String term) {
+		if (term == null || term.isEmpty()) {
+			return;
+		}
+		String normalized = term.toLowerCase(Locale.ENGLISH);
+		lock.writeLock().lock();
+		try {
+			Integer node = nodesByTerm.get(normalized);
+			if (node != null) {
+				ids[node].remove(id);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Finds the items whose terms are within the given edit distance of the given term.
+	 * 
+	 * @param term
+	 *            search term
+	 * @param maxDistance
+	 *            maximum Levenshtein distance
+	 * @param handler
+	 *            receives the items for each matching term, in no particular order
+	 */
+	public void search(String term, int maxDistance, MatchHandler handler) {
+		String normalized = term.toLowerCase(Locale.ENGLISH);
+		int[] row = new int[normalized.length() + 1];
+		lock.readLock().lock();
+		try {
+			if (root == NIL) {
+				return;
+			}
+			int[] stack = new int[16];
+			int top = 0;
+			stack[top++] = root;
+			while (top > 0) {
+				int node = stack[--top];
+				int distance = distance(normalized, terms[node], row);
+				if (distance <= maxDistance && !ids[node].isEmpty()) {
+					handler.onMatch(ids[node].toArray(), distance);
+				}
+				for (int child = firstChildren[node]; child != NIL; child = nextSiblings[child]) {
+					if (Math.abs(edges[child] - distance) <= maxDistance) {
+						if (top == stack.length) {
+							stack = Arrays.copyOf(stack, top * 2);
+						}
+						stack[top++] = child;
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private int findChild(int node, int distance) {
+		for (int child = firstChildren[node]; child != NIL; child = nextSiblings[child]) {
+			if (edges[child] == distance) {
+				return child;
+			}
+		}
+		return NIL;
+	}
+	
+	private int newNode(String term, int edge) {
+		if (numNodes == terms.length) {
+			int capacity = terms.length * 2;
+			this.terms = Arrays.copyOf(terms, capacity);
+			this.ids = Arrays.copyOf(ids, capacity);
+			this.edges = Arrays.copyOf(edges, capacity);
+			this.firstChildren = Arrays.copyOf(firstChildren, capacity);
+			this.nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		}
+		int node = numNodes++;
+		terms[node] = term;
+		ids[node] = new PostingList();
+		edges[node] = edge;
+		firstChildren[node] = NIL;
+		nextSiblings[node] = NIL;
+		nodesByTerm.put(term, node);
+		return node;
+	}
+	
+	/**
+	 * Levenshtein distance, using a single row of the dynamic programming table.
+	 * 
+	 * @param a
+	 *            first string
+	 * @param b
+	 *            second string
+	 * @param row
+	 *            scratch row of length {@code a.length() + 1}
+	 * @return edit distance
+	 */
+	static int distance(String a, String b, int[] row) {
+		int m = a.length();
+		for (int i = 0; i <= m; i++) {
+			row[i] = i;
+		}
+		for (int j = 1; j <= b.length(); j++) {
+			char c = b.charAt(j - 1);
+			int diagonal = row[0];
+			row[0] = j;
+			for (int i = 1; i <= m; i++) {
+				int above = row[i];
+				int substitution = diagonal + (a.charAt(i - 1) == c ? 0 : 1);
+				row[i] = Math.min(substitution, Math.min(above, row[i - 1]) + 1);
+				diagonal = above;
+			}
+		}
+		return row[m];
+	}
+}
@@ -0,0 +1,210 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * <p>
+ * An IPv4 or IPv6 CIDR block, such as {@code 10.23.0.0/16} or {@code 2001:db8::/32}. A bare address is a block of
+ * one.
+ * </p>
+ * <p>
+ * Addresses are handled as 128-bit keys split into two longs. IPv4 addresses map into the IPv4-mapped IPv6 block
+ * {@code ::ffff:0:0/96}, so both families share a single key space and sort together.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class Cidr {
+	private static final long IPV4_MAPPED_PREFIX = 0x0000FFFF00000000L;
+	private static final int IPV4_MAPPED_PREFIX_LENGTH = 96;
+	
+	private final String text;
+	private final long firstHi;
+	private final long firstLo;
+	private final long lastHi;
+	private final long lastLo;
+	
+	private Cidr(String text, long[] key, int prefixLength) {
+		long hiMask = (prefixLength >= 64 ? -1L : prefixLength == 0 ? 0L : -1L << (64 - prefixLength));
+		long loMask = (prefixLength >= 128 ? -1L : prefixLength <= 64 ? 0L : -1L << (128 - prefixLength));
+		this.text = text;
+		this.firstHi = key[0] & hiMask;
+		this.firstLo = key[1] & loMask;
+		this.lastHi = firstHi | ~hiMask;
+		this.lastLo = firstLo | ~loMask;
+	}
+	
+	/**
+	 * Parses a CIDR block. Host bits below the prefix are ignored, so {@code 10.23.4.5/16} is {@code 10.23.0.0/16}.
+	 * 
+	 * @param cidr
+	 *            CIDR block or bare address
+	 * @return parsed block
+	 * @throws IllegalArgumentException
+	 *             if the block is malformed
+	 */
+	public static Cidr parse(String cidr) {
+		if (cidr == null) {
+			throw new IllegalArgumentException("CIDR block required");
+		}
+		String trimmed = cidr.trim();
+		int slash = trimmed.indexOf('/');
+		String address = (slash < 0 ? trimmed : trimmed.substring(0, slash));
+		long[] key = toKey(address);
+		if (key == null) {
+			throw new IllegalArgumentException("Not an IP address: " + address);
+		}
+		
+		boolean ipv4 = isIpv4Mapped(key);
+		int maxPrefixLength = (ipv4 ? 32 : 128);
+		int prefixLength = maxPrefixLength;
+		if (slash >= 0) {
+			try {
+				prefixLength = Integer.parseInt(trimmed.substring(slash + 1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad prefix length: " + cidr);
+			}
+			if (prefixLength < 0 || prefixLength > maxPrefixLength) {
+				throw new IllegalArgumentException("Bad prefix length: " + cidr);
+			}
+		}
+		return new Cidr(trimmed, key, (ipv4 ? IPV4_MAPPED_PREFIX_LENGTH + prefixLength : prefixLength));
+	}
+	
+	/**
+	 * Converts an address literal to its 128-bit key. Never does a DNS lookup.
+	 * 
+	 * @param address
+	 *            IPv4 or IPv6 address literal, possibly {@code null}
+	 * @return two-element array holding the high and low halves of the key, or {@code null} if the address isn't an IP
+	 *         address literal
+	 */
+	public static long[] toKey(String address) {
+		if (address == null || address.isEmpty()) {
+			return null;
+		}
+		if (address.indexOf(':') < 0) {
+			long ipv4 = parseIpv4(address);
+			return (ipv4 < 0 ? null : new long[] { 0L, IPV4_MAPPED_PREFIX | ipv4 });
+		}
+		
+		// InetAddress only skips DNS for things that look like literals, so screen out everything else first.
+		String literal = stripZone(address);
+		for (int i = 0; i < literal.length(); i++) {
+			char c = literal.charAt(i);
+			if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+				return null;
+			}
+		}
+		byte[] bytes;
+		try {
+			bytes = InetAddress.getByName(literal).getAddress();
+		} catch (UnknownHostException e) {
+			return null;
+		}
+		if (bytes.length == 4) {
+			// IPv4-mapped IPv6 literal, which InetAddress hands back as IPv4
+			return new long[] { 0L, IPV4_MAPPED_PREFIX | toLong(bytes, 0, 4) };
+		}
+		return new long[] { toLong(bytes, 0, 8), toLong(bytes, 8, 16) };
+	}
+	
+	public long getFirstHi() {
+		return firstHi;
+	}
+	
+	public long getFirstLo() {
+		return firstLo;
+	}
+	
+	public long getLastHi() {
+		return lastHi;
+	}
+	
+	public long getLastLo() {
+		return lastLo;
+	}
+	
+	/**
+	 * @param address
+	 *            address literal, possibly {@code null}
+	 * @return whether the address is in this block
+	 */
+	public boolean contains(String address) {
+		long[] key = toKey(address);
+		return key != null
+				&& compare(key[0], key[1], firstHi, firstLo) >= 0
+				&& compare(key[0], key[1], lastHi, lastLo) <= 0;
+	}
+	
+	/**
+	 * Compares two 128-bit keys as unsigned numbers.
+	 */
+	public static int compare(long hi1, long lo1, long hi2, long lo2) {
+		int result = Long.compareUnsigned(hi1, hi2);
+		return (result != 0 ? result : Long.compareUnsigned(lo1, lo2));
+	}
+	
+	@Override
+	public String toString() {
+		return text;
+	}
+	
+	private static boolean isIpv4Mapped(long[] key) {
+		return key[0] == 0L && (key[1] >>> 32) == (IPV4_MAPPED_PREFIX >>> 32);
+	}
+	
+	// Strict dotted quad, so host names never get this far. Returns -1 if it isn't one.
+	private static long parseIpv4(String address) {
+		long result = 0L;
+		int octets = 0;
+		int octet = -1;
+		for (int i = 0; i <= address.length(); i++) {
+			char c = (i < address.length() ? address.charAt(i) : '.');
+			if (c == '.') {
+				if (octet < 0 || ++octets > 4) {
+					return -1L;
+				}
+				result = (result << 8) | octet;
+				octet = -1;
+			} else if (c >= '0' && c <= '9') {
+				octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return -1L;
+				}
+			} else {
+				return -1L;
+			}
+		}
+		return (octets == 4 ? result : -1L);
+	}
+	
+	private static String stripZone(String address) {
+		int percent = address.indexOf('%');
+		return (percent < 0 ? address : address.substring(0, percent));
+	}
+	
+	private static long toLong(byte[] bytes, int from, int to) {
+		long result = 0L;
+		for (int i = from; i < to; i++) {
+			result = (result << 8) | (bytes[i] & 0xFFL);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,171 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Immutable, sorted set of item IDs, stored as variable-length encoded deltas. Dense posting lists (which is most of
+ * them, since IDs are mostly sequential) take one or two bytes per ID instead of four.
+ * </p>
+ * <p>
+ * IDs are encoded in blocks of {@value #BLOCK_SIZE}. The first ID of each block is kept uncompressed along with the
+ * block's byte offset, so {@link #intersect(int[])} can skip straight to the blocks that might contain a candidate
+ * instead of decoding the whole list.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public final class CompressedPostingList {
+	public static final int BLOCK_SIZE = 64;
+	private static final int DENSE_RATIO = 8;
+	
+	private final byte[] bytes;
+	private final int[] blockFirstIds;
+	private final int[] blockOffsets;
+	private final int size;
+	
+	private CompressedPostingList(byte[] bytes, int[] blockFirstIds, int[] blockOffsets, int size) {
+		this.bytes = bytes;
+		this.blockFirstIds = blockFirstIds;
+		this.blockOffsets = blockOffsets;
+		this.size = size;
+	}
+	
+	/**
+	 * @param ids
+	 *            sorted, duplicate-free IDs
+	 * @return compressed posting list
+	 */
+	public static CompressedPostingList of(int[] ids) {
+		int numBlocks = (ids.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int[] blockFirstIds = new int[numBlocks];
+		int[] blockOffsets = new int[numBlocks];
+		byte[] buffer = new byte[ids.length * 5];
+		int n = 0;
+		int previous = 0;
+		for (int i = 0; i < ids.length; i++) {
+			int id = ids[i];
+			if (i % BLOCK_SIZE == 0) {
+				blockFirstIds[i / BLOCK_SIZE] = id;
+				blockOffsets[i / BLOCK_SIZE] = n;
+			} else {
+				int delta = id - previous;
+				while ((delta & ~0x7F) != 0) {
+					buffer[n++] = (byte) ((delta & 0x7F) | 0x80);
+					delta >>>= 7;
+				}
+				buffer[n++] = (byte) delta;
+			}
+			previous = id;
+		}
+		return new CompressedPostingList(Arrays.copyOf(buffer, n), blockFirstIds, blockOffsets, ids.length);
+	}
+	
+	public int size() { return size; }
+	
+	public int[] decode() {
+		int[] ids = new int[size];
+		for (int block = 0; block < blockFirstIds.length; block++) {
+			decodeBlock(block, ids, block * BLOCK_SIZE);
+		}
+		return ids;
+	}
+	
+	/**
+	 * Intersects this list with the given IDs. When the given IDs are sparse, only the blocks that could contain one of
+	 * them are decoded.
+	 * 
+	 * @param ids
+	 *            sorted, duplicate-free IDs
+	 * @return sorted IDs appearing in both
+	 */
+	public int[] intersect(int[] ids) {
+		
+		// When the candidates are dense relative to this list, skipping doesn't pay; just merge.
+		if (ids.length * DENSE_RATIO >= size) {
+			return PostingList.intersect(decode(), ids);
+		}
+		
+		int[] result = new int[Math.min(size, ids.length)];
+		int n = 0;
+		int[] blockIds = new int[BLOCK_SIZE];
+		int blockLength = 0;
+		int decodedBlock = -1;
+		int block = 0;
+		int pos = 0;
+		for (int id : ids) {
+			if (blockFirstIds.length == 0 || id < blockFirstIds[block]) {
+				continue;
+			}
+			int index = findBlock(block, id);
+			if (blockFirstIds[index] == id) {
+				result[n++] = id;
+				block = index;
+				continue;
+			}
+			block = index;
+			if (block != decodedBlock) {
+				blockLength = decodeBlock(block, blockIds, 0);
+				decodedBlock = block;
+				pos = 0;
+			}
+			while (pos < blockLength && blockIds[pos] < id) {
+				pos++;
+			}
+			if (pos < blockLength && blockIds[pos] == id) {
+				result[n++] = id;
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+	
+	/**
+	 * Gallops forward from the given block to find the last block whose first ID is no greater than the given ID. Dense
+	 * candidate lists stay within a step or two of the current block, and sparse ones still get a logarithmic search.
+	 */
+	private int findBlock(int from, int id) {
+		int bound = 1;
+		while (from + bound < blockFirstIds.length && blockFirstIds[from + bound] <= id) {
+			bound <<= 1;
+		}
+		int low = from + (bound >> 1);
+		int high = Math.min(from + bound, blockFirstIds.length);
+		int index = Arrays.binarySearch(blockFirstIds, low, high, id);
+		return index >= 0 ? index : -(index + 1) - 1;
+	}
+	
+	private int decodeBlock(int block, int[] dest, int destPos) {
+		int length = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+		int pos = blockOffsets[block];
+		int current = blockFirstIds[block];
+		dest[destPos] = current;
+		for (int i = 1; i < length; i++) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[pos++];
+				delta |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			current += delta;
+			dest[destPos + i] = current;
+		}
+		return length;
+	}
+}
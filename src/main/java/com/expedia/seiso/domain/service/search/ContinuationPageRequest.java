@@ -0,0 +1,77 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import lombok.NonNull;
+
+/**
+ * Page request for a global search that continues from a previous page. Each item type resumes after the last item
+ * returned for that type.
+ * 
+ * @author Willie Wheeler
+ */
+@SuppressWarnings({ "serial", "rawtypes" })
+public class ContinuationPageRequest extends PageRequest {
+	private final ContinuationToken continuation;
+	
+	public ContinuationPageRequest(int size, @NonNull ContinuationToken continuation) {
+		super(0, size);
+		this.continuation = continuation;
+	}
+	
+	public ContinuationToken getContinuation() { return continuation; }
+	
+	/**
+	 * Returns the page request to use for a single item type.
+	 * 
+	 * @param pageable
+	 *            global page request
+	 * @param itemClass
+	 *            item class
+	 * @return type-specific page request, or {@code null} if the type has no more results
+	 */
+	public static Pageable forItemClass(@NonNull Pageable pageable, @NonNull Class itemClass) {
+		if (!(pageable instanceof ContinuationPageRequest)) {
+			return pageable;
+		}
+		Long afterId = ((ContinuationPageRequest) pageable).getContinuation().getAfterId(itemClass);
+		return (afterId == null ? null : new KeysetPageRequest(pageable.getPageSize(), afterId));
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ContinuationPageRequest)) {
+			return false;
+		}
+		return super.equals(obj) && continuation.equals(((ContinuationPageRequest) obj).continuation);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + continuation.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Continuation page request [continuation: %s, size %d]", continuation, getPageSize());
+	}
+}
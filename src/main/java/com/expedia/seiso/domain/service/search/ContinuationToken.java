@@ -0,0 +1,121 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * <p>
+ * Opaque token that lets a global search resume where the previous page left off. It records, for each item type that
+ * has more results, the ID of the last item returned. Types missing from the token are exhausted and aren't searched
+ * again.
+ * </p>
+ * <p>
+ * The encoded form is URL-safe.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@EqualsAndHashCode
+@SuppressWarnings("rawtypes")
+public class ContinuationToken {
+	private final Map<String, Long> afterIds;
+	
+	/**
+	 * @param afterIds
+	 *            last returned item IDs, keyed by item class
+	 */
+	public ContinuationToken(@NonNull Map<Class, Long> afterIds) {
+		val map = new TreeMap<String, Long>();
+		afterIds.forEach((itemClass, afterId) -> map.put(itemClass.getSimpleName(), afterId));
+		this.afterIds = Collections.unmodifiableMap(map);
+	}
+	
+	private ContinuationToken(TreeMap<String, Long> afterIds) {
+		this.afterIds = Collections.unmodifiableMap(afterIds);
+	}
+	
+	/**
+	 * @param encoded
+	 *            token from {@link #encode()}
+	 * @return decoded token
+	 * @throws InvalidContinuationTokenException
+	 *             if the token is malformed
+	 */
+	public static ContinuationToken decode(@NonNull String encoded) {
+		val afterIds = new TreeMap<String, Long>();
+		try {
+			val decoded = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+			for (val entry : decoded.split(",")) {
+				if (!entry.isEmpty()) {
+					val parts = entry.split(":");
+					if (parts.length != 2) {
+						throw new InvalidContinuationTokenException(encoded);
+					}
+					afterIds.put(parts[0], Long.valueOf(parts[1]));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			throw new InvalidContinuationTokenException(encoded);
+		}
+		return new ContinuationToken(afterIds);
+	}
+	
+	public String encode() {
+		val builder = new StringBuilder();
+		afterIds.forEach((type, afterId) -> {
+			if (builder.length() > 0) {
+				builder.append(",");
+			}
+			builder.append(type).append(":").append(afterId);
+		});
+		val bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @return ID of the last item of the given type already returned, or {@code null} if the type is exhausted
+	 */
+	public Long getAfterId(@NonNull Class itemClass) {
+		return afterIds.get(itemClass.getSimpleName());
+	}
+	
+	@Override
+	public String toString() {
+		return afterIds.toString();
+	}
+	
+	/**
+	 * Thrown when a client sends a continuation token that doesn't decode.
+	 */
+	@SuppressWarnings("serial")
+	public static class InvalidContinuationTokenException extends IllegalArgumentException {
+		
+		public InvalidContinuationTokenException(String token) {
+			super("Invalid continuation token: " + token);
+		}
+	}
+}
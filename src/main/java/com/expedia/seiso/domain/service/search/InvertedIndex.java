@@ -0,0 +1,209 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * In-memory inverted index over the string fields of a single item type.
+ * </p>
+ * <p>
+ * Each document is an item ID together with its stored field values. The first {@code numSearchFields} values are
+ * split into lowercase alphanumeric terms, and each term maps to the posting list of IDs whose values contain it. A
+ * search token matches a document when every term in the token is a prefix of some term in the document, so
+ * {@code prod-web} matches {@code expweb-prod-webapp01}. Tokens are OR'd together, just like the database search.
+ * </p>
+ * <p>
+ * Reads take a shared lock and writes an exclusive one, so searches run concurrently with each other.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class InvertedIndex {
+	private static final Pattern TERM_DELIMITER = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final int[] NO_IDS = new int[0];
+	
+	private final int numSearchFields;
+	private final Map<Integer, String[]> documents = new HashMap<>();
+	private final NavigableMap<String, PostingList> postings = new TreeMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * @param numSearchFields
+	 *            number of leading stored values that are tokenized for search. Values after these are stored for
+	 *            display only.
+	 */
+	public InvertedIndex(int numSearchFields) {
+		this.numSearchFields = numSearchFields;
+	}
+	
+	/**
+	 * Splits the given text into lowercase alphanumeric terms.
+	 * 
+	 * @param text
+	 *            text to split, possibly {@code null}
+	 * @return terms, in order of appearance
+	 */
+	public static List<String> toTerms(String text) {
+		List<String> terms = new ArrayList<>();
+		if (text != null) {
+			for (String term : TERM_DELIMITER.split(text.toLowerCase(Locale.ENGLISH))) {
+				if (!term.isEmpty()) {
+					terms.add(term);
+				}
+			}
+		}
+		return terms;
+	}
+	
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public String[] getDocument(int id) {
+		lock.readLock().lock();
+		try {
+			return documents.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Adds or replaces a document.
+	 * 
+	 * @param id
+	 *            item ID
+	 * @param values
+	 *            stored field values, search fields first
+	 */
+	public void put(int id, String[] values) {
+		lock.writeLock().lock();
+		try {
+			String[] previous = documents.put(id, values);
+			if (previous != null) {
+				unindex(id, previous);
+			}
+			for (int i = 0; i < numSearchFields; i++) {
+				for (String term : toTerms(values[i])) {
+					postings.computeIfAbsent(term, t -> new PostingList()).add(id);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public void remove(int id) {
+		lock.writeLock().lock();
+		try {
+			String[] previous = documents.remove(id);
+			if (previous != null) {
+				unindex(id, previous);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Finds the documents matching any of the given tokens. Non-alphanumeric characters in the tokens (including SQL
+	 * wildcards) are treated as term delimiters.
+	 * 
+	 * @param tokens
+	 *            search tokens
+	 * @return sorted IDs of the matching documents
+	 */
+	public int[] search(Collection<String> tokens) {
+		lock.readLock().lock();
+		try {
+			int[] result = NO_IDS;
+			for (String token : tokens) {
+				int[] tokenIds = null;
+				for (String term : toTerms(token)) {
+					int[] termIds = findByPrefix(term);
+					tokenIds = (tokenIds == null ? termIds : PostingList.intersect(tokenIds, termIds));
+					if (tokenIds.length == 0) {
+						break;
+					}
+				}
+				if (tokenIds != null) {
+					result = PostingList.union(result, tokenIds);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private int[] findByPrefix(String prefix) {
+		Collection<PostingList> lists = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+		if (lists.isEmpty()) {
+			return NO_IDS;
+		}
+		if (lists.size() == 1) {
+			return lists.iterator().next().toArray();
+		}
+		
+		// Concatenate, sort and dedupe. This beats repeated pairwise merges when a short prefix hits many terms.
+		int total = 0;
+		for (PostingList list : lists) { total += list.size(); }
+		int[] ids = new int[total];
+		int n = 0;
+		for (PostingList list : lists) {
+			int[] listIds = list.toArray();
+			System.arraycopy(listIds, 0, ids, n, listIds.length);
+			n += listIds.length;
+		}
+		Arrays.sort(ids);
+		int unique = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (i == 0 || ids[i] != ids[i - 1]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(ids, unique);
+	}
+	
+	private void unindex(int id, String[] values) {
+		for (int i = 0; i < numSearchFields; i++) {
+			for (String term : toTerms(values[i])) {
+				PostingList list = postings.get(term);
+				if (list != null && list.remove(id) && list.isEmpty()) {
+					postings.remove(term);
+				}
+			}
+		}
+	}
+}
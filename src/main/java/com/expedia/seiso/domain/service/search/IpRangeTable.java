@@ -0,0 +1,319 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * In-memory table of IP addresses supporting CIDR range lookups. Each entry packs an address's 128-bit key (see
+ * {@link Cidr}) and the ID of the item having that address into three consecutive longs of a single array, sorted by
+ * key and then ID. A lookup is two binary searches bracketing the block, followed by a copy of the IDs in between.
+ * </p>
+ * <p>
+ * Entries added before the first {@link #compact()} are appended and sorted in one go, which is what a bulk load
+ * wants. After that, each addition is inserted in place.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class IpRangeTable {
+	private static final int[] NO_IDS = new int[0];
+	private static final int STRIDE = 3;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private long[] entries = new long[STRIDE * INITIAL_CAPACITY];
+	private int size;
+	private boolean sorted;
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * @return number of addresses in the table
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replaces the addresses of the given item.
+	 * 
+	 * @param id
+	 *            item ID
+	 * @param addresses
+	 *            item's addresses. Nulls and anything that isn't an IP address literal are ignored.
+	 */
+	public void put(int id, String... addresses) {
+		lock.writeLock().lock();
+		try {
+			doRemove(id);
+			doAdd(id, addresses);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Adds the addresses of an item that isn't in the table yet. Unlike {@link #put(int, String...)}, this doesn't
+	 * have to look for existing entries, so it's the one to use for a bulk load.
+	 * 
+	 * @param id
+	 *            item ID
+	 * @param addresses
+	 *            item's addresses. Nulls and anything that isn't an IP address literal are ignored.
+	 */
+	public void add(int id, String... addresses) {
+		lock.writeLock().lock();
+		try {
+			doAdd(id, addresses);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes all addresses of the given item. This is a linear pass over the table, which is fine for the occasional
+	 * write.
+	 * 
+	 * @param id
+	 *            item ID
+	 */
+	public void remove(int id) {
+		lock.writeLock().lock();
+		try {
+			doRemove(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param cidr
+	 *            CIDR block
+	 * @return sorted IDs of the items having an address in the block
+	 */
+	public int[] search(Cidr cidr) {
+		ensureSorted();
+		lock.readLock().lock();
+		try {
+			int from = lowerBound(cidr.getFirstHi(), cidr.getFirstLo());
+			int to = upperBound(cidr.getLastHi(), cidr.getLastLo());
+			if (from >= to) {
+				return NO_IDS;
+			}
+			int[] ids = new int[to - from];
+			for (int i = from; i < to; i++) {
+				ids[i - from] = (int) entries[STRIDE * i + 2];
+			}
+			
+			// An item with several addresses in the block shows up once per address.
+			Arrays.sort(ids);
+			int n = 0;
+			for (int i = 0; i < ids.length; i++) {
+				if (n == 0 || ids[i] != ids[n - 1]) {
+					ids[n++] = ids[i];
+				}
+			}
+			return (n == ids.length ? ids : Arrays.copyOf(ids, n));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Sorts any appended entries and trims the table to size. Call after a bulk load.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			sort();
+			entries = Arrays.copyOf(entries, STRIDE * Math.max(size, INITIAL_CAPACITY));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void ensureSorted() {
+		lock.readLock().lock();
+		try {
+			if (sorted) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		lock.writeLock().lock();
+		try {
+			sort();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void doAdd(int id, String[] addresses) {
+		for (String address : addresses) {
+			long[] key = Cidr.toKey(address);
+			if (key != null) {
+				doAdd(key[0], key[1], id);
+			}
+		}
+	}
+	
+	private void doAdd(long hi, long lo, int id) {
+		if (STRIDE * (size + 1) > entries.length) {
+			entries = Arrays.copyOf(entries, entries.length * 2);
+		}
+		int index = size;
+		if (sorted) {
+			index = lowerBound(hi, lo);
+			while (index < size && compareAt(index, hi, lo) == 0 && entries[STRIDE * index + 2] < id) {
+				index++;
+			}
+			System.arraycopy(entries, STRIDE * index, entries, STRIDE * (index + 1), STRIDE * (size - index));
+		}
+		entries[STRIDE * index] = hi;
+		entries[STRIDE * index + 1] = lo;
+		entries[STRIDE * index + 2] = id;
+		size++;
+	}
+	
+	// Compacts in place, a run of surviving entries at a time, which preserves the order.
+	private void doRemove(int id) {
+		int n = 0;
+		int i = 0;
+		while (i < size) {
+			if (entries[STRIDE * i + 2] == id) {
+				i++;
+				continue;
+			}
+			int runStart = i;
+			while (i < size && entries[STRIDE * i + 2] != id) {
+				i++;
+			}
+			if (n != runStart) {
+				System.arraycopy(entries, STRIDE * runStart, entries, STRIDE * n, STRIDE * (i - runStart));
+			}
+			n += i - runStart;
+		}
+		this.size = n;
+	}
+	
+	private void sort() {
+		if (!sorted) {
+			quicksort(0, size - 1);
+			this.sorted = true;
+		}
+	}
+	
+	// Sorts the entries in place, so a bulk load doesn't need a second copy of the table.
+	private void quicksort(int low, int high) {
+		while (low < high) {
+			if (high - low < 16) {
+				insertionSort(low, high);
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			long pivotHi = entries[STRIDE * mid];
+			long pivotLo = entries[STRIDE * mid + 1];
+			long pivotId = entries[STRIDE * mid + 2];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compareEntry(i, pivotHi, pivotLo, pivotId) < 0) {
+					i++;
+				}
+				while (compareEntry(j, pivotHi, pivotLo, pivotId) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			
+			// Recurse into the smaller side, so the stack stays shallow.
+			if (j - low < high - i) {
+				quicksort(low, j);
+				low = i;
+			} else {
+				quicksort(i, high);
+				high = j;
+			}
+		}
+	}
+	
+	private void insertionSort(int low, int high) {
+		for (int i = low + 1; i <= high; i++) {
+			for (int j = i; j > low && compareEntry(j - 1, entries[STRIDE * j], entries[STRIDE * j + 1],
+					entries[STRIDE * j + 2]) > 0; j--) {
+				swap(j - 1, j);
+			}
+		}
+	}
+	
+	private int compareEntry(int index, long hi, long lo, long id) {
+		int result = compareAt(index, hi, lo);
+		return (result != 0 ? result : Long.compare(entries[STRIDE * index + 2], id));
+	}
+	
+	private void swap(int i, int j) {
+		for (int k = 0; k < STRIDE; k++) {
+			long tmp = entries[STRIDE * i + k];
+			entries[STRIDE * i + k] = entries[STRIDE * j + k];
+			entries[STRIDE * j + k] = tmp;
+		}
+	}
+	
+	// First entry whose key is at least the given key
+	private int lowerBound(long hi, long lo) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareAt(mid, hi, lo) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	// First entry whose key is greater than the given key
+	private int upperBound(long hi, long lo) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareAt(mid, hi, lo) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	private int compareAt(int index, long hi, long lo) {
+		return Cidr.compare(entries[STRIDE * index], entries[STRIDE * index + 1], hi, lo);
+	}
+}
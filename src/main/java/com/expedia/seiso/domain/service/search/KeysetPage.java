@@ -0,0 +1,64 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.List;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Page of search results that knows whether more results follow and, if so, the ID to resume after. Works for both
+ * offset and {@link KeysetPageRequest keyset} page requests. The total is the size of the whole result set, not the
+ * number of remaining results.
+ * 
+ * @author Willie Wheeler
+ */
+@SuppressWarnings("serial")
+public class KeysetPage<T> extends PageImpl<T> {
+	private final Long nextAfterId;
+	
+	/**
+	 * @param content
+	 *            page content, ordered by ID
+	 * @param pageable
+	 *            page request
+	 * @param total
+	 *            total number of results
+	 * @param nextAfterId
+	 *            ID of the last item on this page if more results follow, or {@code null} if this is the last page
+	 */
+	public KeysetPage(List<T> content, Pageable pageable, long total, Long nextAfterId) {
+		super(content, pageable, total);
+		this.nextAfterId = nextAfterId;
+	}
+	
+	/**
+	 * @return ID to resume after, or {@code null} if this is the last page
+	 */
+	public Long getNextAfterId() { return nextAfterId; }
+	
+	@Override
+	public boolean hasNext() { return nextAfterId != null; }
+	
+	@Override
+	public boolean isLast() { return !hasNext(); }
+	
+	@Override
+	public Pageable nextPageable() {
+		return (hasNext() ? new KeysetPageRequest(getNumber() + 1, getSize(), nextAfterId) : null);
+	}
+}
@@ -0,0 +1,126 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * <p>
+ * Page request that resumes after a given item ID instead of skipping an offset. Results are ordered by ID, so the
+ * database can seek straight to the next page using the primary key rather than scanning and discarding everything
+ * before it.
+ * </p>
+ * <p>
+ * The page number is only a hint: the page starts after the given ID no matter what the number says. It's zero unless
+ * the request came from paging forward with {@link KeysetPage#nextPageable()}, in which case it counts the pages
+ * since the first one.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@SuppressWarnings("serial")
+public class KeysetPageRequest extends PageRequest {
+	private final long afterId;
+	
+	/**
+	 * @param size
+	 *            page size
+	 * @param afterId
+	 *            ID of the last item on the previous page
+	 */
+	public KeysetPageRequest(int size, long afterId) {
+		this(0, size, afterId);
+	}
+	
+	/**
+	 * @param page
+	 *            zero-based page number, if known
+	 * @param size
+	 *            page size
+	 * @param afterId
+	 *            ID of the last item on the previous page
+	 */
+	public KeysetPageRequest(int page, int size, long afterId) {
+		super(page, size);
+		this.afterId = afterId;
+	}
+	
+	public long getAfterId() { return afterId; }
+	
+	/**
+	 * @param pageable
+	 *            page request
+	 * @return the ID after which the page starts, or {@code null} if the page request is offset-based
+	 */
+	public static Long getAfterId(Pageable pageable) {
+		return (pageable instanceof KeysetPageRequest ? ((KeysetPageRequest) pageable).getAfterId() : null);
+	}
+	
+	/**
+	 * Finds where the requested page starts within a sorted ID array.
+	 * 
+	 * @param pageable
+	 *            keyset or offset page request
+	 * @param sortedIds
+	 *            sorted IDs of all the hits
+	 * @return index of the first ID on the page
+	 */
+	public static int startIndex(Pageable pageable, int[] sortedIds) {
+		Long afterId = getAfterId(pageable);
+		if (afterId == null) {
+			return Math.min(pageable.getOffset(), sortedIds.length);
+		}
+		if (afterId >= Integer.MAX_VALUE) {
+			return sortedIds.length;
+		}
+		int index = Arrays.binarySearch(sortedIds, (int) afterId.longValue());
+		return (index >= 0 ? index + 1 : -(index + 1));
+	}
+	
+	/**
+	 * The request alone doesn't know the last ID on its page, so this falls back to the offset request for the
+	 * following page number. Prefer {@link KeysetPage#nextPageable()}, which resumes after the last ID.
+	 */
+	@Override
+	public Pageable next() {
+		return new PageRequest(getPageNumber() + 1, getPageSize());
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof KeysetPageRequest)) {
+			return false;
+		}
+		return super.equals(obj) && afterId == ((KeysetPageRequest) obj).afterId;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * super.hashCode() + Long.hashCode(afterId);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("Keyset page request [after: %d, number: %d, size %d]",
+				afterId, getPageNumber(), getPageSize());
+	}
+}
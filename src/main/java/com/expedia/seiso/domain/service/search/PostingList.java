@@ -0,0 +1,147 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+
+/**
+ * Mutable, sorted set of item IDs, backed by a primitive array. This is the posting list for a single term in an
+ * {@link InvertedIndex}.
+ * 
+ * @author Willie Wheeler
+ */
+public class PostingList {
+	private static final int[] EMPTY = new int[0];
+	
+	private int[] ids = EMPTY;
+	private int size;
+	
+	public int size() { return size; }
+	
+	public boolean isEmpty() { return size == 0; }
+	
+	public boolean contains(int id) {
+		return Arrays.binarySearch(ids, 0, size, id) >= 0;
+	}
+	
+	public boolean add(int id) {
+		int index = Arrays.binarySearch(ids, 0, size, id);
+		if (index >= 0) {
+			return false;
+		}
+		int insertionPoint = -(index + 1);
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+		}
+		System.arraycopy(ids, insertionPoint, ids, insertionPoint + 1, size - insertionPoint);
+		ids[insertionPoint] = id;
+		size++;
+		return true;
+	}
+	
+	public boolean remove(int id) {
+		int index = Arrays.binarySearch(ids, 0, size, id);
+		if (index < 0) {
+			return false;
+		}
+		System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+		size--;
+		return true;
+	}
+	
+	public int[] toArray() {
+		return Arrays.copyOf(ids, size);
+	}
+	
+	/**
+	 * Merges two sorted, duplicate-free ID arrays.
+	 * 
+	 * @param a
+	 *            sorted IDs
+	 * @param b
+	 *            sorted IDs
+	 * @return sorted IDs appearing in either array
+	 */
+	public static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[n++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[n++] = b[j++];
+			} else {
+				result[n++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) { result[n++] = a[i++]; }
+		while (j < b.length) { result[n++] = b[j++]; }
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+	
+	/**
+	 * Intersects two sorted, duplicate-free ID arrays.
+	 * 
+	 * @param a
+	 *            sorted IDs
+	 * @param b
+	 *            sorted IDs
+	 * @return sorted IDs appearing in both arrays
+	 */
+	public static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[n++] = a[i++];
+				j++;
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+	
+	/**
+	 * Subtracts one sorted, duplicate-free ID array from another.
+	 * 
+	 * @param a
+	 *            sorted IDs
+	 * @param b
+	 *            sorted IDs to remove
+	 * @return sorted IDs appearing in {@code a} but not in {@code b}
+	 */
+	public static int[] subtract(int[] a, int[] b) {
+		if (b.length == 0) {
+			return a;
+		}
+		int[] result = new int[a.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length) {
+			while (j < b.length && b[j] < a[i]) {
+				j++;
+			}
+			if (j == b.length || b[j] != a[i]) {
+				result[n++] = a[i];
+			}
+			i++;
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+}
@@ -0,0 +1,289 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * Compact prefix trie for type-ahead completion. Keys are matched case-insensitively and completions come back in their
+ * original case.
+ * </p>
+ * <p>
+ * This is a ternary search trie laid out in parallel primitive arrays instead of node objects, so a node costs a few
+ * array slots and there's nothing for the garbage collector to trace. Completing a prefix walks the arrays and copies
+ * the stored keys into a caller-supplied buffer, so it allocates nothing.
+ * </p>
+ * <p>
+ * Removing a key only clears its terminal node. {@link #compact()} rebuilds the trie from the live keys, balanced and
+ * without the dead nodes; call it after a bulk load.
+ * </p>
+ * <p>
+ * Reads take a shared lock and writes an exclusive one, like the other indexes.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class PrefixTrie {
+	private static final int NIL = -1;
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private char[] chars = new char[INITIAL_CAPACITY];
+	private int[] lo = new int[INITIAL_CAPACITY];
+	private int[] eq = new int[INITIAL_CAPACITY];
+	private int[] hi = new int[INITIAL_CAPACITY];
+	
+	// The key ending at each node, and how many times it was added. A key can belong to more than one item.
+	private String[] keys = new String[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY];
+	
+	private int root = NIL;
+	private int numNodes;
+	private int numKeys;
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	/**
+	 * @return number of distinct keys
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return numKeys;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param key
+	 *            key to add. Ignored if {@code null} or empty.
+	 */
+	public void add(String key) {
+		if (key == null || key.isEmpty()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			insert(key, 1);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @param key
+	 *            key to remove. Ignored if {@code null}, empty or absent.
+	 */
+	public void remove(String key) {
+		if (key == null || key.isEmpty()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			int node = find(key);
+			if (node != NIL && counts[node] > 0 && --counts[node] == 0) {
+				keys[node] = null;
+				numKeys--;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Finds keys starting with the given prefix, in case-insensitive lexicographic order. An exact match therefore
+	 * comes first.
+	 * 
+	 * @param prefix
+	 *            prefix to complete
+	 * @param results
+	 *            buffer for the completions. At most {@code results.length} completions are returned.
+	 * @return number of completions written to the start of the buffer
+	 */
+	public int complete(String prefix, String[] results) {
+		if (prefix == null || prefix.isEmpty() || results.length == 0) {
+			return 0;
+		}
+		lock.readLock().lock();
+		try {
+			int node = find(prefix);
+			if (node == NIL) {
+				return 0;
+			}
+			int n = 0;
+			if (counts[node] > 0) {
+				results[n++] = keys[node];
+			}
+			return collect(eq[node], results, n);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Rebuilds the trie from its live keys, dropping the nodes left behind by removals and balancing the sibling
+	 * links.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			String[] liveKeys = new String[numKeys];
+			int[] liveCounts = new int[numKeys];
+			int n = collectAll(root, liveKeys, liveCounts, 0);
+			
+			int capacity = Math.max(INITIAL_CAPACITY, numNodes);
+			this.chars = new char[capacity];
+			this.lo = new int[capacity];
+			this.eq = new int[capacity];
+			this.hi = new int[capacity];
+			this.keys = new String[capacity];
+			this.counts = new int[capacity];
+			this.root = NIL;
+			this.numNodes = 0;
+			this.numKeys = 0;
+			
+			// Keys come out of the trie sorted, so inserting medians first balances each level.
+			insertBalanced(liveKeys, liveCounts, 0, n);
+			resize(Math.max(INITIAL_CAPACITY, numNodes));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private static char normalize(char c) {
+		return Character.toLowerCase(c);
+	}
+	
+	private int find(String key) {
+		int node = root;
+		int i = 0;
+		char c = normalize(key.charAt(0));
+		while (node != NIL) {
+			if (c < chars[node]) {
+				node = lo[node];
+			} else if (c > chars[node]) {
+				node = hi[node];
+			} else if (++i < key.length()) {
+				c = normalize(key.charAt(i));
+				node = eq[node];
+			} else {
+				return node;
+			}
+		}
+		return NIL;
+	}
+	
+	private void insert(String key, int count) {
+		int i = 0;
+		char c = normalize(key.charAt(0));
+		if (root == NIL) {
+			this.root = newNode(c);
+		}
+		int node = root;
+		while (true) {
+			int child;
+			if (c < chars[node]) {
+				child = lo[node];
+				if (child == NIL) {
+					child = newNode(c);
+					lo[node] = child;
+				}
+			} else if (c > chars[node]) {
+				child = hi[node];
+				if (child == NIL) {
+					child = newNode(c);
+					hi[node] = child;
+				}
+			} else if (++i < key.length()) {
+				c = normalize(key.charAt(i));
+				child = eq[node];
+				if (child == NIL) {
+					child = newNode(c);
+					eq[node] = child;
+				}
+			} else {
+				break;
+			}
+			node = child;
+		}
+		if (counts[node] == 0) {
+			numKeys++;
+		}
+		counts[node] += count;
+		keys[node] = key;
+	}
+	
+	// Callers must assign the result to a local before storing it, since growing replaces the arrays.
+	private int newNode(char c) {
+		if (numNodes == chars.length) {
+			resize(chars.length * 2);
+		}
+		int node = numNodes++;
+		chars[node] = c;
+		lo[node] = NIL;
+		eq[node] = NIL;
+		hi[node] = NIL;
+		return node;
+	}
+	
+	private void resize(int capacity) {
+		this.chars = Arrays.copyOf(chars, capacity);
+		this.lo = Arrays.copyOf(lo, capacity);
+		this.eq = Arrays.copyOf(eq, capacity);
+		this.hi = Arrays.copyOf(hi, capacity);
+		this.keys = Arrays.copyOf(keys, capacity);
+		this.counts = Arrays.copyOf(counts, capacity);
+	}
+	
+	// In-order walk: smaller siblings, then the key ending here, then its extensions, then larger siblings.
+	private int collect(int node, String[] results, int n) {
+		if (node == NIL || n == results.length) {
+			return n;
+		}
+		n = collect(lo[node], results, n);
+		if (n < results.length && counts[node] > 0) {
+			results[n++] = keys[node];
+		}
+		n = collect(eq[node], results, n);
+		return collect(hi[node], results, n);
+	}
+	
+	private int collectAll(int node, String[] liveKeys, int[] liveCounts, int n) {
+		if (node == NIL) {
+			return n;
+		}
+		n = collectAll(lo[node], liveKeys, liveCounts, n);
+		if (counts[node] > 0) {
+			liveKeys[n] = keys[node];
+			liveCounts[n] = counts[node];
+			n++;
+		}
+		n = collectAll(eq[node], liveKeys, liveCounts, n);
+		return collectAll(hi[node], liveKeys, liveCounts, n);
+	}
+	
+	private void insertBalanced(String[] sortedKeys, int[] sortedCounts, int from, int to) {
+		if (from < to) {
+			int mid = (from + to) >>> 1;
+			insert(sortedKeys[mid], sortedCounts[mid]);
+			insertBalanced(sortedKeys, sortedCounts, from, mid);
+			insertBalanced(sortedKeys, sortedCounts, mid + 1, to);
+		}
+	}
+}
@@ -16,94 +16,300 @@
 package com.expedia.seiso.domain.service.search;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.EntityType;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotEmpty;
+import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
-// TODO revisit string approach, look at replacing with criteria to protect against injection
+import lombok.Value;
+import lombok.val;
 
 /**
+ * <p>
+ * Builds search queries matching search tokens against a set of entity fields with {@code like}, optionally
+ * narrowed by filters requiring property paths such as {@code serviceInstance.environment.key} to take one of a set of
+ * values. Filters render as equality joins, so the database can drive the query from its indexes and only apply the
+ * {@code like}s to the rows that survive. A query can have filters and no tokens at all.
+ * </p>
+ * <p>
+ * Queries are built once with the criteria API per query shape (entity, field names and token count bucket), and
+ * the rendered JPQL is cached and reused. Only the JPQL string is shared between threads, never the criteria objects,
+ * which aren't thread-safe. Token counts are rounded up to a power of two and the extra parameters repeat the last token, so a given
+ * shape always renders the same parameterized query. That keeps both the Hibernate query plan cache and the JDBC
+ * prepared statement cache hitting. Field names are resolved against the JPA metamodel, and tokens are only ever bound
+ * as parameters.
+ * </p>
+ * 
  * @author Ken Van Eyk
+ * @author Willie Wheeler
  */
+@Component
 public class QueryFactory {
-	private String calculateTableAlias(String entityName) {
-		String tableAlias = entityName.substring(0, 1).toLowerCase();
+	private static final String ALIAS = "x";
+	private static final String ID_FIELD_NAME = "id";
+	private static final List<String> NO_FIELD_NAMES = Collections.emptyList();
+	private static final Map<String, Set<String>> NO_FILTERS = Collections.emptyMap();
+	
+	private final ConcurrentMap<QueryShape, CompiledQuery> compiledQueries = new ConcurrentHashMap<>();
+	
+	public Query buildQuery(@NotEmpty String entityName, @NotNull EntityManager entityManager,
+			@NotNull Set<String> fieldNames, @NotNull Set<String> searchTokens) {
+		return this.buildQuery(entityName, entityManager, fieldNames, searchTokens, null);
+	}
 
-		return tableAlias;
+	/**
+	 * Builds a search query whose results are ordered by ID, optionally starting after a given ID. Paging on the ID
+	 * lets the database seek to the next page instead of scanning past an offset.
+	 */
+	public Query buildQuery(@NotEmpty String entityName, @NotNull EntityManager entityManager,
+			@NotNull Set<String> fieldNames, @NotNull Set<String> searchTokens, Long afterId) {
+		val kind = (afterId == null ? QueryKind.PAGE : QueryKind.PAGE_AFTER_ID);
+		return this.compile(kind, entityName, entityManager, fieldNames, NO_FIELD_NAMES, NO_FILTERS, searchTokens)
+				.bind(entityManager, searchTokens, NO_FILTERS, afterId, null);
 	}
 
-	private void appendQueryRoot(StringBuilder stringBuilder, String entityName, String tableAlias) {
-		stringBuilder.append("from ").append(entityName).append(" ").append(tableAlias).append(" where ");
+	/**
+	 * Like {@link #buildQuery(String, EntityManager, Set, Set, Long)}, but selects only the ID and the given fields
+	 * instead of whole entities, so nothing else gets loaded, and applies the given filters. Each result row is an
+	 * {@code Object[]} holding the ID followed by the selected field values.
+	 */
+	public Query buildProjectionQuery(@NotEmpty String entityName, @NotNull EntityManager entityManager,
+			@NotNull Set<String> fieldNames, @NotNull Set<String> selectFieldNames,
+			@NotNull Map<String, Set<String>> filters, @NotNull Set<String> searchTokens, Long afterId) {
+		val kind = (afterId == null ? QueryKind.PAGE : QueryKind.PAGE_AFTER_ID);
+		return this.compile(kind, entityName, entityManager, fieldNames, toList(selectFieldNames), filters,
+				searchTokens).bind(entityManager, searchTokens, filters, afterId, null);
 	}
 
-	private List<String> appendQueryLikeClausesForField(StringBuilder queryStringBuilder, String tableAlias,
-			String fieldName, Set<String> searchTokens) {
-		List<String> parameterNames = new ArrayList<String>();
+	/**
+	 * Builds a query selecting the ID and the given fields for the entities with the given IDs, ordered by ID. Result
+	 * rows are as for {@link #buildProjectionQuery(String, EntityManager, Set, Set, Map, Set, Long)}.
+	 */
+	public Query buildProjectionByIdQuery(@NotEmpty String entityName, @NotNull EntityManager entityManager,
+			@NotNull Set<String> selectFieldNames, @NotEmpty Collection<Long> ids) {
+		Assert.notEmpty(ids, "empty IDs");
+		val shape = new QueryShape(
+				QueryKind.BY_ID, entityName, NO_FIELD_NAMES, toList(selectFieldNames), NO_FIELD_NAMES, 0);
+		return compiledQueries.computeIfAbsent(shape, s -> this.compile(s, entityManager))
+				.bind(entityManager, Collections.<String>emptySet(), NO_FILTERS, null, ids);
+	}
 
-		if (queryStringBuilder == null) {
-			queryStringBuilder = new StringBuilder();
+	public Query buildCountQuery(@NotEmpty String entityName, @NotNull EntityManager entityManager,
+			@NotNull Set<String> fieldNames, @NotNull Map<String, Set<String>> filters,
+			@NotNull Set<String> searchTokens) {
+		return this.compile(QueryKind.COUNT, entityName, entityManager, fieldNames, NO_FIELD_NAMES, filters,
+				searchTokens).bind(entityManager, searchTokens, filters, null, null);
+	}
+	
+	/**
+	 * @param entityManager
+	 *            entity manager
+	 * @param entityName
+	 *            entity name
+	 * @return entity class
+	 */
+	public Class<?> getEntityClass(@NotNull EntityManager entityManager, @NotEmpty String entityName) {
+		return this.findEntityType(entityManager, entityName).getJavaType();
+	}
+	
+	/**
+	 * Rounds the token count up to the next power of two, so that at most a handful of shapes exist per entity.
+	 */
+	static int toTokenCountBucket(int tokenCount) {
+		return (tokenCount <= 1 ? tokenCount : Integer.highestOneBit(tokenCount - 1) << 1);
+	}
+	
+	private List<String> toList(Set<String> fieldNames) {
+		Assert.notEmpty(fieldNames, "empty select field names");
+		return new ArrayList<String>(fieldNames);
+	}
+	
+	private CompiledQuery compile(QueryKind kind, String entityName, EntityManager entityManager,
+			Set<String> fieldNames, List<String> selectFieldNames, Map<String, Set<String>> filters,
+			Set<String> searchTokens) {
+		
+		Assert.notEmpty(fieldNames, "empty field names");
+		Assert.isTrue(!searchTokens.isEmpty() || !filters.isEmpty(), "empty search tokens and filters");
+		for (val values : filters.values()) {
+			Assert.notEmpty(values, "empty filter values");
 		}
-
-		for (int tokenIndex = 0; tokenIndex < searchTokens.size(); tokenIndex++) {
-			String parameterName = new StringBuilder("param").append(tokenIndex).toString();
-			parameterNames.add(parameterName);
-			queryStringBuilder.append(tableAlias).append(".").append(fieldName).append(" like :").append(parameterName)
-					.append(" ");
-			if (tokenIndex < searchTokens.size() - 1) {
-				queryStringBuilder.append("or ");
+		
+		val shape = new QueryShape(kind, entityName, new ArrayList<String>(fieldNames), selectFieldNames,
+				new ArrayList<String>(filters.keySet()), toTokenCountBucket(searchTokens.size()));
+		return compiledQueries.computeIfAbsent(shape, s -> this.compile(s, entityManager));
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private CompiledQuery compile(QueryShape shape, EntityManager entityManager) {
+		val builder = entityManager.getCriteriaBuilder();
+		EntityType entityType = this.findEntityType(entityManager, shape.getEntityName());
+		val kind = shape.getKind();
+		val projection = !shape.getSelectFieldNames().isEmpty();
+		
+		val tokenParameters = new ArrayList<ParameterExpression<String>>(shape.getTokenCountBucket());
+		for (int i = 0; i < shape.getTokenCountBucket(); i++) {
+			tokenParameters.add(builder.parameter(String.class, "token" + i));
+		}
+		ParameterExpression<Long> afterIdParameter =
+				(kind == QueryKind.PAGE_AFTER_ID ? builder.parameter(Long.class, "afterId") : null);
+		ParameterExpression<Collection> idsParameter =
+				(kind == QueryKind.BY_ID ? builder.parameter(Collection.class, "ids") : null);
+		val filterParameters = new ArrayList<ParameterExpression<Collection>>(shape.getFilterPaths().size());
+		for (int i = 0; i < shape.getFilterPaths().size(); i++) {
+			filterParameters.add(builder.parameter(Collection.class, "filter" + i));
+		}
+		
+		CriteriaQuery criteria;
+		if (kind == QueryKind.COUNT) {
+			criteria = builder.createQuery(Long.class);
+		} else if (projection) {
+			criteria = builder.createQuery(Object[].class);
+		} else {
+			criteria = builder.createQuery(entityType.getJavaType());
+		}
+		Root root = criteria.from(entityType);
+		root.alias(ALIAS);
+		
+		val conjuncts = new ArrayList<Predicate>();
+		if (kind == QueryKind.BY_ID) {
+			conjuncts.add(root.get(ID_FIELD_NAME).in(idsParameter));
+		} else if (!tokenParameters.isEmpty()) {
+			conjuncts.add(this.buildTokenPredicate(builder, root, shape.getFieldNames(), tokenParameters));
+		}
+		for (int i = 0; i < filterParameters.size(); i++) {
+			conjuncts.add(this.getPath(root, shape.getFilterPaths().get(i)).in(filterParameters.get(i)));
+		}
+		Predicate where = builder.and(conjuncts.toArray(new Predicate[conjuncts.size()]));
+		if (afterIdParameter != null) {
+			where = builder.and(where, builder.gt(root.<Long>get(ID_FIELD_NAME), afterIdParameter));
+		}
+		criteria.where(where);
+		
+		if (kind == QueryKind.COUNT) {
+			criteria.select(builder.count(root));
+		} else {
+			if (projection) {
+				val selections = new ArrayList<Selection<?>>();
+				selections.add(root.get(ID_FIELD_NAME));
+				for (val fieldName : shape.getSelectFieldNames()) {
+					selections.add(root.get(fieldName));
+				}
+				criteria.multiselect(selections);
+			} else {
+				criteria.select(root);
 			}
+			criteria.orderBy(builder.asc(root.get(ID_FIELD_NAME)));
 		}
-
-		return parameterNames;
+		
+		val jpql = entityManager.createQuery(criteria).unwrap(org.hibernate.Query.class).getQueryString();
+		return new CompiledQuery(jpql, tokenParameters.size(), filterParameters.size(), afterIdParameter != null,
+				idsParameter != null);
 	}
-
-	private List<String> appendQueryString(StringBuilder queryStringBuilder, String entityName, Set<String> fieldNames,
-			Set<String> searchTokens) {
-		List<String> parameterNames = new ArrayList<String>();
-
-		String tableAlias = this.calculateTableAlias(entityName);
-		this.appendQueryRoot(queryStringBuilder, entityName, tableAlias);
-
-		int fieldNamesIndex = 0;
-		for (String fieldName : fieldNames) {
-			// TODO improve this, technically the parameter names are created every time we call this append method -
-			// they should always be consistent but it is wasting resources a bit
-			parameterNames.addAll(this.appendQueryLikeClausesForField(queryStringBuilder, tableAlias, fieldName,
-					searchTokens));
-			if (++fieldNamesIndex < fieldNames.size()) {
-				queryStringBuilder.append("or ");
+	
+	// Each association along the way becomes an inner join.
+	private Path<?> getPath(Root<?> root, String propertyPath) {
+		Path<?> path = root;
+		for (val propertyName : propertyPath.split("\\.")) {
+			path = path.get(propertyName);
+		}
+		return path;
+	}
+	
+	private EntityType<?> findEntityType(EntityManager entityManager, String entityName) {
+		for (val entityType : entityManager.getMetamodel().getEntities()) {
+			if (entityType.getName().equals(entityName)) {
+				return entityType;
 			}
 		}
-
-		return parameterNames;
+		throw new IllegalArgumentException("Unknown entity: " + entityName);
 	}
-
-	private void setParameters(Query jpaQuery, List<String> parameterNames, Set<String> searchTokens) {
-		int parameterIndex = 0;
-		for (String searchToken : searchTokens) {
-			jpaQuery.setParameter(parameterNames.get(parameterIndex++), searchToken);
+	
+	private Predicate buildTokenPredicate(CriteriaBuilder builder, Root<?> root, List<String> fieldNames,
+			List<ParameterExpression<String>> tokenParameters) {
+		
+		val likes = new ArrayList<Predicate>(fieldNames.size() * tokenParameters.size());
+		for (val fieldName : fieldNames) {
+			for (val tokenParameter : tokenParameters) {
+				likes.add(builder.like(root.<String>get(fieldName), tokenParameter));
+			}
 		}
+		return builder.or(likes.toArray(new Predicate[likes.size()]));
 	}
-
-	public Query buildQuery(@NotEmpty String entityName, @NotNull EntityManager entityManager,
-			@NotNull Set<String> fieldNames, @NotNull Set<String> searchTokens) {
-		Query jpaQuery = null;
-
-		Assert.notEmpty(fieldNames, "empty field names");
-		Assert.notEmpty(searchTokens, "empty search tokens");
-
-		StringBuilder queryStringBuilder = new StringBuilder();
-
-		List<String> parameterNames = this.appendQueryString(queryStringBuilder, entityName, fieldNames, searchTokens);
-		jpaQuery = entityManager.createQuery(queryStringBuilder.toString());
-		this.setParameters(jpaQuery, parameterNames, searchTokens);
-
-		return jpaQuery;
+	
+	private enum QueryKind {
+		PAGE,
+		PAGE_AFTER_ID,
+		BY_ID,
+		COUNT
+	}
+	
+	@Value
+	private static class QueryShape {
+		private QueryKind kind;
+		private String entityName;
+		private List<String> fieldNames;
+		
+		// Empty to select whole entities
+		private List<String> selectFieldNames;
+		
+		private List<String> filterPaths;
+		private int tokenCountBucket;
+	}
+	
+	@Value
+	private static class CompiledQuery {
+		private String jpql;
+		private int numTokenParameters;
+		
+		// One per filter path, in filter path order
+		private int numFilterParameters;
+		
+		private boolean hasAfterIdParameter;
+		private boolean hasIdsParameter;
+		
+		Query bind(EntityManager entityManager, Set<String> searchTokens, Map<String, Set<String>> filters,
+				Long afterId, Collection<Long> ids) {
+			Query query = entityManager.createQuery(jpql);
+			
+			// Pad out the bucket by repeating the last token. Repeating a disjunct doesn't change the result.
+			String lastToken = null;
+			val tokenIterator = searchTokens.iterator();
+			for (int i = 0; i < numTokenParameters; i++) {
+				if (tokenIterator.hasNext()) {
+					lastToken = tokenIterator.next();
+				}
+				query.setParameter("token" + i, lastToken);
+			}
+			val filterIterator = filters.values().iterator();
+			for (int i = 0; i < numFilterParameters; i++) {
+				query.setParameter("filter" + i, filterIterator.next());
+			}
+			if (hasAfterIdParameter) {
+				query.setParameter("afterId", afterId);
+			}
+			if (hasIdsParameter) {
+				query.setParameter("ids", ids);
+			}
+			return query;
+		}
 	}
 }
@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.List;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Search results page ordered by relevance, best first. Each item's {@link RelevanceScorer score} comes along, so
+ * pages for different item types can be merged. Ranked pages have no next page.
+ * 
+ * @author Willie Wheeler
+ */
+@SuppressWarnings("serial")
+public class RankedPage<T> extends PageImpl<T> {
+	private final int[] scores;
+	
+	/**
+	 * @param content
+	 *            items, best first
+	 * @param scores
+	 *            item scores, parallel to the content
+	 * @param pageable
+	 *            page request
+	 * @param total
+	 *            total number of hits, including the ones that didn't make the page
+	 */
+	public RankedPage(List<T> content, int[] scores, Pageable pageable, long total) {
+		super(content, pageable, total);
+		this.scores = scores;
+	}
+	
+	/**
+	 * @param index
+	 *            index into the content
+	 * @return relevance score of the item
+	 */
+	public int getScore(int index) { return scores[index]; }
+	
+	@Override
+	public boolean hasNext() { return false; }
+	
+	@Override
+	public boolean isLast() { return true; }
+	
+	@Override
+	public Pageable nextPageable() { return null; }
+}
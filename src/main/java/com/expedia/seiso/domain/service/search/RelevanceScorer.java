@@ -0,0 +1,180 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.StringUtils;
+
+/**
+ * <p>
+ * Scores search hits by how well a field value matches the search tokens. From best to worst: the value equals a
+ * token, starts with it, contains it at a token boundary (right after a non-alphanumeric character, as in
+ * {@code web-checkout}), or just contains it somewhere. Within a tier, shorter values score higher, so
+ * {@code checkout} beats {@code checkout-service}. An item scores as its best field value against its best token.
+ * </p>
+ * <p>
+ * Matching is case-insensitive and doesn't allocate, since ranking scores every candidate hit.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class RelevanceScorer {
+	public static final int NO_MATCH = 0;
+	public static final int SUBSTRING = 1;
+	public static final int TOKEN_BOUNDARY = 2;
+	public static final int PREFIX = 3;
+	public static final int EXACT = 4;
+	
+	private static final char WILD_CARD = '%';
+	
+	// The tier goes in the high bits and the length penalty in the low ones.
+	private static final int TIER_SHIFT = 16;
+	private static final int MAX_LENGTH = (1 << TIER_SHIFT) - 1;
+	
+	private final String[] tokens;
+	
+	/**
+	 * @param searchTokens
+	 *            search tokens. Leading and trailing SQL wildcards are ignored.
+	 */
+	public RelevanceScorer(Collection<String> searchTokens) {
+		List<String> tokenList = new ArrayList<>(searchTokens.size());
+		for (String searchToken : searchTokens) {
+			String token = StringUtils.trimLeadingCharacter(searchToken, WILD_CARD);
+			token = StringUtils.trimTrailingCharacter(token, WILD_CARD);
+			if (!token.isEmpty()) {
+				tokenList.add(token);
+			}
+		}
+		this.tokens = tokenList.toArray(new String[tokenList.size()]);
+	}
+	
+	/**
+	 * @param score
+	 *            score
+	 * @return match tier of the score, from {@link #NO_MATCH} to {@link #EXACT}
+	 */
+	public static int getTier(int score) {
+		return score >>> TIER_SHIFT;
+	}
+	
+	/**
+	 * @param values
+	 *            field values, possibly {@code null}
+	 * @return best score among the values, or 0 if none matches
+	 */
+	public int score(String[] values) {
+		int best = 0;
+		for (String value : values) {
+			best = Math.max(best, score(value));
+		}
+		return best;
+	}
+	
+	/**
+	 * @param value
+	 *            field value, possibly {@code null}
+	 * @return score of the value, or 0 if it doesn't match
+	 */
+	public int score(String value) {
+		if (value == null) {
+			return 0;
+		}
+		int tier = NO_MATCH;
+		for (String token : tokens) {
+			tier = Math.max(tier, tier(value, token));
+		}
+		if (tier == NO_MATCH) {
+			return 0;
+		}
+		return (tier << TIER_SHIFT) | (MAX_LENGTH - Math.min(value.length(), MAX_LENGTH));
+	}
+	
+	/**
+	 * Ranks candidate hits by relevance and keeps the best ones, without sorting the candidates.
+	 * 
+	 * @param candidates
+	 *            candidate hits
+	 * @param fieldNames
+	 *            names of the item properties to score
+	 * @param total
+	 *            total number of hits, which may exceed the candidates
+	 * @param pageable
+	 *            page request, whose size is the number of hits to keep
+	 * @return best hits, best first
+	 */
+	public <T> RankedPage<T> rank(Collection<T> candidates, Collection<String> fieldNames, long total,
+			Pageable pageable) {
+		
+		TopK<T> topK = new TopK<>(pageable.getPageSize());
+		String[] values = new String[fieldNames.size()];
+		for (T candidate : candidates) {
+			BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(candidate);
+			int i = 0;
+			for (String fieldName : fieldNames) {
+				values[i++] = (String) wrapper.getPropertyValue(fieldName);
+			}
+			topK.offer(candidate, score(values));
+		}
+		return toPage(topK, pageable, total);
+	}
+	
+	/**
+	 * @param topK
+	 *            best hits
+	 * @param pageable
+	 *            page request
+	 * @param total
+	 *            total number of hits
+	 * @return page holding the hits, best first
+	 */
+	public static <T> RankedPage<T> toPage(TopK<T> topK, Pageable pageable, long total) {
+		List<TopK.Scored<T>> best = topK.toList();
+		List<T> content = new ArrayList<>(best.size());
+		int[] scores = new int[best.size()];
+		for (int i = 0; i < scores.length; i++) {
+			content.add(best.get(i).getItem());
+			scores[i] = best.get(i).getScore();
+		}
+		return new RankedPage<T>(content, scores, pageable, total);
+	}
+	
+	private static int tier(String value, String token) {
+		int length = token.length();
+		if (value.length() < length) {
+			return NO_MATCH;
+		}
+		if (value.regionMatches(true, 0, token, 0, length)) {
+			return (value.length() == length ? EXACT : PREFIX);
+		}
+		int tier = NO_MATCH;
+		for (int i = 1; i <= value.length() - length; i++) {
+			if (value.regionMatches(true, i, token, 0, length)) {
+				if (!Character.isLetterOrDigit(value.charAt(i - 1))) {
+					return TOKEN_BOUNDARY;
+				}
+				tier = SUBSTRING;
+			}
+		}
+		return tier;
+	}
+}
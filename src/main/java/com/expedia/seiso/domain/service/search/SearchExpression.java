@@ -0,0 +1,55 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * <p>
+ * Parsed search query. It's the conjunction of the field predicates, at most one per field, and the free text.
+ * </p>
+ * <p>
+ * The free text terms are matched against item names as before, and any one of them may match. The predicates are
+ * exact matches that the search engine can push down to the database as equality joins. A query made up only of
+ * predicates never needs a wildcard scan.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+@Value
+public class SearchExpression {
+	@NonNull private List<FieldPredicate> predicates;
+	@NonNull private List<String> terms;
+	
+	/**
+	 * @param field
+	 *            field
+	 * @return values the field may take, or an empty set if the expression doesn't constrain it
+	 */
+	public Set<String> getValues(@NonNull SearchField field) {
+		for (FieldPredicate predicate : predicates) {
+			if (predicate.getField() == field) {
+				return predicate.getValues();
+			}
+		}
+		return Collections.emptySet();
+	}
+}
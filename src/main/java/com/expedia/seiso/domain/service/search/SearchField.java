@@ -0,0 +1,63 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Locale;
+
+/**
+ * Fields that a search query can qualify, as in {@code env:prod}.
+ * 
+ * @author Willie Wheeler
+ */
+public enum SearchField {
+	
+	/** Simple name of the item type, e.g. {@code type:node} */
+	TYPE("type"),
+	
+	/** Environment key, e.g. {@code env:prod} */
+	ENV("env"),
+	
+	/** Data center key, e.g. {@code dc:phx} */
+	DC("dc"),
+	
+	/** Health status type key, e.g. {@code health:danger} */
+	HEALTH("health");
+	
+	private final String qualifier;
+	
+	private SearchField(String qualifier) {
+		this.qualifier = qualifier;
+	}
+	
+	public String getQualifier() {
+		return qualifier;
+	}
+	
+	/**
+	 * @param qualifier
+	 *            qualifier, case-insensitive
+	 * @return field for the given qualifier, or {@code null} if there isn't one
+	 */
+	public static SearchField forQualifier(String qualifier) {
+		String normalized = qualifier.toLowerCase(Locale.ENGLISH);
+		for (SearchField field : values()) {
+			if (field.qualifier.equals(normalized)) {
+				return field;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,31 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import lombok.Value;
+
+/**
+ * A single search hit with its relevance score, for merging ranked hits across item types.
+ * 
+ * @author Willie Wheeler
+ */
+@Value
+@SuppressWarnings("rawtypes")
+public class SearchHit {
+	private Class itemClass;
+	private Object item;
+	private int score;
+}
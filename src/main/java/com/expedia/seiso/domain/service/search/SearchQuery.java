@@ -15,16 +15,36 @@
  */
 package com.expedia.seiso.domain.service.search;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * @author Ken Van Eyk
+ * @author Willie Wheeler
  */
 public class SearchQuery {
 	private String query;
 	private Set<String> tokens;
+	
+	// Simple names of the item types to search, or empty to search them all
+	private Set<String> typeNames = new LinkedHashSet<String>();
+	
+	// Field predicates from the parsed query, all of which must hold
+	private List<FieldPredicate> predicates = new ArrayList<FieldPredicate>();
+	
+	// Whether to count the hits per type instead of loading them
+	private boolean countOnly;
+	
+	// Whether to order each type's hits by relevance instead of by ID
+	private boolean ranked;
+	
+	// Whether to match names by edit distance instead of by substring
+	private boolean fuzzy;
 
 	public SearchQuery() {
 		this(null);
@@ -66,5 +86,129 @@ public class SearchQuery {
 	public void clearTokens() {
 		this.tokens.clear();
 	}
+	
+	public void setTypeNames(Set<String> typeNames) {
+		this.typeNames.clear();
+		if (typeNames != null) {
+			this.typeNames.addAll(typeNames);
+		}
+	}
+	
+	public Set<String> getTypeNames() {
+		return Collections.unmodifiableSet(this.typeNames);
+	}
+	
+	/**
+	 * Applies a parsed query. Its free text becomes the tokens and its predicates become the query's predicates. A
+	 * {@link SearchField#TYPE} predicate narrows the searched types further.
+	 * 
+	 * @param expression
+	 *            parsed query
+	 */
+	public void setExpression(SearchExpression expression) {
+		this.setTokens(SearchQueryParser.toTokens(expression));
+		this.predicates.clear();
+		this.predicates.addAll(expression.getPredicates());
+	}
+	
+	public List<FieldPredicate> getPredicates() {
+		return Collections.unmodifiableList(this.predicates);
+	}
+	
+	/**
+	 * @return whether the query has predicates that only the database can evaluate, i.e. any besides
+	 *         {@link SearchField#TYPE}
+	 */
+	public boolean hasFilters() {
+		for (FieldPredicate predicate : this.predicates) {
+			if (predicate.getField() != SearchField.TYPE) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return whether there's anything to search for: free text, filters or both
+	 */
+	public boolean hasCriteria() {
+		return !this.tokens.isEmpty() || this.hasFilters();
+	}
+	
+	/**
+	 * Resolves the query's filters against a type's filter paths.
+	 * 
+	 * @param filterPaths
+	 *            property path for each field the type can be filtered on
+	 * @return values each property path must take, or {@code null} if the type lacks a path for one of the filters and
+	 *         so can't match
+	 */
+	public Map<String, Set<String>> getFilters(Map<SearchField, String> filterPaths) {
+		Map<String, Set<String>> filters = new LinkedHashMap<String, Set<String>>();
+		for (FieldPredicate predicate : this.predicates) {
+			if (predicate.getField() != SearchField.TYPE) {
+				String path = filterPaths.get(predicate.getField());
+				if (path == null) {
+					return null;
+				}
+				filters.put(path, predicate.getValues());
+			}
+		}
+		return filters;
+	}
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @return whether the query searches the given item type, going by both the type names and any
+	 *         {@link SearchField#TYPE} predicate. Type names are case-insensitive.
+	 */
+	public boolean includesType(Class<?> itemClass) {
+		if (!matchesTypeName(this.typeNames, itemClass)) {
+			return false;
+		}
+		for (FieldPredicate predicate : this.predicates) {
+			if (predicate.getField() == SearchField.TYPE && !matchesTypeName(predicate.getValues(), itemClass)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean matchesTypeName(Set<String> typeNames, Class<?> itemClass) {
+		if (typeNames.isEmpty()) {
+			return true;
+		}
+		for (String typeName : typeNames) {
+			if (typeName.equalsIgnoreCase(itemClass.getSimpleName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void setCountOnly(boolean countOnly) {
+		this.countOnly = countOnly;
+	}
+	
+	public boolean isCountOnly() {
+		return this.countOnly;
+	}
+	
+	public void setRanked(boolean ranked) {
+		this.ranked = ranked;
+	}
+	
+	public boolean isRanked() {
+		return this.ranked;
+	}
+	
+	public void setFuzzy(boolean fuzzy) {
+		this.fuzzy = fuzzy;
+	}
+	
+	public boolean isFuzzy() {
+		return this.fuzzy;
+	}
 
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * <p>
+ * Parses search queries such as {@code type:node env:prod dc:phx health:danger web} into a {@link SearchExpression}.
+ * </p>
+ * <p>
+ * Words are separated by whitespace. A word of the form {@code qualifier:value} with a known {@link SearchField}
+ * qualifier is a predicate, and a comma-separated list of values matches any of them, as in {@code env:prod,test}.
+ * Repeating a qualifier adds values the same way. Every other word is free text, including words whose qualifier
+ * isn't known, so IPv6 addresses and the like still work as search terms.
+ * </p>
+ * <p>
+ * As a {@link Tokenizer}, the parser yields the free text terms wrapped in database wild cards.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class SearchQueryParser implements Tokenizer {
+	private static final Pattern WORD_DELIMITER = Pattern.compile("\\s+");
+	private static final Pattern VALUE_DELIMITER = Pattern.compile(",");
+	private static final char QUALIFIER_DELIMITER = ':';
+	private static final String WILD_CARD = "%";
+	
+	/**
+	 * @param query
+	 *            search query, possibly {@code null}
+	 * @return parsed query
+	 * @throws InvalidSearchQueryException
+	 *             if a predicate has no values
+	 */
+	public SearchExpression parse(String query) {
+		Map<SearchField, Set<String>> values = new EnumMap<>(SearchField.class);
+		Set<String> terms = new LinkedHashSet<>();
+		if (!StringUtils.isEmpty(query)) {
+			for (String word : WORD_DELIMITER.split(query.trim())) {
+				if (word.isEmpty()) {
+					continue;
+				}
+				int delimiter = word.indexOf(QUALIFIER_DELIMITER);
+				SearchField field = (delimiter > 0 ? SearchField.forQualifier(word.substring(0, delimiter)) : null);
+				if (field == null) {
+					terms.add(word);
+				} else {
+					Set<String> fieldValues = values.computeIfAbsent(field, f -> new LinkedHashSet<>());
+					for (String value : VALUE_DELIMITER.split(word.substring(delimiter + 1))) {
+						if (!value.isEmpty()) {
+							fieldValues.add(value);
+						}
+					}
+					if (fieldValues.isEmpty()) {
+						throw new InvalidSearchQueryException("No value for " + field.getQualifier() + ": in " + query);
+					}
+				}
+			}
+		}
+		
+		List<FieldPredicate> predicates = new ArrayList<>(values.size());
+		values.forEach((field, fieldValues) ->
+				predicates.add(new FieldPredicate(field, Collections.unmodifiableSet(fieldValues))));
+		return new SearchExpression(Collections.unmodifiableList(predicates),
+				Collections.unmodifiableList(new ArrayList<>(terms)));
+	}
+	
+	@Override
+	public Set<String> tokenize(String query) {
+		return toTokens(parse(query));
+	}
+	
+	/**
+	 * @param expression
+	 *            parsed query
+	 * @return free text terms wrapped in database wild cards
+	 */
+	public static Set<String> toTokens(SearchExpression expression) {
+		Set<String> tokens = new LinkedHashSet<>();
+		for (String term : expression.getTerms()) {
+			tokens.add(WILD_CARD + term + WILD_CARD);
+		}
+		return tokens;
+	}
+	
+	/**
+	 * Thrown when a client sends a search query that doesn't parse.
+	 */
+	@SuppressWarnings("serial")
+	public static class InvalidSearchQueryException extends IllegalArgumentException {
+		
+		public InvalidSearchQueryException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import lombok.Value;
+
+/**
+ * <p>
+ * Keeps the {@code k} highest-scoring items offered to it, using a bounded min-heap. The heap's root is the worst item
+ * kept so far, so deciding whether a new item makes the cut is a single comparison, and the whole pass costs
+ * {@code O(n log k)} instead of sorting all {@code n} items.
+ * </p>
+ * <p>
+ * Ties go to the item offered first, which keeps results stable when the input is in ID order.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class TopK<T> {
+	
+	// Worst first: lowest score, then latest offered
+	private static final Comparator<Scored<?>> WORST_FIRST = Comparator
+			.<Scored<?>>comparingInt(scored -> scored.getScore())
+			.thenComparing(Comparator.<Scored<?>>comparingLong(scored -> scored.getSequence()).reversed());
+	
+	private final int k;
+	private final PriorityQueue<Scored<T>> heap;
+	private long sequence;
+	
+	/**
+	 * @param k
+	 *            maximum number of items to keep
+	 */
+	public TopK(int k) {
+		this.k = k;
+		this.heap = new PriorityQueue<Scored<T>>(Math.max(k, 1), WORST_FIRST);
+	}
+	
+	/**
+	 * @param item
+	 *            item
+	 * @param score
+	 *            item's score. Higher is better.
+	 * @return whether the item is among the top {@code k} so far
+	 */
+	public boolean offer(T item, int score) {
+		long itemSequence = sequence++;
+		if (heap.size() < k) {
+			heap.add(new Scored<T>(item, score, itemSequence));
+			return true;
+		}
+		
+		// Later items lose ties, so only a strictly higher score displaces the root.
+		if (k == 0 || score <= heap.peek().getScore()) {
+			return false;
+		}
+		heap.poll();
+		heap.add(new Scored<T>(item, score, itemSequence));
+		return true;
+	}
+	
+	public int size() {
+		return heap.size();
+	}
+	
+	/**
+	 * @return score of the worst item kept, which a new item must beat once there are {@code k} items
+	 */
+	public int peekScore() {
+		return heap.isEmpty() ? Integer.MIN_VALUE : heap.peek().getScore();
+	}
+	
+	/**
+	 * @return the items kept, best first
+	 */
+	public List<Scored<T>> toList() {
+		List<Scored<T>> list = new ArrayList<>(heap);
+		Collections.sort(list, WORST_FIRST.reversed());
+		return list;
+	}
+	
+	@Value
+	public static class Scored<T> {
+		private T item;
+		private int score;
+		private long sequence;
+	}
+}
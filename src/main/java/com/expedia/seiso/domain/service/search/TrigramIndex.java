@@ -0,0 +1,366 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * <p>
+ * In-memory trigram index supporting arbitrary substring matches (the equivalent of {@code like '%token%'}) over the
+ * string fields of a single item type.
+ * </p>
+ * <p>
+ * Every three-character window of every field value maps to the IDs of the documents containing it. A token of three
+ * or more characters is looked up by intersecting the posting lists of its trigrams, smallest first, and then checking
+ * the surviving candidates against the stored values to weed out false positives. Shorter tokens fall back to a scan.
+ * Matching is case-insensitive.
+ * </p>
+ * <p>
+ * The posting lists live in an immutable, compressed base segment plus a small mutable overlay of additions and
+ * removals. {@link #compact()} folds the overlay into the base; call it after a bulk load.
+ * </p>
+ * <p>
+ * Selective tokens answer in well under 5 ms on a million names (see {@code TrigramIndexBenchmark}). Two query classes
+ * are out of scope for that bound: tokens shorter than three characters, which scan every document, and tokens that
+ * match a large fraction of the documents (e.g. {@code prod}), which cost time in proportion to the matches.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class TrigramIndex {
+	private static final int[] NO_IDS = new int[0];
+	private static final String WILD_CARD = "%";
+	private static final int VERIFY_RATIO = 4;
+	
+	// Separates field values in a document's text, so a match can't straddle two fields.
+	private static final char FIELD_SEPARATOR = '\u0000';
+	
+	private final DocumentTable documents = new DocumentTable();
+	private Map<Long, CompressedPostingList> base = new HashMap<>();
+	private final Map<Long, PostingList> added = new HashMap<>();
+	
+	// IDs whose entries in the base segment are stale
+	private final PostingList removed = new PostingList();
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Adds or replaces a document.
+	 * 
+	 * @param id
+	 *            item ID
+	 * @param values
+	 *            field values, possibly {@code null}
+	 */
+	public void put(int id, String[] values) {
+		StringBuilder builder = new StringBuilder();
+		for (String value : values) {
+			if (value != null) {
+				builder.append(value.toLowerCase(Locale.ENGLISH));
+			}
+			builder.append(FIELD_SEPARATOR);
+		}
+		String text = builder.toString();
+		
+		lock.writeLock().lock();
+		try {
+			String previous = documents.put(id, text);
+			if (previous != null) {
+				unindex(id, previous);
+			}
+			for (long trigram : toTrigrams(text)) {
+				added.computeIfAbsent(trigram, t -> new PostingList()).add(id);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public void remove(int id) {
+		lock.writeLock().lock();
+		try {
+			String previous = documents.remove(id);
+			if (previous != null) {
+				unindex(id, previous);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Folds pending additions and removals into the compressed base segment.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			Set<Long> trigrams = new HashSet<>(base.keySet());
+			trigrams.addAll(added.keySet());
+			int[] removedIds = removed.toArray();
+			Map<Long, CompressedPostingList> newBase = new HashMap<>(trigrams.size() * 4 / 3 + 1);
+			for (Long trigram : trigrams) {
+				int[] ids = postings(trigram, removedIds);
+				if (ids.length > 0) {
+					newBase.put(trigram, CompressedPostingList.of(ids));
+				}
+			}
+			this.base = newBase;
+			added.clear();
+			for (int id : removedIds) {
+				removed.remove(id);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Finds the documents with a field value containing any of the given tokens. Leading and trailing SQL wildcards
+	 * are ignored.
+	 * 
+	 * @param tokens
+	 *            search tokens
+	 * @return sorted IDs of the matching documents
+	 */
+	public int[] search(Collection<String> tokens) {
+		lock.readLock().lock();
+		try {
+			int[] removedIds = removed.toArray();
+			int[] result = NO_IDS;
+			for (String token : tokens) {
+				String substring = normalize(token);
+				if (!substring.isEmpty()) {
+					int[] ids = (substring.length() < 3 ? scan(substring) : searchTrigrams(substring, removedIds));
+					result = PostingList.union(result, ids);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private static String normalize(String token) {
+		String substring = StringUtils.trimLeadingCharacter(token, WILD_CARD.charAt(0));
+		substring = StringUtils.trimTrailingCharacter(substring, WILD_CARD.charAt(0));
+		return substring.toLowerCase(Locale.ENGLISH);
+	}
+	
+	private int[] searchTrigrams(String substring, int[] removedIds) {
+		Long[] trigrams = toCoveringTrigrams(substring).toArray(new Long[0]);
+		Arrays.sort(trigrams, Comparator.comparingInt(this::estimateSize));
+		
+		int[] candidates = postings(trigrams[0], removedIds);
+		int i = 1;
+		for (; i < trigrams.length && candidates.length > 0; i++) {
+			
+			// Once the candidates are much rarer than the remaining trigrams, checking them against the stored values
+			// is cheaper than intersecting with long posting lists.
+			if (candidates.length * VERIFY_RATIO < estimateSize(trigrams[i])) {
+				break;
+			}
+			candidates = intersect(trigrams[i], candidates, removedIds);
+		}
+		
+		// Matching every trigram of a three-character token can't produce false positives.
+		if (substring.length() == 3) {
+			return candidates;
+		}
+		int n = 0;
+		for (int id : candidates) {
+			if (documents.get(id).contains(substring)) {
+				candidates[n++] = id;
+			}
+		}
+		return Arrays.copyOf(candidates, n);
+	}
+	
+	private int[] scan(String substring) {
+		int[] ids = new int[documents.size()];
+		int n = 0;
+		for (int slot = 0; slot < documents.capacity(); slot++) {
+			String text = documents.valueAt(slot);
+			if (text != null && text.contains(substring)) {
+				ids[n++] = documents.keyAt(slot);
+			}
+		}
+		Arrays.sort(ids, 0, n);
+		return Arrays.copyOf(ids, n);
+	}
+	
+	private int estimateSize(Long trigram) {
+		CompressedPostingList baseList = base.get(trigram);
+		PostingList addedList = added.get(trigram);
+		return (baseList == null ? 0 : baseList.size()) + (addedList == null ? 0 : addedList.size());
+	}
+	
+	private int[] postings(Long trigram, int[] removedIds) {
+		CompressedPostingList baseList = base.get(trigram);
+		PostingList addedList = added.get(trigram);
+		int[] ids = (baseList == null ? NO_IDS : PostingList.subtract(baseList.decode(), removedIds));
+		return (addedList == null ? ids : PostingList.union(ids, addedList.toArray()));
+	}
+	
+	private int[] intersect(Long trigram, int[] candidates, int[] removedIds) {
+		CompressedPostingList baseList = base.get(trigram);
+		PostingList addedList = added.get(trigram);
+		int[] ids = (baseList == null ? NO_IDS : PostingList.subtract(baseList.intersect(candidates), removedIds));
+		if (addedList == null) {
+			return ids;
+		}
+		return PostingList.union(ids, PostingList.intersect(addedList.toArray(), candidates));
+	}
+	
+	private void unindex(int id, String text) {
+		removed.add(id);
+		for (long trigram : toTrigrams(text)) {
+			PostingList list = added.get(trigram);
+			if (list != null && list.remove(id) && list.isEmpty()) {
+				added.remove(trigram);
+			}
+		}
+	}
+	
+	private static Set<Long> toTrigrams(String text) {
+		Set<Long> trigrams = new HashSet<>();
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			trigrams.add(toTrigram(text, i));
+		}
+		return trigrams;
+	}
+	
+	/**
+	 * Returns non-overlapping trigrams covering the query. Overlapping trigrams are highly correlated, so intersecting
+	 * all of them costs a lot more without pruning many more candidates, and the verification pass catches the rest.
+	 */
+	private static Set<Long> toCoveringTrigrams(String substring) {
+		Set<Long> trigrams = new HashSet<>();
+		for (int i = 0; i + 3 <= substring.length(); i += 3) {
+			trigrams.add(toTrigram(substring, i));
+		}
+		trigrams.add(toTrigram(substring, substring.length() - 3));
+		return trigrams;
+	}
+	
+	private static long toTrigram(String text, int i) {
+		return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+	}
+	
+	/**
+	 * Open-addressing map from document ID to text. IDs hash to themselves, so verifying a sorted candidate list walks
+	 * the table more or less sequentially instead of chasing boxed keys around the heap.
+	 */
+	private static final class DocumentTable {
+		private int[] keys = new int[16];
+		private String[] values = new String[16];
+		private int size;
+		
+		int size() { return size; }
+		
+		String get(int id) {
+			int mask = keys.length - 1;
+			for (int slot = id & mask; values[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot] == id) {
+					return values[slot];
+				}
+			}
+			return null;
+		}
+		
+		String put(int id, String text) {
+			if ((size + 1) * 2 > keys.length) {
+				resize(keys.length * 2);
+			}
+			int mask = keys.length - 1;
+			int slot = id & mask;
+			for (; values[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot] == id) {
+					String previous = values[slot];
+					values[slot] = text;
+					return previous;
+				}
+			}
+			keys[slot] = id;
+			values[slot] = text;
+			size++;
+			return null;
+		}
+		
+		String remove(int id) {
+			int mask = keys.length - 1;
+			int slot = id & mask;
+			for (; values[slot] != null; slot = (slot + 1) & mask) {
+				if (keys[slot] == id) {
+					String previous = values[slot];
+					
+					// Shift later entries of the probe run back so lookups don't stop at the hole.
+					int hole = slot;
+					for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+						int home = keys[next] & mask;
+						if (((next - home) & mask) >= ((next - hole) & mask)) {
+							keys[hole] = keys[next];
+							values[hole] = values[next];
+							hole = next;
+						}
+					}
+					values[hole] = null;
+					size--;
+					return previous;
+				}
+			}
+			return null;
+		}
+		
+		int capacity() { return keys.length; }
+		
+		int keyAt(int slot) { return keys[slot]; }
+		
+		String valueAt(int slot) { return values[slot]; }
+		
+		private void resize(int capacity) {
+			int[] oldKeys = keys;
+			String[] oldValues = values;
+			this.keys = new int[capacity];
+			this.values = new String[capacity];
+			this.size = 0;
+			for (int slot = 0; slot < oldKeys.length; slot++) {
+				if (oldValues[slot] != null) {
+					put(oldKeys[slot], oldValues[slot]);
+				}
+			}
+		}
+	}
+}
@@ -15,6 +15,8 @@
  */
 package com.expedia.seiso.gateway;
 
+import java.util.List;
+
 import com.expedia.seiso.domain.entity.Item;
 
 /**
@@ -26,4 +28,16 @@ public interface NotificationGateway {
 	static final String OP_DELETE = "delete";
 
 	void notify(Item item, String itemKey, String operation);
+	
+	/**
+	 * Sends one notification covering several items of the same type.
+	 * 
+	 * @param itemType
+	 *            item type
+	 * @param itemKeys
+	 *            item keys
+	 * @param operation
+	 *            operation the items underwent
+	 */
+	void notifyAll(Class<? extends Item> itemType, List<String> itemKeys, String operation);
 }
@@ -15,6 +15,8 @@
  */
 package com.expedia.seiso.gateway;
 
+import java.util.List;
+
 import lombok.NonNull;
 import lombok.val;
 
@@ -42,4 +44,19 @@ public class NotificationGatewayImpl implements NotificationGateway {
 		val routingKey = itemTypeName + "." + operation;
 		amqpTemplate.convertAndSend(exchange, routingKey, notification);
 	}
+	
+	@Override
+	public void notifyAll(
+			@NonNull Class<? extends Item> itemType,
+			@NonNull List<String> itemKeys,
+			@NonNull String operation) {
+		
+		val itemTypeName = itemType.getSimpleName();
+		val exchange = seisoProperties.getChangeNotificationExchange();
+		val notification = new ItemBatchNotification(itemTypeName, itemKeys, operation);
+		
+		// Separate routing key so that subscribers to single-item notifications don't get a payload they can't read.
+		val routingKey = itemTypeName + "." + operation + ".batch";
+		amqpTemplate.convertAndSend(exchange, routingKey, notification);
+	}
 }
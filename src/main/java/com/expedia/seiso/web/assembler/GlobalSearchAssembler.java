@@ -1,6 +1,10 @@
 package com.expedia.seiso.web.assembler;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
@@ -13,6 +17,8 @@ import com.expedia.seiso.domain.entity.Service;
 import com.expedia.seiso.domain.entity.ServiceInstance;
 import com.expedia.seiso.domain.entity.Node;
 import com.expedia.seiso.domain.service.SearchResults;
+import com.expedia.seiso.domain.service.search.ContinuationToken;
+import com.expedia.seiso.domain.service.search.SearchHit;
 
 
 import lombok.AllArgsConstructor;
@@ -22,6 +28,17 @@ import lombok.NonNull;
 @Component
 public class GlobalSearchAssembler {
 	
+	// Names of the SearchResultsDto lists, keyed by item class
+	private static final Map<Class<?>, String> LIST_NAMES = new LinkedHashMap<>();
+	static {
+		LIST_NAMES.put(Service.class, "services");
+		LIST_NAMES.put(ServiceInstance.class, "serviceInstances");
+		LIST_NAMES.put(LoadBalancer.class, "loadBalancers");
+		LIST_NAMES.put(Person.class, "people");
+		LIST_NAMES.put(Machine.class, "machines");
+		LIST_NAMES.put(Node.class, "nodes");
+	}
+	
 	@SuppressWarnings("unchecked")
 	public SearchResultsDto toGlobalSearchResource(@NonNull SearchResults searchResults) {
 		Page<Machine> machines = (Page<Machine>) searchResults.getTypedSerp(Machine.class);
@@ -33,16 +50,154 @@ public class GlobalSearchAssembler {
 		
 		// This is the DTO we're assembling.
 		SearchResultsDto resultsDto = new SearchResultsDto();
-		resultsDto.setServices(toServiceDtos(services.getContent()));
-		resultsDto.setServiceInstances(toServiceInstanceDtos(serviceInstances.getContent()));
-		resultsDto.setLoadBalancers(toLoadBalancerDtos(loadBalancers.getContent()));
-		resultsDto.setPeople(toPersonDtos(people.getContent()));
-		resultsDto.setMachines(toMachineDtos(machines.getContent()));
-		resultsDto.setNodes(toNodeDtos(nodes.getContent()));
+		resultsDto.setServices(toServiceDtos(getContent(services)));
+		resultsDto.setServiceInstances(toServiceInstanceDtos(getContent(serviceInstances)));
+		resultsDto.setLoadBalancers(toLoadBalancerDtos(getContent(loadBalancers)));
+		resultsDto.setPeople(toPersonDtos(getContent(people)));
+		resultsDto.setMachines(toMachineDtos(getContent(machines)));
+		resultsDto.setNodes(toNodeDtos(getContent(nodes)));
+		
+		resultsDto.setTotals(getTotals(searchResults));
+		resultsDto.setPartial(searchResults.isPartial());
+		resultsDto.setTimedOut(getTimedOutListNames(searchResults));
+		resultsDto.setContinuation(getEncodedContinuation(searchResults));
 		
 		return resultsDto;
 	}
 	
+	/**
+	 * Like {@link #toGlobalSearchResource(SearchResults)}, but also merges the best hits across types into a single
+	 * list, for relevance-ranked results.
+	 * 
+	 * @param searchResults
+	 *            results of a ranked search
+	 * @param k
+	 *            maximum number of merged hits
+	 * @return DTO with the per-type lists and the merged top hits
+	 */
+	public SearchResultsDto toRankedSearchResource(@NonNull SearchResults searchResults, int k) {
+		SearchResultsDto resultsDto = toGlobalSearchResource(searchResults);
+		resultsDto.setTop(searchResults.getTopHits(k).stream()
+				.filter(hit -> LIST_NAMES.containsKey(hit.getItemClass()))
+				.map(hit -> toTopHitDto(hit))
+				.collect(Collectors.toList()));
+		return resultsDto;
+	}
+	
+	/**
+	 * @param searchResults
+	 *            results of a count-only search
+	 * @return DTO with the total hits per type and no item lists
+	 */
+	public SearchResultsDto toFacetsResource(@NonNull SearchResults searchResults) {
+		SearchResultsDto resultsDto = new SearchResultsDto();
+		resultsDto.setTotals(getTotals(searchResults));
+		resultsDto.setPartial(searchResults.isPartial());
+		resultsDto.setTimedOut(getTimedOutListNames(searchResults));
+		return resultsDto;
+	}
+	
+	/**
+	 * @param itemClass
+	 *            item class
+	 * @param serp
+	 *            search engine results page for the item class
+	 * @return streaming chunk for the page, or {@code null} if the item class isn't part of global search results
+	 */
+	@SuppressWarnings("unchecked")
+	public SearchResultsChunkDto toResultsChunk(@NonNull Class<?> itemClass, @NonNull Page<?> serp) {
+		String listName = LIST_NAMES.get(itemClass);
+		if (listName == null) {
+			return null;
+		}
+		
+		List<?> items = serp.getContent().stream()
+				.map(item -> toItemDto(itemClass, item))
+				.collect(Collectors.toList());
+		
+		SearchResultsChunkDto chunk = new SearchResultsChunkDto();
+		chunk.setType(listName);
+		chunk.setItems(items);
+		chunk.setTotal(serp.getTotalElements());
+		return chunk;
+	}
+	
+	public SearchResultsChunkDto toCompleteChunk(@NonNull SearchResults searchResults) {
+		SearchResultsChunkDto chunk = new SearchResultsChunkDto();
+		chunk.setType(SearchResultsChunkDto.COMPLETE);
+		chunk.setPartial(searchResults.isPartial());
+		chunk.setTimedOut(getTimedOutListNames(searchResults));
+		chunk.setContinuation(getEncodedContinuation(searchResults));
+		return chunk;
+	}
+	
+	private TopHitDto toTopHitDto(SearchHit hit) {
+		return new TopHitDto(LIST_NAMES.get(hit.getItemClass()), toItemDto(hit.getItemClass(), hit.getItem()));
+	}
+	
+	private Object toItemDto(Class<?> itemClass, Object item) {
+		if (itemClass == Machine.class) {
+			return toMachineDto((Machine) item);
+		} else if (itemClass == Person.class) {
+			return toPersonDto((Person) item);
+		} else if (itemClass == Service.class) {
+			return toServiceDto((Service) item);
+		} else if (itemClass == ServiceInstance.class) {
+			return toServiceInstanceDto((ServiceInstance) item);
+		} else if (itemClass == LoadBalancer.class) {
+			return toLoadBalancerDto((LoadBalancer) item);
+		} else {
+			return toNodeDto((Node) item);
+		}
+	}
+	
+	// A page is missing when its type was exhausted on an earlier page.
+	private <T> List<T> getContent(Page<T> page) {
+		return (page == null ? Collections.<T>emptyList() : page.getContent());
+	}
+	
+	private Map<String, Long> getTotals(SearchResults searchResults) {
+		Map<String, Long> totals = new LinkedHashMap<>();
+		LIST_NAMES.forEach((itemClass, listName) -> {
+			Page<?> page = searchResults.getTypedSerp(itemClass);
+			if (page != null) {
+				totals.put(listName, page.getTotalElements());
+			}
+		});
+		return totals;
+	}
+	
+	private List<String> getTimedOutListNames(SearchResults searchResults) {
+		List<String> timedOut = new ArrayList<>();
+		LIST_NAMES.forEach((itemClass, listName) -> {
+			if (searchResults.getTimedOutItemClasses().contains(itemClass)) {
+				timedOut.add(listName);
+			}
+		});
+		return timedOut;
+	}
+	
+	private String getEncodedContinuation(SearchResults searchResults) {
+		ContinuationToken continuation = searchResults.getContinuationToken();
+		return (continuation == null ? null : continuation.encode());
+	}
+	
+	/**
+	 * @param suggestions
+	 *            type-ahead suggestions by item class
+	 * @return suggestions by list name, in the same order as the global search results
+	 */
+	public Map<String, List<String>> toSuggestionsResource(@NonNull Map<Class<?>, List<String>> suggestions) {
+		Map<String, List<String>> resource = new LinkedHashMap<>();
+		LIST_NAMES.forEach((itemClass, listName) -> {
+			List<String> typeSuggestions = suggestions.get(itemClass);
+			if (typeSuggestions != null) {
+				resource.put(listName, typeSuggestions);
+			}
+		});
+		return resource;
+	}
+	
 	// Machine
 	private List<MachineDto> toMachineDtos(List<Machine> machines) {
 		return machines.stream().map(m -> toMachineDto(m)).collect(Collectors.toList());
@@ -97,6 +252,13 @@ public class GlobalSearchAssembler {
 		return new NodeDto(node.getName());
 	}
 	
+	@Data
+	@AllArgsConstructor
+	private static class TopHitDto {
+		private String type;
+		private Object item;
+	}
+	
 	@Data
 	@AllArgsConstructor
 	private static class MachineDto {
@@ -0,0 +1,47 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.assembler;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import lombok.Data;
+
+/**
+ * One message of a streamed global search. There's one "results" chunk per item type, named by the type's list name
+ * in {@link SearchResultsDto}, followed by a final "complete" chunk.
+ * 
+ * @author Willie Wheeler
+ */
+@Data
+@JsonInclude(Include.NON_NULL)
+public class SearchResultsChunkDto {
+	public static final String COMPLETE = "complete";
+	
+	// List name (e.g. "machines"), or "complete" for the final chunk
+	private String type;
+	
+	// Results chunks
+	private List<?> items;
+	private Long total;
+	
+	// Complete chunk
+	private Boolean partial;
+	private List<String> timedOut;
+	private String continuation;
+}
@@ -1,6 +1,7 @@
 package com.expedia.seiso.web.assembler;
 
 import java.util.List;
+import java.util.Map;
 
 import lombok.Data;
 
@@ -14,4 +15,18 @@ public class SearchResultsDto {
 	private List<?> loadBalancers;
 	private List<?> nodes;
 	
+	// Best hits across types, best first, for relevance-ranked searches. Each has the list name and the item.
+	private List<?> top;
+	
+	// Total hits per type, keyed by the list names above
+	private Map<String, Long> totals;
+	
+	// True if some types are missing because their searches ran past the deadline
+	private boolean partial;
+	
+	// Names of the lists above whose searches timed out
+	private List<String> timedOut;
+	
+	// Pass back as the continuation parameter to get the next page, or null if there are no more hits
+	private String continuation;
 }
@@ -15,8 +15,15 @@
  */
 package com.expedia.seiso.web.assembler;
 
+import java.util.List;
+
 import org.springframework.hateoas.Resources;
 
+import com.expedia.seiso.domain.service.NodeRegistration;
+import com.expedia.seiso.domain.service.NodeRegistrationResult;
+import com.expedia.seiso.domain.service.NodeUpsertResult;
+import com.expedia.seiso.domain.service.RotationUpdate;
+import com.expedia.seiso.domain.service.RotationUpdateResult;
 import com.expedia.seiso.web.resource.BreakdownItem;
 import com.expedia.seiso.web.resource.NodeSummary;
 
@@ -32,4 +39,37 @@ public interface ServiceInstanceService {
 	Resources<BreakdownItem> getHealthBreakdown(Long id);
 	
 	Resources<BreakdownItem> getRotationBreakdown(Long id);
+	
+	/**
+	 * Applies a bulk rotation status change to the given service instance.
+	 * 
+	 * @param key
+	 *            service instance key
+	 * @param update
+	 *            target status and filters
+	 * @return row counts, or {@code null} if there's no such service instance
+	 */
+	RotationUpdateResult updateRotationStatus(String key, RotationUpdate update);
+	
+	/**
+	 * Registers nodes in bulk in the given service instance.
+	 * 
+	 * @param key
+	 *            service instance key
+	 * @param registrations
+	 *            nodes to create
+	 * @return row counts, or {@code null} if there's no such service instance
+	 */
+	NodeRegistrationResult registerNodes(String key, List<NodeRegistration> registrations);
+	
+	/**
+	 * Creates or updates a node in the given service instance, skipping the write if nothing changed.
+	 * 
+	 * @param key
+	 *            service instance key
+	 * @param registration
+	 *            desired node state
+	 * @return what happened, or {@code null} if there's no such service instance
+	 */
+	NodeUpsertResult upsertNode(String key, NodeRegistration registration);
 }
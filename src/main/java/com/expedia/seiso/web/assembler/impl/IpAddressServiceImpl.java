@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.assembler.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import lombok.NonNull;
+import lombok.val;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.expedia.seiso.domain.service.IpAddressIndex;
+import com.expedia.seiso.domain.service.search.Cidr;
+import com.expedia.seiso.web.assembler.IpAddressService;
+import com.expedia.seiso.web.resource.IpAddressSearchResource;
+import com.expedia.seiso.web.resource.IpAddressSearchResource.EndpointAddress;
+import com.expedia.seiso.web.resource.IpAddressSearchResource.MachineAddress;
+import com.expedia.seiso.web.resource.IpAddressSearchResource.NodeAddress;
+
+/**
+ * Answers CIDR searches by looking up the matching IDs in the {@link IpAddressIndex} and then fetching just the
+ * columns the response needs, by primary key.
+ * 
+ * @author Willie Wheeler
+ */
+@Service
+@Transactional(readOnly = true)
+public class IpAddressServiceImpl implements IpAddressService {
+	
+	// Keeps the IN lists to a size every database handles well.
+	private static final int ID_BATCH_SIZE = 1000;
+	
+	private static final String MACHINES_JPQL =
+			"select m.name, m.ipAddress, m.ip6Address from Machine m where m.id in (:ids) order by m.id";
+	
+	private static final String NODES_JPQL =
+			"select n.name, si.key, r.name, nip.ipAddress " +
+			"from NodeIpAddress nip join nip.node n left join n.serviceInstance si join nip.ipAddressRole r " +
+			"where nip.id in (:ids) order by nip.id";
+	
+	private static final String ENDPOINTS_JPQL =
+			"select n.name, nip.ipAddress, p.number, p.protocol " +
+			"from Endpoint e join e.ipAddress nip join nip.node n join e.port p " +
+			"where nip.id in (:ids) order by e.id";
+	
+	@Autowired private IpAddressIndex ipAddressIndex;
+	@PersistenceContext private EntityManager entityManager;
+	
+	@Override
+	public boolean isSearchAvailable() {
+		return ipAddressIndex.isLoaded();
+	}
+	
+	@Override
+	public IpAddressSearchResource search(@NonNull Cidr cidr, int limit) {
+		val machineIds = ipAddressIndex.findMachineIds(cidr);
+		val nipIds = ipAddressIndex.findNodeIpAddressIds(cidr);
+		
+		val resource = new IpAddressSearchResource();
+		resource.setCidr(cidr.toString());
+		resource.setNumMachines(machineIds.length);
+		resource.setNumNodeIpAddresses(nipIds.length);
+		
+		// Machines and nodes map one-to-one onto the IDs, so the first batches are enough.
+		fetch(MACHINES_JPQL, head(machineIds, limit), limit, resource.getMachines(),
+				row -> new MachineAddress((String) row[0], (String) row[1], (String) row[2]));
+		fetch(NODES_JPQL, head(nipIds, limit), limit, resource.getNodes(),
+				row -> new NodeAddress((String) row[0], (String) row[1], (String) row[2], (String) row[3]));
+		
+		// An address can have any number of endpoints, so keep going until we have enough.
+		fetch(ENDPOINTS_JPQL, nipIds, limit, resource.getEndpoints(),
+				row -> new EndpointAddress((String) row[0], (String) row[1], (Integer) row[2], (String) row[3]));
+		
+		return resource;
+	}
+	
+	private <T> void fetch(String jpql, long[] ids, int limit, List<T> results, Function<Object[], T> mapper) {
+		for (int from = 0; from < ids.length && results.size() < limit; from += ID_BATCH_SIZE) {
+			val batch = Arrays.stream(ids, from, Math.min(from + ID_BATCH_SIZE, ids.length)).boxed().toArray();
+			val rows = entityManager.createQuery(jpql, Object[].class)
+					.setParameter("ids", Arrays.asList(batch))
+					.setMaxResults(limit - results.size())
+					.getResultList();
+			for (val row : rows) {
+				results.add(mapper.apply(row));
+			}
+		}
+	}
+	
+	private static long[] head(long[] ids, int limit) {
+		return (ids.length <= limit ? ids : Arrays.copyOf(ids, limit));
+	}
+}
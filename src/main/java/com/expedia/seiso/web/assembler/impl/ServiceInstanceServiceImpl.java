@@ -15,6 +15,8 @@
  */
 package com.expedia.seiso.web.assembler.impl;
 
+import java.util.List;
+
 import lombok.NonNull;
 import lombok.val;
 
@@ -24,6 +26,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.expedia.seiso.domain.repo.ServiceInstanceRepo;
+import com.expedia.seiso.domain.service.NodeRegistration;
+import com.expedia.seiso.domain.service.NodeRegistrationResult;
+import com.expedia.seiso.domain.service.NodeService;
+import com.expedia.seiso.domain.service.NodeUpsertResult;
+import com.expedia.seiso.domain.service.RotationService;
+import com.expedia.seiso.domain.service.RotationUpdate;
+import com.expedia.seiso.domain.service.RotationUpdateResult;
 import com.expedia.seiso.web.assembler.ServiceInstanceService;
 import com.expedia.seiso.web.resource.BreakdownItem;
 import com.expedia.seiso.web.resource.NodeSummary;
@@ -35,6 +44,8 @@ import com.expedia.seiso.web.resource.NodeSummary;
 @Transactional
 public class ServiceInstanceServiceImpl implements ServiceInstanceService {
 	@Autowired private ServiceInstanceRepo serviceInstanceRepo;
+	@Autowired private RotationService rotationService;
+	@Autowired private NodeService nodeService;
 
 	@Override
 	public NodeSummary getNodeSummary(@NonNull Long id) {
@@ -52,4 +63,22 @@ public class ServiceInstanceServiceImpl implements ServiceInstanceService {
 		val items = serviceInstanceRepo.getServiceInstanceRotationBreakdown(id);
 		return new Resources<>(items);
 	}
+
+	@Override
+	public RotationUpdateResult updateRotationStatus(@NonNull String key, @NonNull RotationUpdate update) {
+		val serviceInstance = serviceInstanceRepo.findByKey(key);
+		return serviceInstance == null ? null : rotationService.updateRotationStatus(serviceInstance, update);
+	}
+	
+	@Override
+	public NodeRegistrationResult registerNodes(@NonNull String key, @NonNull List<NodeRegistration> registrations) {
+		val serviceInstance = serviceInstanceRepo.findByKey(key);
+		return serviceInstance == null ? null : nodeService.registerNodes(serviceInstance, registrations);
+	}
+	
+	@Override
+	public NodeUpsertResult upsertNode(@NonNull String key, @NonNull NodeRegistration registration) {
+		val serviceInstance = serviceInstanceRepo.findByKey(key);
+		return serviceInstance == null ? null : nodeService.upsertNode(serviceInstance, registration);
+	}
 }
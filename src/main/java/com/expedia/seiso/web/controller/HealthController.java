@@ -0,0 +1,69 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.controller;
+
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.service.HealthIngestionQueue;
+import com.expedia.seiso.domain.service.HealthUpdate;
+
+/**
+ * Accepts batches of node health updates from monitoring agents, e.g. {@code POST /api/health/updates} with
+ * <code>[{"nodeName": "web01", "healthKey": "unhealthy", "reason": "Disk full", "link": "http://..."}]</code>. The
+ * updates are written in the background every {@code seiso.health-flush-interval} milliseconds, so a 202 means
+ * accepted, not yet visible. When the buffer is full the whole batch is refused with a 429 and the agent should retry
+ * after the Retry-After delay.
+ * 
+ * @author Willie Wheeler
+ */
+@RestController
+@RequestMapping(value = "/api/health")
+@Slf4j
+public class HealthController {
+	@Autowired private HealthIngestionQueue healthIngestionQueue;
+	@Autowired private SeisoProperties seisoProperties;
+	
+	@RequestMapping(value = "/updates", method = RequestMethod.POST)
+	public ResponseEntity<Void> postUpdates(@RequestBody List<HealthUpdate> updates) {
+		boolean accepted;
+		try {
+			accepted = healthIngestionQueue.offer(updates);
+		} catch (IllegalArgumentException e) {
+			log.debug("Bad health update: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (!accepted) {
+			// The buffer drains once per flush interval, so that's when to come back.
+			long retryAfterSecs = Math.max(1L, (seisoProperties.getHealthFlushInterval() + 999L) / 1000L);
+			HttpHeaders headers = new HttpHeaders();
+			headers.set("Retry-After", String.valueOf(retryAfterSecs));
+			return new ResponseEntity<>(headers, HttpStatus.TOO_MANY_REQUESTS);
+		}
+		return new ResponseEntity<>(HttpStatus.ACCEPTED);
+	}
+}
@@ -0,0 +1,74 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.controller;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.expedia.seiso.domain.service.search.Cidr;
+import com.expedia.seiso.web.assembler.IpAddressService;
+import com.expedia.seiso.web.resource.IpAddressSearchResource;
+
+import lombok.val;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Looks up machines, nodes and endpoints by IP address range, e.g. {@code /api/ipAddresses/search?cidr=10.23.0.0/16}.
+ * Both IPv4 and IPv6 blocks work. Answers from an in-memory index, so it's unavailable until the index has finished
+ * its initial load.
+ * 
+ * @author Willie Wheeler
+ */
+@RestController
+@RequestMapping(value = "/api/ipAddresses")
+@Slf4j
+public class IpAddressController {
+	private static final int MAX_LIMIT = 10000;
+	
+	@Autowired private IpAddressService ipAddressService;
+	
+	@RequestMapping(value = "/search", method = RequestMethod.GET)
+	public ResponseEntity<IpAddressSearchResource> search(
+			@RequestParam("cidr") String cidr,
+			@RequestParam(value = "limit", defaultValue = "1000") int limit) {
+		
+		log.trace("Searching IP addresses: cidr={}, limit={}", cidr, limit);
+		Cidr block;
+		try {
+			block = Cidr.parse(cidr);
+		} catch (IllegalArgumentException e) {
+			log.debug("Bad CIDR block: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (limit < 0 || limit > MAX_LIMIT) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (!ipAddressService.isSearchAvailable()) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		
+		val resource = ipAddressService.search(block, limit);
+		resource.add(linkTo(IpAddressController.class).slash("search?cidr=" + block).withSelfRel());
+		return ResponseEntity.ok(resource);
+	}
+}
@@ -0,0 +1,58 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.expedia.seiso.domain.service.RotationReconcileResult;
+import com.expedia.seiso.domain.service.RotationReconciler;
+
+/**
+ * Repairs drifted aggregate rotation statuses on demand, e.g.
+ * {@code POST /api/rotation/reconcile?dataCenter=us-west-1}. With neither parameter it reconciles the whole fleet. The
+ * same job runs in the background every {@code seiso.rotation-reconcile-interval} milliseconds.
+ * 
+ * @author Willie Wheeler
+ */
+@RestController
+@RequestMapping(value = "/api/rotation")
+public class RotationController {
+	@Autowired private RotationReconciler rotationReconciler;
+	
+	@RequestMapping(value = "/reconcile", method = RequestMethod.POST)
+	public ResponseEntity<RotationReconcileResult> reconcile(
+			@RequestParam(value = "serviceInstance", required = false) String serviceInstance,
+			@RequestParam(value = "dataCenter", required = false) String dataCenter) {
+		
+		RotationReconcileResult result;
+		if (serviceInstance != null && dataCenter != null) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		} else if (serviceInstance != null) {
+			result = rotationReconciler.reconcileServiceInstance(serviceInstance);
+		} else if (dataCenter != null) {
+			result = rotationReconciler.reconcileDataCenter(dataCenter);
+		} else {
+			result = rotationReconciler.reconcileAll();
+		}
+		return new ResponseEntity<>(result, HttpStatus.OK);
+	}
+}
@@ -18,23 +18,34 @@ package com.expedia.seiso.web.controller;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 
 import java.text.NumberFormat;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.hateoas.Resources;
 import org.springframework.hateoas.mvc.ControllerLinkBuilder;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.expedia.seiso.domain.service.NodeRegistration;
+import com.expedia.seiso.domain.service.NodeRegistrationResult;
+import com.expedia.seiso.domain.service.NodeUpsertResult;
+import com.expedia.seiso.domain.service.RotationUpdate;
+import com.expedia.seiso.domain.service.RotationUpdateResult;
 import com.expedia.seiso.web.assembler.ServiceInstanceService;
 import com.expedia.seiso.web.link.IanaLinkRelation;
 import com.expedia.seiso.web.resource.BreakdownItem;
 import com.expedia.seiso.web.resource.NodeSummary;
 
 import lombok.val;
+import lombok.extern.slf4j.Slf4j;
 
 // Is there a way to add the links here using a ResourceProcessor? [WLW]
 
@@ -50,6 +61,7 @@ import lombok.val;
 @RestController
 //@RequestMapping(value = "/serviceInstances")
 @RequestMapping(value = "/api/serviceInstances")
+@Slf4j
 public class ServiceInstanceController {
 	@Autowired private ServiceInstanceService serviceInstanceService;
 	
@@ -86,6 +98,103 @@ public class ServiceInstanceController {
 		return resources;
 	}
 	
+	/**
+	 * Sets the rotation status of every matching endpoint in the service instance in one round trip, e.g.
+	 * <code>{"status": "disabled", "nodes": ["web01"], "ports": [8080]}</code>. Aggregate rotation statuses are up to
+	 * date when this returns.
+	 * 
+	 * @param key
+	 *            service instance key
+	 * @param update
+	 *            target status plus optional node, IP address role and port filters
+	 * @return row counts
+	 */
+	@RequestMapping(value = "/{key}/rotation", method = RequestMethod.POST)
+	public ResponseEntity<RotationUpdateResult> updateRotation(
+			@PathVariable("key") String key,
+			@RequestBody RotationUpdate update) {
+		
+		RotationUpdateResult result;
+		try {
+			result = serviceInstanceService.updateRotationStatus(key, update);
+		} catch (IllegalArgumentException e) {
+			log.debug("Bad rotation update: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (result == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(result, HttpStatus.OK);
+	}
+	
+	/**
+	 * Registers nodes and their IP addresses in the service instance in one transaction, e.g.
+	 * <code>[{"name": "web01", "machine": "web01.example.com", "ipAddresses": [{"ipAddressRole": "default",
+	 * "ipAddress": "10.0.0.1"}]}]</code>. Endpoints and aggregate rotation statuses are in place when this returns.
+	 * 
+	 * @param key
+	 *            service instance key
+	 * @param registrations
+	 *            nodes to create
+	 * @return row counts
+	 */
+	@RequestMapping(value = "/{key}/nodes:bulk", method = RequestMethod.POST)
+	public ResponseEntity<NodeRegistrationResult> registerNodes(
+			@PathVariable("key") String key,
+			@RequestBody List<NodeRegistration> registrations) {
+		
+		NodeRegistrationResult result;
+		try {
+			result = serviceInstanceService.registerNodes(key, registrations);
+		} catch (IllegalArgumentException e) {
+			log.debug("Bad node registration: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		} catch (DataIntegrityViolationException e) {
+			// Somebody else registered one of the nodes after we checked.
+			log.debug("Conflicting node registration: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		}
+		if (result == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(result, HttpStatus.CREATED);
+	}
+	
+	/**
+	 * Creates or updates the node named in the body so that it matches the body, e.g. <code>{"name": "web01",
+	 * "buildVersion": "1.4.2", "ipAddresses": [{"ipAddressRole": "default", "ipAddress": "10.0.0.1"}]}</code>. Agents
+	 * can repeat this as often as they like: when nothing has changed, nothing is written and no notification goes
+	 * out.
+	 * 
+	 * @param key
+	 *            service instance key
+	 * @param registration
+	 *            desired node state
+	 * @return {@code CREATED} with 201, or {@code UPDATED} or {@code UNCHANGED} with 200
+	 */
+	@RequestMapping(value = "/{key}/nodes:upsert", method = RequestMethod.PUT)
+	public ResponseEntity<NodeUpsertResult> upsertNode(
+			@PathVariable("key") String key,
+			@RequestBody NodeRegistration registration) {
+		
+		NodeUpsertResult result;
+		try {
+			result = serviceInstanceService.upsertNode(key, registration);
+		} catch (IllegalArgumentException e) {
+			log.debug("Bad node upsert: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		} catch (DataIntegrityViolationException e) {
+			// Somebody else created the node after we checked.
+			log.debug("Conflicting node upsert: {}", e.getMessage());
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		}
+		if (result == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		val status = result == NodeUpsertResult.CREATED ? HttpStatus.CREATED : HttpStatus.OK;
+		return new ResponseEntity<>(result, status);
+	}
+	
 	private ControllerLinkBuilder baseLink(Long id) {
 		return linkTo(ServiceInstanceController.class).slash(id);
 	}
@@ -15,7 +15,9 @@
  */
 package com.expedia.seiso.web.controller.internal;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,21 +25,47 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.expedia.seiso.domain.service.SearchEngine;
+import com.expedia.seiso.domain.service.SearchResults;
+import com.expedia.seiso.domain.service.search.ContinuationPageRequest;
+import com.expedia.seiso.domain.service.search.ContinuationToken;
+import com.expedia.seiso.domain.service.search.ContinuationToken.InvalidContinuationTokenException;
 import com.expedia.seiso.domain.service.search.SearchQuery;
+import com.expedia.seiso.domain.service.search.SearchQueryParser;
+import com.expedia.seiso.domain.service.search.SearchQueryParser.InvalidSearchQueryException;
 import com.expedia.seiso.web.assembler.GlobalSearchAssembler;
+import com.expedia.seiso.web.assembler.SearchResultsChunkDto;
 import com.expedia.seiso.web.assembler.SearchResultsDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import lombok.SneakyThrows;
 import lombok.val;
 import lombok.extern.slf4j.XSlf4j;
 
 /**
- * Controller to perform global searches. This primarily supports the search box in the UI.
+ * Controller to perform global searches. This primarily supports the search box in the UI. Clients can restrict a
+ * search to some item types with {@code types}, e.g. {@code types=Node,Machine}, and ask for just the hit counts per
+ * type with {@code facets=true}. With {@code rank=true}, each type's hits come back best first instead of by ID. With
+ * {@code fuzzy=true}, names that are within a small edit distance of the keywords match too, closest first, so typos
+ * like {@code chkout-prd} still find {@code checkout-prod}.
+ * <p>
+ * The query itself can qualify fields, as in {@code type:node env:prod dc:phx health:danger web}. See
+ * {@link SearchQueryParser} for the syntax. Everything that isn't a qualified field is free text matched against
+ * names. Fuzzy search only supports the {@code type:} qualifier.
+ * </p>
  * 
  * @author Ken Van Eyk
  * @author Willie Wheeler
@@ -46,8 +74,14 @@ import lombok.extern.slf4j.XSlf4j;
 @RequestMapping("/internal/search")
 @XSlf4j
 public class GlobalSearchController {
+	private static final String TEXT_EVENT_STREAM_VALUE = "text/event-stream";
+	private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+	
 	@Autowired private SearchEngine searchEngine;
 	@Autowired private GlobalSearchAssembler resourceAssembler;
+	@Autowired private ObjectMapper objectMapper;
+	
+	private final SearchQueryParser queryParser = new SearchQueryParser();
 	
 	@RequestMapping(
 			value = "",
@@ -55,25 +89,118 @@ public class GlobalSearchController {
 			produces = "application/json")
 	public SearchResultsDto globalSearch(
 			@RequestParam("q") String keywords,
+			@RequestParam(value = "types", required = false) Set<String> types,
+			@RequestParam(value = "facets", defaultValue = "false") boolean facets,
+			@RequestParam(value = "rank", defaultValue = "false") boolean rank,
+			@RequestParam(value = "fuzzy", defaultValue = "false") boolean fuzzy,
+			@RequestParam(value = "continuation", required = false) String continuation,
 			@PageableDefault(
 					page = 0,
 					size = 100,
 					direction = Direction.ASC)
 			Pageable pageable) {
 		
-		log.trace("Doing global search: keywords={}", keywords);
+		log.trace("Doing global search: keywords={}, types={}, facets={}, rank={}, fuzzy={}",
+				keywords, types, facets, rank, fuzzy);
 		
 		// TODO Use a handler method arg resolver instead. [WLW]
-		SearchQuery query = new SearchQuery(keywords, toKeywordSet(keywords));
+		SearchQuery query = toSearchQuery(keywords, fuzzy);
+		query.setTypeNames(types);
+		query.setCountOnly(facets);
+		query.setRanked(rank);
+		query.setFuzzy(fuzzy);
 		
-		val results = searchEngine.search(query, pageable);
-		return resourceAssembler.toGlobalSearchResource(results);
+		// Ranked and fuzzy results are a single page of the best hits, so there's nothing to continue.
+		boolean ranked = (rank || fuzzy);
+		val results = searchEngine.search(query, (ranked ? pageable : toPageable(pageable, continuation)));
+		if (facets) {
+			return resourceAssembler.toFacetsResource(results);
+		} else if (ranked) {
+			return resourceAssembler.toRankedSearchResource(results, pageable.getPageSize());
+		} else {
+			return resourceAssembler.toGlobalSearchResource(results);
+		}
+	}
+	
+	/**
+	 * Streams the results of a global search, one message per item type as soon as that type's search completes, so
+	 * clients can render fast types while slow ones are still loading. A final "complete" message carries the
+	 * continuation token and any timed-out types. Clients choose Server-Sent Events or newline-delimited JSON with the
+	 * Accept header.
+	 */
+	@RequestMapping(
+			value = "",
+			method = RequestMethod.GET,
+			produces = { TEXT_EVENT_STREAM_VALUE, APPLICATION_NDJSON_VALUE })
+	public ResponseEntity<StreamingResponseBody> streamGlobalSearch(
+			@RequestHeader(HttpHeaders.ACCEPT) String accept,
+			@RequestParam("q") String keywords,
+			@RequestParam(value = "types", required = false) Set<String> types,
+			@RequestParam(value = "rank", defaultValue = "false") boolean rank,
+			@RequestParam(value = "fuzzy", defaultValue = "false") boolean fuzzy,
+			@RequestParam(value = "continuation", required = false) String continuation,
+			@PageableDefault(
+					page = 0,
+					size = 100,
+					direction = Direction.ASC)
+			Pageable pageable) {
+		
+		log.trace("Streaming global search: keywords={}", keywords);
+		
+		SearchQuery query = toSearchQuery(keywords, fuzzy);
+		query.setTypeNames(types);
+		query.setRanked(rank);
+		query.setFuzzy(fuzzy);
+		Pageable typePageable = (rank || fuzzy ? pageable : toPageable(pageable, continuation));
+		boolean eventStream = accept.contains(TEXT_EVENT_STREAM_VALUE);
+		
+		StreamingResponseBody body = out -> {
+			SearchResults results = searchEngine.search(query, typePageable, (itemClass, serp) -> {
+				SearchResultsChunkDto chunk = resourceAssembler.toResultsChunk(itemClass, serp);
+				if (chunk != null) {
+					writeChunk(out, chunk, eventStream);
+				}
+			});
+			writeChunk(out, resourceAssembler.toCompleteChunk(results), eventStream);
+		};
+		
+		val contentType = MediaType.parseMediaType(eventStream ? TEXT_EVENT_STREAM_VALUE : APPLICATION_NDJSON_VALUE);
+		return ResponseEntity.ok().contentType(contentType).body(body);
+	}
+	
+	@ExceptionHandler(InvalidContinuationTokenException.class)
+	@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid continuation token")
+	public void handleInvalidContinuationToken() {
+	}
+	
+	@ExceptionHandler(InvalidSearchQueryException.class)
+	@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid search query")
+	public void handleInvalidSearchQuery() {
+	}
+	
+	// The query is parsed once here, and the engines only ever see the parsed form.
+	private SearchQuery toSearchQuery(String keywords, boolean fuzzy) {
+		val query = new SearchQuery(keywords);
+		query.setExpression(queryParser.parse(keywords));
+		if (fuzzy && query.hasFilters()) {
+			throw new InvalidSearchQueryException("Fuzzy search only supports the type qualifier: " + keywords);
+		}
+		return query;
+	}
+	
+	// The continuation token carries the per-type position, so the page number no longer applies.
+	private Pageable toPageable(Pageable pageable, String continuation) {
+		if (continuation == null) {
+			return pageable;
+		}
+		return new ContinuationPageRequest(pageable.getPageSize(), ContinuationToken.decode(continuation));
 	}
 	
-	private Set<String> toKeywordSet(String keywords) {
-		Set<String> keywordSet = new HashSet<>();
-		String[] keywordArr = keywords.split(" ");
-		for (String keyword : keywordArr) { keywordSet.add("%" + keyword + "%"); }
-		return keywordSet;
+	@SneakyThrows(IOException.class)
+	private void writeChunk(OutputStream out, SearchResultsChunkDto chunk, boolean eventStream) {
+		val json = objectMapper.writeValueAsString(chunk);
+		val message = (eventStream ? "event: " + chunk.getType() + "\ndata: " + json + "\n\n" : json + "\n");
+		out.write(message.getBytes(StandardCharsets.UTF_8));
+		out.flush();
 	}
 }
@@ -0,0 +1,73 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.controller.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.service.SearchIndex;
+import com.expedia.seiso.web.assembler.GlobalSearchAssembler;
+
+import lombok.extern.slf4j.XSlf4j;
+
+/**
+ * Controller for type-ahead suggestions in the UI search box. Unlike a global search, this answers from the in-memory
+ * search index alone, so it's cheap enough to call on every keystroke. There are no suggestions until the index has
+ * loaded.
+ * 
+ * @author Willie Wheeler
+ */
+@RestController
+@RequestMapping("/internal/suggest")
+@XSlf4j
+public class SuggestController {
+	@Autowired private SearchIndex searchIndex;
+	@Autowired private GlobalSearchAssembler resourceAssembler;
+	@Autowired private SeisoProperties seisoProperties;
+	
+	@RequestMapping(
+			value = "",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	@SuppressWarnings("rawtypes")
+	public Map<String, List<String>> suggest(
+			@RequestParam("prefix") String prefix,
+			@RequestParam(value = "limit", required = false) Integer limit) {
+		
+		log.trace("Suggesting completions: prefix={}", prefix);
+		
+		int maxResults = seisoProperties.getSuggestMaxResults();
+		String[] buffer = new String[limit == null ? maxResults : Math.max(0, Math.min(limit, maxResults))];
+		Map<Class<?>, List<String>> suggestions = new LinkedHashMap<>();
+		for (Class itemClass : searchIndex.getItemClasses()) {
+			if (searchIndex.isSuggestIndexed(itemClass)) {
+				int n = searchIndex.suggest(itemClass, prefix, buffer);
+				suggestions.put(itemClass, new ArrayList<>(Arrays.asList(buffer).subList(0, n)));
+			}
+		}
+		return resourceAssembler.toSuggestionsResource(suggestions);
+	}
+}
@@ -18,14 +18,16 @@ package com.expedia.seiso.web.eventhandler;
 import lombok.val;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
 import org.springframework.data.rest.core.annotation.HandleAfterSave;
 import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
 import org.springframework.stereotype.Component;
 
 import com.expedia.seiso.domain.entity.Endpoint;
-import com.expedia.seiso.domain.repo.NodeIpAddressRepo;
-import com.expedia.seiso.domain.repo.NodeRepo;
-import com.expedia.seiso.domain.service.RotationService;
+import com.expedia.seiso.domain.entity.NodeIpAddress;
+import com.expedia.seiso.domain.service.RotationCounters;
+import com.expedia.seiso.domain.service.RotationRecalculationQueue;
 
 /**
  * @author Willie Wheeler
@@ -33,17 +35,46 @@ import com.expedia.seiso.domain.service.RotationService;
 @RepositoryEventHandler(Endpoint.class)
 @Component
 public class EndpointEventHandler {
-	@Autowired private NodeRepo nodeRepo;
-	@Autowired private NodeIpAddressRepo nodeIpAddressRepo;
-	@Autowired private RotationService rotationService;
+	@Autowired private RotationCounters rotationCounters;
+	@Autowired private RotationRecalculationQueue rotationRecalcQueue;
 	
+	@HandleAfterCreate
+	public void handleAfterCreate(Endpoint endpoint) {
+		val nip = endpoint.getIpAddress();
+		rotationCounters.endpointAdded(nip.getId(), endpoint.getRotationStatus());
+		recalculateAggregateRotationStatuses(nip);
+	}
+	
+	/**
+	 * Recounts the node IP address's endpoints, and queues the node IP address and node for aggregate rotation status
+	 * recalculation. We recount rather than apply a delta because the status the entity was loaded with may already
+	 * be stale: a concurrent save of the same endpoint can commit between our load and our save.
+	 * 
+	 * @param endpoint
+	 *            saved endpoint
+	 */
 	@HandleAfterSave
 	public void handleAfterSave(Endpoint endpoint) {
 		val nip = endpoint.getIpAddress();
-		val node = nip.getNode();
-		rotationService.recalculateAggregateRotationStatus(nip);
-		nodeIpAddressRepo.save(nip);
-		rotationService.recalculateAggregateRotationStatus(node);
-		nodeRepo.save(node);
+		rotationCounters.recountEndpoints(nip.getNode().getId(), nip.getId());
+		recalculateAggregateRotationStatuses(nip);
+	}
+	
+	@HandleAfterDelete
+	public void handleAfterDelete(Endpoint endpoint) {
+		val nip = endpoint.getIpAddress();
+		rotationCounters.endpointRemoved(nip.getId(), endpoint.getRotationStatus());
+		recalculateAggregateRotationStatuses(nip);
+	}
+	
+	/**
+	 * Queues the node IP address and node for aggregate rotation status recalculation. Recalculates them before
+	 * returning if the request asks for it.
+	 */
+	private void recalculateAggregateRotationStatuses(NodeIpAddress nip) {
+		rotationRecalcQueue.markDirty(nip);
+		if (RotationRecalcRequests.isSyncRequested()) {
+			rotationRecalcQueue.flush(nip.getNode().getId());
+		}
 	}
 }
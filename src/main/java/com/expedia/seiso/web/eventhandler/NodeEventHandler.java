@@ -101,6 +101,9 @@ public class NodeEventHandler {
 	@HandleBeforeSave
 	public void handleBeforeSave(Node node) {
 		replaceNullStatusesWithUnknown(node);
+		
+		// The node no longer necessarily matches the last upsert.
+		node.setContentHash(null);
 	}
 	
 	@HandleAfterSave
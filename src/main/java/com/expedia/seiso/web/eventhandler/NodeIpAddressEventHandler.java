@@ -22,6 +22,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
 import org.springframework.data.rest.core.annotation.HandleAfterSave;
 import org.springframework.data.rest.core.annotation.HandleBeforeCreate;
 import org.springframework.data.rest.core.annotation.HandleBeforeSave;
@@ -29,14 +30,13 @@ import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
 import org.springframework.stereotype.Component;
 
 import com.expedia.seiso.domain.Domain;
-import com.expedia.seiso.domain.entity.Endpoint;
 import com.expedia.seiso.domain.entity.NodeIpAddress;
 import com.expedia.seiso.domain.entity.RotationStatus;
-import com.expedia.seiso.domain.repo.EndpointRepo;
-import com.expedia.seiso.domain.repo.NodeIpAddressRepo;
 import com.expedia.seiso.domain.repo.NodeRepo;
 import com.expedia.seiso.domain.repo.RotationStatusRepo;
-import com.expedia.seiso.domain.service.RotationService;
+import com.expedia.seiso.domain.service.EndpointService;
+import com.expedia.seiso.domain.service.RotationCounters;
+import com.expedia.seiso.domain.service.RotationRecalculationQueue;
 
 /**
  * @author Willie Wheeler
@@ -45,11 +45,11 @@ import com.expedia.seiso.domain.service.RotationService;
 @Component
 @Slf4j
 public class NodeIpAddressEventHandler {
+	@Autowired private EndpointService endpointService;
 	@Autowired private NodeRepo nodeRepo;
-	@Autowired private NodeIpAddressRepo nodeIpAddressRepo;
-	@Autowired private EndpointRepo endpointRepo;
 	@Autowired private RotationStatusRepo rotationStatusRepo;
-	@Autowired private RotationService rotationService;
+	@Autowired private RotationCounters rotationCounters;
+	@Autowired private RotationRecalculationQueue rotationRecalcQueue;
 	
 	private RotationStatus unknownRotationStatus;
 	
@@ -89,6 +89,8 @@ public class NodeIpAddressEventHandler {
 	@HandleAfterCreate
 	public void handleAfterCreate(NodeIpAddress nip) {
 		log.trace("NodeIpAddressEventHandler.handleAfterCreate(): entered");
+		rotationCounters.ipAddressAdded(nip.getNode().getId(), nip.getAggregateRotationStatus());
+		nodeRepo.clearContentHash(nip.getNode().getId());
 		createEndpointsForNodeIpAddress(nip);
 		log.trace("NodeIpAddressEventHandler.handleAfterCreate(): exiting");
 	}
@@ -127,15 +129,31 @@ public class NodeIpAddressEventHandler {
 	@HandleAfterSave
 	public void handleAfterSave(NodeIpAddress nip) {
 		log.trace("NodeIpAddressEventHandler.handleAfterSave(): entered");
-		rotationService.recalculateAggregateRotationStatus(nip);
-		nodeIpAddressRepo.save(nip);
-		
-		val node = nip.getNode();
-		rotationService.recalculateAggregateRotationStatus(node);
-		nodeRepo.save(node);
+		nodeRepo.clearContentHash(nip.getNode().getId());
+		recalculateAggregateRotationStatuses(nip);
 		log.trace("NodeIpAddressEventHandler.handleAfterSave(): exiting");
 	}
 	
+	/**
+	 * <p>
+	 * Post-processes HTTP DELETE requests.
+	 * </p>
+	 * 
+	 * @param nip
+	 */
+	@HandleAfterDelete
+	public void handleAfterDelete(NodeIpAddress nip) {
+		log.trace("NodeIpAddressEventHandler.handleAfterDelete(): entered");
+		val node = nip.getNode();
+		rotationCounters.ipAddressRemoved(node.getId(), nip.getAggregateRotationStatus());
+		nodeRepo.clearContentHash(node.getId());
+		rotationRecalcQueue.markDirty(node);
+		if (RotationRecalcRequests.isSyncRequested()) {
+			rotationRecalcQueue.flush(node.getId());
+		}
+		log.trace("NodeIpAddressEventHandler.handleAfterDelete(): exiting");
+	}
+	
 	private void replaceNullStatusesWithUnknown(NodeIpAddress nip) {
 		if (nip.getRotationStatus() == null) {
 			nip.setRotationStatus(unknownRotationStatus);
@@ -145,44 +163,17 @@ public class NodeIpAddressEventHandler {
 		}
 	}
 
-	private void createEndpointsForNodeIpAddress(NodeIpAddress nip) {		
-		val ipAddress = nip.getIpAddress();
-		val node = nip.getNode();
-		val sips = node.getServiceInstance().getPorts();
-		log.info("Creating endpoints for nip={} and each of {} ports", ipAddress, sips.size());
-		
-		sips.forEach(sip -> {
-			
-			// Set the rotation status on the endpoint. Hibernate can flush the persistence context at any time (e.g.,
-			// before executing queries) and we must ensure that the endpoint is ready. I *think* the call to
-			// setIpAddress() ends up making the endpoint persistent because it adds the endpoint to the NIP's list of
-			// endpoints, but I'm not positive.
-
-			// The call to setIpAddress() in particular needs to result in updating *both* sides of the relationship.
-			// Otherwise, when ServiceInstanceServiceImpl recalculates the aggregate rotation statuses, it won't see
-			// that the NIP has endpoints, and will assign the "no-endpoints" status. [WLW]
-			
-			// For some reason, gradle assemble (and hence Travis CI) craps out when I use a val here. I assume it has
-			// something to do with the lambda. So use Endpoint. [WLW]
-			log.trace("nip={} has {} endpoints", ipAddress, nip.getEndpoints().size());
-			log.info("Creating endpoint: nip={}, port={}", ipAddress, sip.getNumber());
-			// @formatter:off
-			Endpoint endpoint = new Endpoint()
-					.setRotationStatus(unknownRotationStatus)
-					.setIpAddress(nip)
-					.setPort(sip);
-			// @formatter:on
-			
-			endpointRepo.save(endpoint);
-			
-			// Do this so the recalc below can actually see the endpoint.
-			nip.getEndpoints().add(endpoint);
-		});
+	private void createEndpointsForNodeIpAddress(NodeIpAddress nip) {
+		log.info("Creating endpoints for nip={}", nip.getIpAddress());
 		
-		rotationService.recalculateAggregateRotationStatus(nip);
-		nodeIpAddressRepo.save(nip);
-		
-		rotationService.recalculateAggregateRotationStatus(node);
-		nodeRepo.save(node);
+		// This recalculates the node IP address and node too, so there's nothing to queue.
+		endpointService.createEndpoints(nip);
+	}
+	
+	private void recalculateAggregateRotationStatuses(NodeIpAddress nip) {
+		rotationRecalcQueue.markDirty(nip);
+		if (RotationRecalcRequests.isSyncRequested()) {
+			rotationRecalcQueue.flush(nip.getNode().getId());
+		}
 	}
 }
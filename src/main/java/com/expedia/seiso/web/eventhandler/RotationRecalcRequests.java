@@ -0,0 +1,44 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.eventhandler;
+
+import lombok.val;
+
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Helper for deciding whether the current request wants aggregate rotation statuses recalculated before the response
+ * goes out, rather than by the background worker.
+ * 
+ * @author Willie Wheeler
+ */
+final class RotationRecalcRequests {
+	static final String HEADER = "X-Seiso-Rotation-Recalc";
+	static final String SYNC = "sync";
+	
+	private RotationRecalcRequests() {
+	}
+	
+	static boolean isSyncRequested() {
+		val attrs = RequestContextHolder.getRequestAttributes();
+		if (!(attrs instanceof ServletRequestAttributes)) {
+			return false;
+		}
+		val request = ((ServletRequestAttributes) attrs).getRequest();
+		return SYNC.equalsIgnoreCase(request.getHeader(HEADER));
+	}
+}
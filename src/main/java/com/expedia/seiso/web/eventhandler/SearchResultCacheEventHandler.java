@@ -0,0 +1,58 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.eventhandler;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.core.annotation.HandleAfterCreate;
+import org.springframework.data.rest.core.annotation.HandleAfterDelete;
+import org.springframework.data.rest.core.annotation.HandleAfterSave;
+import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import com.expedia.seiso.domain.entity.Item;
+import com.expedia.seiso.domain.service.SearchResultCache;
+
+/**
+ * Drops cached search results for an item's type whenever an item is created, updated or deleted. Handles events for
+ * all item types; invalidating a type that isn't cached is a no-op.
+ * 
+ * @author Willie Wheeler
+ */
+@RepositoryEventHandler
+@Component
+public class SearchResultCacheEventHandler {
+	@Autowired private SearchResultCache searchResultCache;
+	
+	@HandleAfterCreate
+	public void handleAfterCreate(Item item) {
+		invalidate(item);
+	}
+	
+	@HandleAfterSave
+	public void handleAfterSave(Item item) {
+		invalidate(item);
+	}
+	
+	@HandleAfterDelete
+	public void handleAfterDelete(Item item) {
+		invalidate(item);
+	}
+	
+	private void invalidate(Item item) {
+		searchResultCache.invalidate(ClassUtils.getUserClass(item));
+	}
+}
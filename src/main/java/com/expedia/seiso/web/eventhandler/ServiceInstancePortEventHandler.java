@@ -15,9 +15,6 @@
  */
 package com.expedia.seiso.web.eventhandler;
 
-import javax.annotation.PostConstruct;
-
-import lombok.val;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,13 +22,8 @@ import org.springframework.data.rest.core.annotation.HandleAfterCreate;
 import org.springframework.data.rest.core.annotation.RepositoryEventHandler;
 import org.springframework.stereotype.Component;
 
-import com.expedia.seiso.domain.Domain;
-import com.expedia.seiso.domain.entity.Endpoint;
-import com.expedia.seiso.domain.entity.RotationStatus;
 import com.expedia.seiso.domain.entity.ServiceInstancePort;
-import com.expedia.seiso.domain.repo.EndpointRepo;
-import com.expedia.seiso.domain.repo.RotationStatusRepo;
-import com.expedia.seiso.domain.service.RotationService;
+import com.expedia.seiso.domain.service.EndpointService;
 
 /**
  * @author Willie Wheeler
@@ -40,48 +32,18 @@ import com.expedia.seiso.domain.service.RotationService;
 @Component
 @Slf4j
 public class ServiceInstancePortEventHandler {
-	@Autowired private EndpointRepo endpointRepo;
-	@Autowired private RotationStatusRepo rotationStatusRepo;
-	@Autowired private RotationService rotationService;
-	
-	private RotationStatus unknownRotationStatus;
-	
-	@PostConstruct
-	public void postConstruct() {
-		// Assume this doesn't change over time.
-		this.unknownRotationStatus = rotationStatusRepo.findByKey(Domain.UNKNOWN_ROTATION_STATUS_KEY);
-	}
+	@Autowired private EndpointService endpointService;
 	
+	/**
+	 * Creates the port's endpoints on every node IP address in the service instance, and recalculates the nodes'
+	 * aggregate rotation statuses before returning.
+	 * 
+	 * @param sip
+	 *            newly created port
+	 */
 	@HandleAfterCreate
 	public void handleAfterCreate(ServiceInstancePort sip) {
-		createEndpointsForPort(sip);
-	}
-	
-	private void createEndpointsForPort(ServiceInstancePort sip) {
 		log.info("Post-processing port insertion: id={}", sip.getId());
-		val nodes = sip.getServiceInstance().getNodes();
-		
-		// For some reason, when we save the endpoint, it doesn't see the port IO, even though we can see it here. So
-		// use a reference instead. [WLW]
-		val sipRef = new ServiceInstancePort();
-		sipRef.setId(sip.getId());
-		
-		for (val node : nodes) {
-			val nips = node.getIpAddresses();
-			for (val nip : nips) {
-				// Set the unknown rotation status on the endpoint immediately. This is because Hibernate can decide to
-				// flush the persistence context at any time (e.g., before executing queries) and we need to ensure that
-				// we don't save the endpoint until it's ready. [WLW]
-				// @formatter:off
-				val endpoint = new Endpoint()
-						.setRotationStatus(unknownRotationStatus)
-						.setIpAddress(nip)
-						.setPort(sipRef);
-				// @formatter:on
-				log.info("Creating endpoint: {}", endpoint);
-				endpointRepo.save(endpoint);
-			}
-			rotationService.recalculateAggregateRotationStatus(node);
-		}		
+		endpointService.createEndpoints(sip);
 	}
 }
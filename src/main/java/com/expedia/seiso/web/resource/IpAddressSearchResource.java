@@ -0,0 +1,72 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.web.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import org.springframework.hateoas.ResourceSupport;
+
+/**
+ * Machines, node IP addresses and endpoints whose addresses fall in a CIDR block. The totals count every match, while
+ * the lists stop at the requested limit.
+ * 
+ * @author Willie Wheeler
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class IpAddressSearchResource extends ResourceSupport {
+	private String cidr;
+	private Integer numMachines;
+	private Integer numNodeIpAddresses;
+	private List<MachineAddress> machines = new ArrayList<>();
+	private List<NodeAddress> nodes = new ArrayList<>();
+	private List<EndpointAddress> endpoints = new ArrayList<>();
+	
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class MachineAddress {
+		private String name;
+		private String ipAddress;
+		private String ip6Address;
+	}
+	
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class NodeAddress {
+		private String name;
+		private String serviceInstance;
+		private String ipAddressRole;
+		private String ipAddress;
+	}
+	
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class EndpointAddress {
+		private String node;
+		private String ipAddress;
+		private Integer port;
+		private String protocol;
+	}
+}
@@ -330,6 +330,13 @@ CREATE TABLE `node` (
   `health_status_link` varchar(2000) DEFAULT NULL,
   `health_status_reason` varchar(250) DEFAULT NULL,
   `aggregate_rotation_status_id` tinyint(3) unsigned NOT NULL,
+  `rotation_count_total` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_enabled` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_disabled` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_excluded` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_partial` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_no_endpoints` int(10) NOT NULL DEFAULT 0,
+  `content_hash` char(64) DEFAULT NULL,
   `source_id` int(10) unsigned DEFAULT NULL,
   PRIMARY KEY (`id`),
   UNIQUE KEY `name` (`name`),
@@ -360,6 +367,12 @@ CREATE TABLE `node_ip_address` (
   `ip_address` varchar(20) NOT NULL,
   `rotation_status_id` tinyint(3) unsigned NOT NULL,
   `aggregate_rotation_status_id` tinyint(3) unsigned NOT NULL,
+  `rotation_count_total` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_enabled` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_disabled` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_excluded` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_partial` int(10) NOT NULL DEFAULT 0,
+  `rotation_count_no_endpoints` int(10) NOT NULL DEFAULT 0,
   `source_id` int(10) unsigned DEFAULT NULL,
   PRIMARY KEY (`id`),
   UNIQUE KEY `node_id_ip_address_role_id` (`node_id`,`ip_address_role_id`),
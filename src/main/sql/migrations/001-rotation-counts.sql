@@ -0,0 +1,65 @@
+-- Adds the incrementally maintained rotation counters to node IP addresses and nodes, and fills them in from a full
+-- recount. Run it while writes are paused, or run POST /api/rotation/reconcile afterward to pick up anything that
+-- changed in between.
+
+alter table node_ip_address
+  add column rotation_count_total int(10) not null default 0 after aggregate_rotation_status_id,
+  add column rotation_count_enabled int(10) not null default 0 after rotation_count_total,
+  add column rotation_count_disabled int(10) not null default 0 after rotation_count_enabled,
+  add column rotation_count_excluded int(10) not null default 0 after rotation_count_disabled,
+  add column rotation_count_partial int(10) not null default 0 after rotation_count_excluded,
+  add column rotation_count_no_endpoints int(10) not null default 0 after rotation_count_partial;
+
+alter table node
+  add column rotation_count_total int(10) not null default 0 after aggregate_rotation_status_id,
+  add column rotation_count_enabled int(10) not null default 0 after rotation_count_total,
+  add column rotation_count_disabled int(10) not null default 0 after rotation_count_enabled,
+  add column rotation_count_excluded int(10) not null default 0 after rotation_count_disabled,
+  add column rotation_count_partial int(10) not null default 0 after rotation_count_excluded,
+  add column rotation_count_no_endpoints int(10) not null default 0 after rotation_count_partial;
+
+-- Endpoints by rotation status, per node IP address
+update
+  node_ip_address nip,
+  (select
+     e.node_ip_address_id nip_id,
+     count(*) num_total,
+     count(case when rs.ukey = 'enabled' then 1 end) num_enabled,
+     count(case when rs.ukey = 'disabled' then 1 end) num_disabled,
+     count(case when rs.ukey = 'excluded' then 1 end) num_excluded
+   from
+     endpoint e left outer join rotation_status rs on e.rotation_status_id = rs.id
+   group by
+     e.node_ip_address_id) c
+set
+  nip.rotation_count_total = c.num_total,
+  nip.rotation_count_enabled = c.num_enabled,
+  nip.rotation_count_disabled = c.num_disabled,
+  nip.rotation_count_excluded = c.num_excluded
+where
+  nip.id = c.nip_id;
+
+-- Node IP address aggregate rotation statuses, per node
+update
+  node n,
+  (select
+     nip.node_id node_id,
+     count(*) num_total,
+     count(case when rs.ukey = 'enabled' then 1 end) num_enabled,
+     count(case when rs.ukey = 'disabled' then 1 end) num_disabled,
+     count(case when rs.ukey = 'excluded' then 1 end) num_excluded,
+     count(case when rs.ukey = 'partial' then 1 end) num_partial,
+     count(case when rs.ukey = 'no-endpoints' then 1 end) num_no_endpoints
+   from
+     node_ip_address nip left outer join rotation_status rs on nip.aggregate_rotation_status_id = rs.id
+   group by
+     nip.node_id) c
+set
+  n.rotation_count_total = c.num_total,
+  n.rotation_count_enabled = c.num_enabled,
+  n.rotation_count_disabled = c.num_disabled,
+  n.rotation_count_excluded = c.num_excluded,
+  n.rotation_count_partial = c.num_partial,
+  n.rotation_count_no_endpoints = c.num_no_endpoints
+where
+  n.id = c.node_id;
@@ -0,0 +1,85 @@
+-- Renumbers rotation_status so that every row's ID is its fixed RotationStatusCode, and remaps the rotation status
+-- foreign keys on endpoint, node_ip_address, node and machine to match. Databases loaded from the current
+-- insert-reference-data.sql already use these IDs, in which case this is a no-op. Run it while Seiso is stopped,
+-- with the mysql client in batch mode (mysql seiso < 002-rotation-status-codes.sql) so that it stops at the first
+-- error.
+
+create temporary table rotation_status_code (
+  ukey varchar(20) not null primary key,
+  code tinyint(3) unsigned not null
+);
+
+insert into rotation_status_code (ukey, code) values
+  ('enabled', 1),
+  ('disabled', 2),
+  ('excluded', 3),
+  ('no-endpoints', 4),
+  ('partial', 5),
+  ('unknown', 6)
+  ;
+
+-- The renumbering below parks rows at code + 100, and it only knows how to renumber the statuses above. Refuse to run
+-- rather than collide with an existing ID or leave a status with its old ID.
+drop procedure if exists check_rotation_status_codes;
+
+delimiter //
+create procedure check_rotation_status_codes()
+begin
+  if exists (select 1 from rotation_status where id > 100) then
+    signal sqlstate '45000' set message_text = 'rotation_status has IDs over 100. Renumber them by hand first.';
+  end if;
+  if exists (
+      select 1 from rotation_status rs left join rotation_status_code c on rs.ukey = c.ukey where c.ukey is null) then
+    signal sqlstate '45000' set message_text = 'rotation_status has keys without a RotationStatusCode.';
+  end if;
+end //
+delimiter ;
+
+call check_rotation_status_codes();
+drop procedure check_rotation_status_codes;
+
+set foreign_key_checks = 0;
+
+-- Move everything up by 100 first so that old and new IDs can't collide.
+update endpoint e
+  join rotation_status rs on e.rotation_status_id = rs.id
+  join rotation_status_code c on rs.ukey = c.ukey
+set e.rotation_status_id = c.code + 100;
+
+update node_ip_address nip
+  join rotation_status rs on nip.rotation_status_id = rs.id
+  join rotation_status_code c on rs.ukey = c.ukey
+set nip.rotation_status_id = c.code + 100;
+
+update node_ip_address nip
+  join rotation_status rs on nip.aggregate_rotation_status_id = rs.id
+  join rotation_status_code c on rs.ukey = c.ukey
+set nip.aggregate_rotation_status_id = c.code + 100;
+
+update node n
+  join rotation_status rs on n.aggregate_rotation_status_id = rs.id
+  join rotation_status_code c on rs.ukey = c.ukey
+set n.aggregate_rotation_status_id = c.code + 100;
+
+update machine m
+  join rotation_status rs on m.rotation_status_id = rs.id
+  join rotation_status_code c on rs.ukey = c.ukey
+set m.rotation_status_id = c.code + 100;
+
+update rotation_status rs
+  join rotation_status_code c on rs.ukey = c.ukey
+set rs.id = c.code + 100;
+
+-- Then back down to the codes themselves.
+update endpoint set rotation_status_id = rotation_status_id - 100 where rotation_status_id > 100;
+update node_ip_address set rotation_status_id = rotation_status_id - 100 where rotation_status_id > 100;
+update node_ip_address
+  set aggregate_rotation_status_id = aggregate_rotation_status_id - 100 where aggregate_rotation_status_id > 100;
+update node
+  set aggregate_rotation_status_id = aggregate_rotation_status_id - 100 where aggregate_rotation_status_id > 100;
+update machine set rotation_status_id = rotation_status_id - 100 where rotation_status_id > 100;
+update rotation_status set id = id - 100 where id > 100;
+
+drop temporary table rotation_status_code;
+
+set foreign_key_checks = 1;
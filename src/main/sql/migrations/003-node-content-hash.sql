@@ -0,0 +1,5 @@
+-- Adds the content hash that lets node upserts skip writes when nothing changed. Existing nodes start out without a
+-- hash, so each one's first upsert does a full update and stores it.
+
+alter table node
+  add column content_hash char(64) default null after rotation_count_no_endpoints;
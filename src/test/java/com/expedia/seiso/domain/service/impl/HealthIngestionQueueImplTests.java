@@ -0,0 +1,217 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.val;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.entity.HealthStatus;
+import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.repo.HealthStatusRepo;
+import com.expedia.seiso.domain.service.HealthUpdate;
+import com.expedia.seiso.domain.service.SearchResultCache;
+import com.expedia.seiso.gateway.NotificationGateway;
+
+/**
+ * @author Willie Wheeler
+ */
+public class HealthIngestionQueueImplTests {
+	private static final int BUFFER_SIZE = 2;
+	private static final Long HEALTHY_ID = 1L;
+	private static final Long UNHEALTHY_ID = 2L;
+	
+	// Class under test
+	@InjectMocks private HealthIngestionQueueImpl queue;
+	
+	// Dependencies
+	@Mock private HealthStatusRepo healthStatusRepo;
+	@Mock private JdbcTemplate jdbcTemplate;
+	@Mock private PlatformTransactionManager transactionManager;
+	@Mock private NotificationGateway notificationGateway;
+	@Mock private SearchResultCache searchResultCache;
+	@Spy private SeisoProperties seisoProperties = new SeisoProperties();
+	@Mock private CounterService counterService;
+	@Mock private GaugeService gaugeService;
+	
+	// Rows passed to each batch update
+	private List<List<Object[]>> batches;
+	
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		seisoProperties.setHealthBufferSize(BUFFER_SIZE);
+		when(healthStatusRepo.findByKey("healthy")).thenReturn(healthStatus(HEALTHY_ID));
+		when(healthStatusRepo.findByKey("unhealthy")).thenReturn(healthStatus(UNHEALTHY_ID));
+		
+		// Every row changes unless a test says otherwise.
+		this.batches = new ArrayList<>();
+		when(jdbcTemplate.batchUpdate(anyString(), anyListOf(Object[].class))).thenAnswer(invocation -> {
+			@SuppressWarnings("unchecked")
+			List<Object[]> rows = new ArrayList<>((List<Object[]>) invocation.getArguments()[1]);
+			batches.add(rows);
+			int[] rowCounts = new int[rows.size()];
+			Arrays.fill(rowCounts, 1);
+			return rowCounts;
+		});
+	}
+	
+	@Test
+	public void offerKeepsOnlyTheLatestUpdatePerNode() {
+		assertTrue(queue.offer(Arrays.asList(update("node1", "healthy"), update("node1", "unhealthy"))));
+		assertTrue(queue.offer(Arrays.asList(update("node2", "healthy"))));
+		assertTrue(queue.offer(Arrays.asList(update("node2", "unhealthy"))));
+		verify(counterService, times(2)).increment("health.ingest.coalesced");
+		verify(counterService, times(4)).increment("health.ingest.accepted");
+		
+		queue.flush();
+		assertEquals(1, batches.size());
+		assertEquals(2, batches.get(0).size());
+		assertRow("node1", UNHEALTHY_ID, batches.get(0).get(0));
+		assertRow("node2", UNHEALTHY_ID, batches.get(0).get(1));
+	}
+	
+	@Test
+	public void offerRefusesNewNodesWhenFull() {
+		assertTrue(queue.offer(Arrays.asList(update("node1", "healthy"), update("node2", "healthy"))));
+		assertFalse(queue.offer(Arrays.asList(update("node3", "healthy"))));
+		verify(counterService).increment("health.ingest.rejected");
+		
+		// Nodes already buffered take no extra room.
+		assertTrue(queue.offer(Arrays.asList(update("node2", "unhealthy"))));
+	}
+	
+	@Test
+	public void offerIsAllOrNothing() {
+		assertTrue(queue.offer(Arrays.asList(update("node1", "healthy"), update("node2", "healthy"))));
+		assertFalse(queue.offer(Arrays.asList(update("node2", "unhealthy"), update("node3", "healthy"))));
+		
+		queue.flush();
+		assertRow("node2", HEALTHY_ID, batches.get(0).get(1));
+	}
+	
+	@Test
+	public void flushMakesRoom() {
+		assertTrue(queue.offer(Arrays.asList(update("node1", "healthy"), update("node2", "healthy"))));
+		queue.flush();
+		assertTrue(queue.offer(Arrays.asList(update("node3", "healthy"), update("node4", "healthy"))));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void offerRejectsUnknownHealthKeys() {
+		try {
+			queue.offer(Arrays.asList(update("node1", "healthy"), update("node2", "sick")));
+		} finally {
+			queue.flush();
+			assertTrue(batches.isEmpty());
+		}
+	}
+	
+	@Test
+	public void flushNotifiesOnlyChangedNodes() {
+		doReturn(new int[] { 0, 1 }).when(jdbcTemplate).batchUpdate(anyString(), anyListOf(Object[].class));
+		queue.offer(Arrays.asList(update("node1", "healthy"), update("node2", "healthy")));
+		queue.flush();
+		verify(searchResultCache).invalidate(Node.class);
+		verify(notificationGateway).notifyAll(Node.class, Collections.singletonList("node2"), "update");
+		verify(counterService, times(1)).increment("health.ingest.written");
+	}
+	
+	@Test
+	public void flushWithoutChangesDoesNotNotify() {
+		doReturn(new int[] { 0 }).when(jdbcTemplate).batchUpdate(anyString(), anyListOf(Object[].class));
+		queue.offer(Arrays.asList(update("node1", "healthy")));
+		queue.flush();
+		verifyZeroInteractions(searchResultCache, notificationGateway);
+	}
+	
+	@Test
+	public void flushRequeuesFailedWritesBehindNewerUpdates() {
+		doThrow(new RuntimeException("down")).when(jdbcTemplate).batchUpdate(anyString(), anyListOf(Object[].class));
+		queue.offer(Arrays.asList(update("node1", "healthy"), update("node2", "healthy")));
+		queue.flush();
+		verify(notificationGateway, never()).notifyAll(eq(Node.class), anyListOf(String.class), anyString());
+		
+		// A newer update arrives before the retry, and a requeued update is allowed past the size limit.
+		assertTrue(queue.offer(Arrays.asList(update("node2", "unhealthy"))));
+		
+		val rows = new ArrayList<Object[]>();
+		doAnswer(invocation -> {
+			@SuppressWarnings("unchecked")
+			List<Object[]> batch = (List<Object[]>) invocation.getArguments()[1];
+			rows.addAll(batch);
+			return new int[batch.size()];
+		}).when(jdbcTemplate).batchUpdate(anyString(), anyListOf(Object[].class));
+		queue.flush();
+		assertEquals(2, rows.size());
+		assertRow("node1", HEALTHY_ID, rows.get(0));
+		assertRow("node2", UNHEALTHY_ID, rows.get(1));
+	}
+	
+	private static HealthStatus healthStatus(Long id) {
+		val healthStatus = new HealthStatus();
+		healthStatus.setId(id);
+		return healthStatus;
+	}
+	
+	private static HealthUpdate update(String nodeName, String healthKey) {
+		val update = new HealthUpdate();
+		update.setNodeName(nodeName);
+		update.setHealthKey(healthKey);
+		update.setReason(healthKey + " reason");
+		return update;
+	}
+	
+	private static void assertRow(String nodeName, Long healthStatusId, Object[] row) {
+		assertArrayEquals(
+				new Object[] {
+						healthStatusId, row[1], null,
+						nodeName,
+						healthStatusId, row[1], null },
+				row);
+	}
+}
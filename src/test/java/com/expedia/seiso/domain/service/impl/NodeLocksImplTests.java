@@ -0,0 +1,181 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.val;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.expedia.seiso.SeisoProperties;
+import com.expedia.seiso.domain.service.NodeLocks.NodeLock;
+
+/**
+ * @author Willie Wheeler
+ */
+public class NodeLocksImplTests {
+	private static final int NUM_STRIPES = 4;
+	
+	// Class under test
+	@InjectMocks private NodeLocksImpl nodeLocks;
+	
+	// Dependencies
+	@Spy private SeisoProperties seisoProperties = new SeisoProperties();
+	@Mock private CounterService counterService;
+	@Mock private GaugeService gaugeService;
+	
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		seisoProperties.setRotationLockStripes(NUM_STRIPES);
+		nodeLocks.init();
+		this.executor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void initRoundsTheStripesUpToAPowerOfTwo() {
+		seisoProperties.setRotationLockStripes(5);
+		nodeLocks.init();
+		assertEquals(8, ((ReentrantLock[]) ReflectionTestUtils.getField(nodeLocks, "stripes")).length);
+	}
+	
+	@Test
+	public void lockingInOppositeOrdersDoesNotDeadlock() throws Exception {
+		val forward = Arrays.asList(1L, 2L, 3L, 4L);
+		val backward = Arrays.asList(4L, 3L, 2L, 1L);
+		val start = new CountDownLatch(1);
+		val first = executor.submit(() -> lockRepeatedly(forward, start));
+		val second = executor.submit(() -> lockRepeatedly(backward, start));
+		start.countDown();
+		
+		// Either of these times out if the threads deadlock.
+		first.get(10, TimeUnit.SECONDS);
+		second.get(10, TimeUnit.SECONDS);
+	}
+	
+	@Test
+	@SuppressWarnings("try")
+	public void lockIsReentrant() throws Exception {
+		try (NodeLock outer = nodeLocks.lock(1L)) {
+			try (NodeLock inner = nodeLocks.lock(Arrays.asList(1L, 2L))) {
+				assertFalse(isFree(1L));
+			}
+			assertFalse(isFree(1L));
+		}
+		assertTrue(isFree(1L));
+		assertTrue(isFree(2L));
+	}
+	
+	@Test
+	@SuppressWarnings("try")
+	public void waitingForALockIsCounted() throws Exception {
+		Future<?> waiter;
+		try (NodeLock lock = nodeLocks.lock(1L)) {
+			waiter = executor.submit(() -> nodeLocks.lock(1L).close());
+			verify(counterService, timeout(5000)).increment("rotation.lock.contended");
+		}
+		waiter.get(5, TimeUnit.SECONDS);
+		verify(gaugeService).submit(eq("rotation.lock.wait-millis.total"), anyDouble());
+	}
+	
+	@Test
+	public void uncontendedLocksAreNotCountedAsWaits() {
+		nodeLocks.lock(1L).close();
+		verify(counterService, atLeastOnce()).increment("rotation.lock.acquired");
+		verify(counterService, never()).increment("rotation.lock.contended");
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void lockForTransactionRequiresATransaction() {
+		nodeLocks.lockForTransaction(Collections.singletonList(1L));
+	}
+	
+	@Test
+	public void lockForTransactionReleasesOnCompletion() throws Exception {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			nodeLocks.lockForTransaction(Arrays.asList(1L, 2L));
+			assertFalse(isFree(1L));
+			for (val synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertTrue(isFree(1L));
+		assertTrue(isFree(2L));
+	}
+	
+	private Void lockRepeatedly(List<Long> nodeIds, CountDownLatch start) throws InterruptedException {
+		start.await();
+		for (int i = 0; i < 10000; i++) {
+			nodeLocks.lock(nodeIds).close();
+		}
+		return null;
+	}
+	
+	/**
+	 * Whether another thread can take the node's lock right now. If it can't, the probe thread keeps waiting and
+	 * releases the lock as soon as it gets it.
+	 */
+	private boolean isFree(Long nodeId) throws Exception {
+		Future<?> probe = executor.submit(() -> nodeLocks.lock(nodeId).close());
+		try {
+			probe.get(500, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.impl;
+
+import static com.expedia.seiso.domain.entity.RotationStatus.DISABLED;
+import static com.expedia.seiso.domain.entity.RotationStatus.ENABLED;
+import static com.expedia.seiso.domain.entity.RotationStatus.EXCLUDED;
+import static com.expedia.seiso.domain.entity.RotationStatus.PARTIAL;
+import static com.expedia.seiso.domain.entity.RotationStatus.UNKNOWN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import lombok.val;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.expedia.seiso.domain.entity.RotationCounts;
+import com.expedia.seiso.domain.service.NodeLocks;
+
+/**
+ * @author Willie Wheeler
+ */
+public class RotationCountersImplTests {
+	private static final Long NODE_ID = 5L;
+	private static final Long NIP_ID = 7L;
+	
+	// Class under test
+	@InjectMocks private RotationCountersImpl rotationCounters;
+	
+	// Dependencies
+	@Mock private EntityManager entityManager;
+	@Mock private NodeLocks nodeLocks;
+	
+	// Test data
+	@Mock private Query query;
+	private Map<String, Object> params;
+	
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		this.params = new HashMap<>();
+		when(entityManager.createQuery(anyString())).thenReturn(query);
+		when(query.setParameter(anyString(), any())).thenAnswer(invocation -> {
+			params.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+			return query;
+		});
+	}
+	
+	@Test
+	public void endpointAddedIncrementsItsStatus() {
+		rotationCounters.endpointAdded(NIP_ID, ENABLED);
+		assertEquals(new RotationCounts(1, 1, 0, 0, 0, 0), appliedCounts());
+		assertEquals(NIP_ID, params.get("id"));
+		assertTrue(executedJpql().startsWith("update NodeIpAddress"));
+	}
+	
+	@Test
+	public void endpointRemovedDecrementsItsStatus() {
+		rotationCounters.endpointRemoved(NIP_ID, DISABLED);
+		assertEquals(new RotationCounts(-1, 0, -1, 0, 0, 0), appliedCounts());
+	}
+	
+	@Test
+	public void untrackedStatusesCountTowardTheTotalOnly() {
+		rotationCounters.endpointAdded(NIP_ID, null);
+		assertEquals(new RotationCounts(1, 0, 0, 0, 0, 0), appliedCounts());
+	}
+	
+	@Test
+	public void endpointChangedMovesOneBetweenStatuses() {
+		rotationCounters.endpointChanged(NIP_ID, ENABLED, DISABLED);
+		assertEquals(new RotationCounts(0, -1, 1, 0, 0, 0), appliedCounts());
+		verify(query).executeUpdate();
+	}
+	
+	@Test
+	public void endpointChangedWithinTheSameCounterDoesNothing() {
+		rotationCounters.endpointChanged(NIP_ID, ENABLED, ENABLED);
+		rotationCounters.endpointChanged(NIP_ID, UNKNOWN, null);
+		verify(entityManager, never()).createQuery(anyString());
+	}
+	
+	@Test
+	public void ipAddressChangedUpdatesTheNode() {
+		rotationCounters.ipAddressChanged(NODE_ID, PARTIAL, EXCLUDED);
+		assertEquals(new RotationCounts(0, 0, 0, 1, -1, 0), appliedCounts());
+		assertEquals(NODE_ID, params.get("id"));
+		assertTrue(executedJpql().startsWith("update Node "));
+	}
+	
+	@Test
+	public void repairOverwritesTheCounts() {
+		val counts = new RotationCounts(3, 2, 1, 0, 0, 0);
+		rotationCounters.repairIpAddressCounts(Arrays.asList(1L, 2L), counts);
+		assertEquals(counts, appliedCounts());
+		assertEquals(Arrays.asList(1L, 2L), params.get("ids"));
+		assertTrue(executedJpql().contains("total = :total"));
+	}
+	
+	@Test
+	public void repairOfNoRowsDoesNothing() {
+		rotationCounters.repairEndpointCounts(Collections.emptyList(), new RotationCounts());
+		verify(entityManager, never()).createQuery(anyString());
+	}
+	
+	@Test
+	public void recountEndpointsLocksTheNodeAndOverwritesTheCounts() {
+		List<Object[]> rows = Arrays.asList(
+				new Object[] { 1L, 3L },
+				new Object[] { 2L, 1L },
+				new Object[] { null, 2L });
+		when(query.getResultList()).thenReturn(rows);
+		
+		val counts = rotationCounters.recountEndpoints(NODE_ID, NIP_ID);
+		
+		val expected = new RotationCounts(6, 3, 1, 0, 0, 0);
+		assertEquals(expected, counts);
+		assertEquals(expected, appliedCounts());
+		assertEquals(NIP_ID, params.get("id"));
+		verify(nodeLocks).lockForTransaction(Collections.singletonList(NODE_ID));
+		verify(query).executeUpdate();
+	}
+	
+	private RotationCounts appliedCounts() {
+		return new RotationCounts(
+				(Integer) params.get("total"),
+				(Integer) params.get("enabled"),
+				(Integer) params.get("disabled"),
+				(Integer) params.get("excluded"),
+				(Integer) params.get("partial"),
+				(Integer) params.get("noEndpoints"));
+	}
+	
+	private String executedJpql() {
+		val jpql = ArgumentCaptor.forClass(String.class);
+		verify(entityManager, atLeastOnce()).createQuery(jpql.capture());
+		return jpql.getValue();
+	}
+}
@@ -0,0 +1,140 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Willie Wheeler
+ */
+public class BkTreeTests {
+	private BkTree tree;
+	
+	@Before
+	public void setUp() {
+		this.tree = new BkTree();
+		tree.add(1, "checkout");
+		tree.add(2, "checkin");
+		tree.add(3, "lodging");
+		tree.add(4, "Checkout");
+		tree.add(5, "flights");
+		tree.add(6, "flight");
+	}
+	
+	@Test
+	public void addMergesTermsCaseInsensitively() {
+		assertEquals(5, tree.size());
+		assertArrayEquals(new int[] { 1, 4 }, search("CHECKOUT", 0).get(0));
+	}
+	
+	@Test
+	public void addIgnoresEmptyTerms() {
+		tree.add(7, null);
+		tree.add(8, "");
+		assertEquals(5, tree.size());
+	}
+	
+	@Test
+	public void searchFindsTermsWithinTheDistance() {
+		Map<Integer, int[]> matches = search("chekout", 1);
+		assertEquals(1, matches.size());
+		assertArrayEquals(new int[] { 1, 4 }, matches.get(1));
+		
+		matches = search("flihgt", 2);
+		assertEquals(1, matches.size());
+		assertArrayEquals(new int[] { 6 }, matches.get(2));
+		assertTrue(search("flihgt", 1).isEmpty());
+	}
+	
+	@Test
+	public void searchReportsEachTermsDistance() {
+		Map<Integer, int[]> matches = search("flight", 1);
+		assertArrayEquals(new int[] { 6 }, matches.get(0));
+		assertArrayEquals(new int[] { 5 }, matches.get(1));
+	}
+	
+	@Test
+	public void searchAgreesWithABruteForceScan() {
+		String[] terms = { "alpha", "alpine", "alps", "beta", "bet", "better", "gamma", "gamut", "delta", "deltas" };
+		BkTree bigTree = new BkTree();
+		for (int i = 0; i < terms.length; i++) {
+			bigTree.add(i, terms[i]);
+		}
+		for (String query : new String[] { "alp", "bett", "gama", "deta", "zzz" }) {
+			for (int k = 0; k <= 3; k++) {
+				Map<Integer, Integer> expected = new HashMap<>();
+				for (int i = 0; i < terms.length; i++) {
+					int distance = levenshtein(query, terms[i]);
+					if (distance <= k) {
+						expected.put(i, distance);
+					}
+				}
+				Map<Integer, Integer> actual = new HashMap<>();
+				bigTree.search(query, k, (ids, distance) -> {
+					for (int id : ids) {
+						actual.put(id, distance);
+					}
+				});
+				assertEquals("query=" + query + ", k=" + k, expected, actual);
+			}
+		}
+	}
+	
+	@Test
+	public void removeHidesTheItem() {
+		tree.remove(1, "checkout");
+		assertArrayEquals(new int[] { 4 }, search("checkout", 0).get(0));
+		
+		tree.remove(4, "CHECKOUT");
+		assertTrue(search("checkout", 0).isEmpty());
+		
+		// The term's node stays behind, since other terms hang off it.
+		assertEquals(5, tree.size());
+		assertFalse(search("checkin", 0).isEmpty());
+	}
+	
+	private Map<Integer, int[]> search(String term, int maxDistance) {
+		Map<Integer, int[]> matches = new HashMap<>();
+		tree.search(term, maxDistance, (ids, distance) -> matches.put(distance, ids));
+		return matches;
+	}
+	
+	private static int levenshtein(String a, String b) {
+		int[][] d = new int[a.length() + 1][b.length() + 1];
+		for (int i = 0; i <= a.length(); i++) {
+			d[i][0] = i;
+		}
+		for (int j = 0; j <= b.length(); j++) {
+			d[0][j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			for (int j = 1; j <= b.length(); j++) {
+				int cost = (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+				d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+}
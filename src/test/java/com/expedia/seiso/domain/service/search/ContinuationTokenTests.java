@@ -0,0 +1,96 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.val;
+
+import org.junit.Test;
+
+import com.expedia.seiso.domain.entity.Machine;
+import com.expedia.seiso.domain.entity.Node;
+import com.expedia.seiso.domain.entity.Person;
+import com.expedia.seiso.domain.service.search.ContinuationToken.InvalidContinuationTokenException;
+
+/**
+ * @author Willie Wheeler
+ */
+@SuppressWarnings("rawtypes")
+public class ContinuationTokenTests {
+	
+	@Test
+	public void decodeReversesEncode() {
+		Map<Class, Long> afterIds = new HashMap<>();
+		afterIds.put(Node.class, 123L);
+		afterIds.put(Machine.class, Long.MAX_VALUE);
+		val token = new ContinuationToken(afterIds);
+		
+		val decoded = ContinuationToken.decode(token.encode());
+		assertEquals(token, decoded);
+		assertEquals(Long.valueOf(123L), decoded.getAfterId(Node.class));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), decoded.getAfterId(Machine.class));
+		assertNull(decoded.getAfterId(Person.class));
+	}
+	
+	@Test
+	public void encodeIsUrlSafeAndStable() {
+		Map<Class, Long> afterIds = new HashMap<>();
+		afterIds.put(Node.class, 1L);
+		afterIds.put(Machine.class, 2L);
+		val encoded = new ContinuationToken(afterIds).encode();
+		assertFalse(encoded.matches(".*[+/=].*"));
+		
+		// Entries are sorted, so the insertion order doesn't matter.
+		Map<Class, Long> reversed = new HashMap<>();
+		reversed.put(Machine.class, 2L);
+		reversed.put(Node.class, 1L);
+		assertEquals(encoded, new ContinuationToken(reversed).encode());
+	}
+	
+	@Test
+	public void emptyTokenRoundTrips() {
+		val token = new ContinuationToken(Collections.emptyMap());
+		assertEquals(token, ContinuationToken.decode(token.encode()));
+	}
+	
+	@Test(expected = InvalidContinuationTokenException.class)
+	public void decodeRejectsBadBase64() {
+		ContinuationToken.decode("not base64!");
+	}
+	
+	@Test(expected = InvalidContinuationTokenException.class)
+	public void decodeRejectsMissingIds() {
+		ContinuationToken.decode(encode("Node"));
+	}
+	
+	@Test(expected = InvalidContinuationTokenException.class)
+	public void decodeRejectsNonNumericIds() {
+		ContinuationToken.decode(encode("Node:abc"));
+	}
+	
+	private static String encode(String raw) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,89 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import lombok.val;
+
+import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * @author Willie Wheeler
+ */
+public class KeysetPageRequestTests {
+	private static final int[] IDS = { 3, 5, 8, 13, 21 };
+	
+	@Test
+	public void startIndexResumesAfterTheId() {
+		assertEquals(0, KeysetPageRequest.startIndex(new KeysetPageRequest(2, 0L), IDS));
+		assertEquals(2, KeysetPageRequest.startIndex(new KeysetPageRequest(2, 5L), IDS));
+		
+		// The ID needn't be there any more, e.g. because the item was deleted.
+		assertEquals(3, KeysetPageRequest.startIndex(new KeysetPageRequest(2, 10L), IDS));
+		assertEquals(5, KeysetPageRequest.startIndex(new KeysetPageRequest(2, 21L), IDS));
+		assertEquals(5, KeysetPageRequest.startIndex(new KeysetPageRequest(2, Long.MAX_VALUE), IDS));
+	}
+	
+	@Test
+	public void startIndexFallsBackToTheOffset() {
+		assertEquals(4, KeysetPageRequest.startIndex(new PageRequest(2, 2), IDS));
+		assertEquals(5, KeysetPageRequest.startIndex(new PageRequest(3, 2), IDS));
+	}
+	
+	@Test
+	public void getAfterIdIsNullForOffsetRequests() {
+		assertEquals(Long.valueOf(8L), KeysetPageRequest.getAfterId(new KeysetPageRequest(2, 8L)));
+		assertNull(KeysetPageRequest.getAfterId(new PageRequest(0, 2)));
+	}
+	
+	@Test
+	public void nextPageableResumesAfterTheLastId() {
+		val first = new KeysetPage<Integer>(Arrays.asList(3, 5), new KeysetPageRequest(2, 0L), IDS.length, 5L);
+		assertTrue(first.hasNext());
+		assertFalse(first.isLast());
+		
+		val next = first.nextPageable();
+		assertEquals(new KeysetPageRequest(1, 2, 5L), next);
+		assertEquals(2, KeysetPageRequest.startIndex(next, IDS));
+		
+		val last = new KeysetPage<Integer>(Arrays.asList(21), next, IDS.length, null);
+		assertFalse(last.hasNext());
+		assertTrue(last.isLast());
+		assertNull(last.nextPageable());
+	}
+	
+	@Test
+	public void nextFallsBackToTheFollowingOffsetPage() {
+		val next = new KeysetPageRequest(1, 2, 5L).next();
+		assertEquals(new PageRequest(2, 2), next);
+		assertNull(KeysetPageRequest.getAfterId(next));
+	}
+	
+	@Test
+	public void equalityIncludesTheAfterId() {
+		assertEquals(new KeysetPageRequest(2, 5L), new KeysetPageRequest(0, 2, 5L));
+		assertEquals(new KeysetPageRequest(2, 5L).hashCode(), new KeysetPageRequest(0, 2, 5L).hashCode());
+		assertFalse(new KeysetPageRequest(2, 5L).equals(new KeysetPageRequest(2, 8L)));
+		assertFalse(new KeysetPageRequest(2, 5L).equals(new PageRequest(0, 2)));
+	}
+}
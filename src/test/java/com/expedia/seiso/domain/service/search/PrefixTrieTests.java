@@ -0,0 +1,107 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Willie Wheeler
+ */
+public class PrefixTrieTests {
+	private PrefixTrie trie;
+	
+	@Before
+	public void setUp() {
+		this.trie = new PrefixTrie();
+		for (String key : new String[] { "expweb", "expweb-prod", "Express", "checkout", "exp", "lodging" }) {
+			trie.add(key);
+		}
+	}
+	
+	@Test
+	public void completeReturnsMatchesInCaseInsensitiveOrder() {
+		assertArrayEquals(new String[] { "exp", "Express", "expweb", "expweb-prod" }, complete("exp", 10));
+		assertArrayEquals(new String[] { "expweb", "expweb-prod" }, complete("EXPW", 10));
+	}
+	
+	@Test
+	public void completeStopsWhenTheBufferIsFull() {
+		assertArrayEquals(new String[] { "exp", "Express" }, complete("e", 2));
+		assertArrayEquals(new String[0], complete("e", 0));
+	}
+	
+	@Test
+	public void completeWithoutMatchesReturnsNothing() {
+		assertArrayEquals(new String[0], complete("zzz", 10));
+		assertArrayEquals(new String[0], complete("expwebx", 10));
+		assertArrayEquals(new String[0], complete("", 10));
+	}
+	
+	@Test
+	public void addCountsDistinctKeys() {
+		trie.add("checkout");
+		trie.add(null);
+		trie.add("");
+		assertEquals(6, trie.size());
+	}
+	
+	@Test
+	public void removeKeepsKeysAddedMoreThanOnce() {
+		trie.add("checkout");
+		trie.remove("checkout");
+		assertArrayEquals(new String[] { "checkout" }, complete("check", 10));
+		
+		trie.remove("checkout");
+		assertArrayEquals(new String[0], complete("check", 10));
+		assertEquals(5, trie.size());
+		
+		// Absent keys are ignored.
+		trie.remove("checkout");
+		trie.remove("nothing");
+		assertEquals(5, trie.size());
+	}
+	
+	@Test
+	public void compactKeepsTheLiveKeys() {
+		trie.add("checkout");
+		trie.remove("exp");
+		trie.remove("lodging");
+		trie.compact();
+		
+		assertEquals(4, trie.size());
+		assertArrayEquals(new String[] { "checkout" }, complete("c", 10));
+		assertArrayEquals(new String[] { "Express", "expweb", "expweb-prod" }, complete("e", 10));
+		
+		// The duplicate count survives too.
+		trie.remove("checkout");
+		assertArrayEquals(new String[] { "checkout" }, complete("check", 10));
+		
+		trie.add("lodge");
+		assertArrayEquals(new String[] { "lodge" }, complete("lo", 10));
+	}
+	
+	private String[] complete(String prefix, int limit) {
+		String[] results = new String[limit];
+		int n = trie.complete(prefix, results);
+		return Arrays.copyOf(results, n);
+	}
+}
@@ -0,0 +1,91 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>
+ * Substring query latency on a million node-style names (e.g. {@code expweb-prod-5551-node07}). Run the main method
+ * with a couple of gigabytes of heap; it prints the median and 99th percentile per query class.
+ * </p>
+ * <p>
+ * The queries marked out of scope fall outside the bound documented on {@link TrigramIndex}.
+ * </p>
+ * 
+ * @author Willie Wheeler
+ */
+public class TrigramIndexBenchmark {
+	private static final int NUM_NAMES = 1000000;
+	private static final int WARMUP_RUNS = 200;
+	private static final int RUNS = 1000;
+	
+	private static final String[] APPS = {
+			"expweb", "checkout", "lodging", "flights", "cars", "cruise", "payments", "loyalty", "search", "reviews" };
+	private static final String[] ENVS = { "prod", "test", "stage", "dev", "perf" };
+	
+	public static void main(String[] args) {
+		TrigramIndex index = new TrigramIndex();
+		Random random = new Random(42L);
+		String sample = null;
+		long start = System.nanoTime();
+		for (int id = 1; id <= NUM_NAMES; id++) {
+			String name = name(random);
+			index.put(id, new String[] { name });
+			if (id == NUM_NAMES / 2) {
+				sample = name;
+			}
+		}
+		index.compact();
+		System.out.printf("Loaded %d names in %d ms%n", index.size(), (System.nanoTime() - start) / 1000000L);
+		
+		// Fragments of a name that's in the index, so the selective queries have something to find.
+		String[] parts = sample.split("-");
+		String[][] queryClasses = {
+				{ "selective number", parts[2] },
+				{ "selective prefix", parts[0] + "-" + parts[1] + "-" + parts[2] },
+				{ "selective suffix", parts[2] + "-" + parts[3] },
+				{ "selective full name", sample },
+				{ "no match", "zzqxzz" },
+				{ "out of scope: low selectivity", "prod" },
+				{ "out of scope: short token", parts[2].substring(0, 2) } };
+		for (String[] queryClass : queryClasses) {
+			List<String> tokens = Collections.singletonList(queryClass[1]);
+			int matches = 0;
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				matches = index.search(tokens).length;
+			}
+			long[] nanos = new long[RUNS];
+			for (int i = 0; i < RUNS; i++) {
+				long t0 = System.nanoTime();
+				index.search(tokens);
+				nanos[i] = System.nanoTime() - t0;
+			}
+			Arrays.sort(nanos);
+			System.out.printf("%-32s %-24s %8d matches  p50 %7.3f ms  p99 %7.3f ms%n",
+					queryClass[0], queryClass[1], matches, nanos[RUNS / 2] / 1e6, nanos[RUNS * 99 / 100] / 1e6);
+		}
+	}
+	
+	private static String name(Random random) {
+		return String.format("%s-%s-%04d-node%02d",
+				APPS[random.nextInt(APPS.length)], ENVS[random.nextInt(ENVS.length)], random.nextInt(10000),
+				random.nextInt(100));
+	}
+}
@@ -0,0 +1,122 @@
+/* 
+ * Copyright 2013-2016 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.expedia.seiso.domain.service.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Willie Wheeler
+ */
+public class TrigramIndexTests {
+	private TrigramIndex index;
+	
+	@Before
+	public void setUp() {
+		this.index = new TrigramIndex();
+		index.put(1, new String[] { "expweb-prod-5551-node07", "expweb-prod-5551-node07.example.com" });
+		index.put(2, new String[] { "expweb-test-5552-node01", null });
+		index.put(3, new String[] { "Checkout-PROD-0042-node03", "checkout.example.com" });
+	}
+	
+	@Test
+	public void searchFindsSubstringsAnywhereInTheValue() {
+		assertArrayEquals(new int[] { 1 }, search("5551"));
+		assertArrayEquals(new int[] { 1, 3 }, search("prod"));
+		assertArrayEquals(new int[] { 1, 2 }, search("expweb-"));
+		assertArrayEquals(new int[] { 3 }, search("0042-node03"));
+	}
+	
+	@Test
+	public void searchIsCaseInsensitive() {
+		assertArrayEquals(new int[] { 3 }, search("CHECKOUT"));
+		assertArrayEquals(new int[] { 1 }, search("ExpWeb-Prod"));
+	}
+	
+	@Test
+	public void searchIgnoresSqlWildcards() {
+		assertArrayEquals(new int[] { 1 }, search("%5551%"));
+	}
+	
+	@Test
+	public void searchVerifiesCandidatesAgainstTheValues() {
+		// Has every trigram of "node07" but not the substring.
+		index.put(4, new String[] { "node0x-de07" });
+		assertArrayEquals(new int[] { 1 }, search("node07"));
+	}
+	
+	@Test
+	public void searchDoesNotMatchAcrossFields() {
+		assertArrayEquals(new int[0], search("comcheck"));
+		assertArrayEquals(new int[0], search("node03checkout"));
+	}
+	
+	@Test
+	public void searchScansForShortTokens() {
+		assertArrayEquals(new int[] { 1, 2, 3 }, search("e"));
+		assertArrayEquals(new int[] { 3 }, search("42"));
+	}
+	
+	@Test
+	public void searchReturnsTheUnionOfTheTokens() {
+		assertArrayEquals(new int[] { 2, 3 }, index.search(Arrays.asList("5552", "checkout")));
+	}
+	
+	@Test
+	public void searchWithoutMatchesReturnsNothing() {
+		assertArrayEquals(new int[0], search("zzz"));
+		assertArrayEquals(new int[0], index.search(Collections.emptyList()));
+	}
+	
+	@Test
+	public void putReplacesTheDocument() {
+		index.put(1, new String[] { "payments-prod-9999-node11" });
+		assertArrayEquals(new int[0], search("5551"));
+		assertArrayEquals(new int[] { 1 }, search("9999"));
+		assertEquals(3, index.size());
+	}
+	
+	@Test
+	public void removeDropsTheDocument() {
+		index.remove(1);
+		assertArrayEquals(new int[] { 3 }, search("prod"));
+		assertEquals(2, index.size());
+	}
+	
+	@Test
+	public void changesSurviveCompaction() {
+		index.compact();
+		index.remove(1);
+		index.put(2, new String[] { "expweb-prod-5553-node02" });
+		index.put(4, new String[] { "lodging-prod-0001-node01" });
+		assertArrayEquals(new int[] { 2, 3, 4 }, search("prod"));
+		
+		index.compact();
+		assertArrayEquals(new int[] { 2, 3, 4 }, search("prod"));
+		assertArrayEquals(new int[0], search("5551"));
+		assertArrayEquals(new int[] { 2 }, search("5553"));
+	}
+	
+	private int[] search(String token) {
+		return index.search(Collections.singletonList(token));
+	}
+}